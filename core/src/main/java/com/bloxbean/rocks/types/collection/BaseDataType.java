@@ -1,27 +1,63 @@
 package com.bloxbean.rocks.types.collection;
 
+import com.bloxbean.rocks.types.collection.metadata.MetadataCache;
+import com.bloxbean.rocks.types.collection.metadata.MetadataCodec;
 import com.bloxbean.rocks.types.collection.metadata.TypeMetadata;
+import com.bloxbean.rocks.types.collection.util.DirectBufferPool;
+import com.bloxbean.rocks.types.common.KeyBuilder;
 import com.bloxbean.rocks.types.config.RocksDBConfig;
 import com.bloxbean.rocks.types.serializer.Serializer;
 import lombok.SneakyThrows;
+import org.rocksdb.ByteBufferGetStatus;
 import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.Holder;
+import org.rocksdb.Range;
+import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksIterator;
+import org.rocksdb.SizeApproximationFlag;
+import org.rocksdb.Slice;
+import org.rocksdb.Status;
 import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Base class for all collection types
  * @param <T>
  */
 abstract class BaseDataType<T> {
+    private static final DirectBufferPool KEY_BUFFERS = new DirectBufferPool(256);
+    private static final DirectBufferPool VALUE_BUFFERS = new DirectBufferPool(64 * 1024);
+    //Per key value size hint used to split the value buffer between keys of a direct buffer multiGet
+    private static final int MULTI_GET_VALUE_SIZE_HINT = 8 * 1024;
+    //No of entries sampled to estimate the average entry size in approximateCount
+    private static final int APPROXIMATE_COUNT_SAMPLE_SIZE = 100;
+    //Striped locks for read-modify-write of metadata, shared by all instances
+    private static final int METADATA_LOCK_STRIPES = 256;
+    private static final ReentrantLock[] METADATA_LOCKS = new ReentrantLock[METADATA_LOCK_STRIPES];
+
+    static {
+        for (int i = 0; i < METADATA_LOCKS.length; i++) {
+            METADATA_LOCKS[i] = new ReentrantLock();
+        }
+    }
+
     protected final RocksDB db;
     protected final String name;
     protected final ColumnFamilyHandle columnFamilyHandle;
     protected final Serializer valueSerializer;
     protected final Class<T> valueType;
+    protected final MetadataCache metadataCache;
+    protected final boolean directBufferIO;
+    private ReadOptions directReadOptions;
+    private WriteOptions directWriteOptions;
 
     public BaseDataType(RocksDBConfig rocksDBConfig, String name, Class<T> valueType) {
         this(rocksDBConfig, null, name, valueType);
@@ -36,11 +72,135 @@ abstract class BaseDataType<T> {
         else
             this.columnFamilyHandle = null;
         this.valueType = valueType;
+        this.metadataCache = new MetadataCache(rocksDBConfig.getMetadataCacheSize());
+        this.directBufferIO = rocksDBConfig.isDirectBufferIO();
+        if (directBufferIO) {
+            this.directReadOptions = new ReadOptions();
+            this.directWriteOptions = new WriteOptions();
+        }
     }
 
     protected abstract Optional<? extends TypeMetadata> createMetadata(byte[] ns);
     protected abstract Optional<? extends TypeMetadata> getMetadata(byte[] ns);
 
+    /**
+     * Read metadata stored under the given metadata key. The metadata is served from the metadata cache if available,
+     * otherwise it's read from RocksDB and added to the cache, unless a writer cached newer metadata meanwhile. Both the binary format written by {@link MetadataCodec}
+     * and the older value serializer based format are supported.
+     * <p>
+     * The returned metadata is not shared with the cache, so it can be updated before writing it back.
+     */
+    protected <M extends TypeMetadata> Optional<M> readMetadata(byte[] metadataKey, Class<M> metadataType) {
+        M metadata = metadataCache.get(metadataKey, metadataType);
+        if (metadata != null)
+            return Optional.of(metadata);
+
+        var storedMetadata = readStoredMetadata(metadataKey, metadataType);
+        storedMetadata.ifPresent(m -> metadataCache.putIfAbsent(metadataKey, m));
+        return storedMetadata;
+    }
+
+    /**
+     * Read metadata from RocksDB, bypassing the metadata cache. Used for read-modify-write of metadata under
+     * {@link #getMetadataLock(byte[])}, where the cached metadata of this instance may be stale.
+     */
+    protected <M extends TypeMetadata> Optional<M> readStoredMetadata(byte[] metadataKey, Class<M> metadataType) {
+        var metadataValueBytes = get(metadataKey);
+        if (metadataValueBytes == null || metadataValueBytes.length == 0)
+            return Optional.empty();
+
+        if (MetadataCodec.isEncoded(metadataValueBytes))
+            return Optional.of(MetadataCodec.decode(metadataValueBytes, metadataType));
+        else //metadata written by older versions through the value serializer. See migrateMetadata
+            return Optional.of(valueSerializer.deserialize(metadataValueBytes, metadataType));
+    }
+
+    /**
+     * Write metadata under the given metadata key. A direct write refreshes the cached entry. After a write to a
+     * {@link WriteBatch} the key is not cached until the next direct write, as reads before the batch is committed
+     * would cache the old metadata and nothing tells when the batch is committed.
+     */
+    protected void writeMetadata(WriteBatch writeBatch, byte[] metadataKey, TypeMetadata metadata) {
+        if (writeBatch != null) {
+            metadataCache.markUncacheable(metadataKey);
+            writeBatch(writeBatch, metadataKey, MetadataCodec.encode(metadata));
+        } else {
+            put(metadataKey, MetadataCodec.encode(metadata));
+            metadataCache.put(metadataKey, metadata);
+        }
+    }
+
+    /**
+     * Commit a WriteBatch together with metadata of the namespace. Unlike {@link #writeMetadata(WriteBatch, byte[],
+     * TypeMetadata)} with a WriteBatch, the key stays cacheable, as the batch is committed here. Should be called with
+     * the metadata lock held.
+     */
+    @SneakyThrows
+    protected void commitWithMetadata(WriteOptions writeOptions, WriteBatch writeBatch, byte[] metadataKey,
+                                      TypeMetadata metadata) {
+        writeBatch(writeBatch, metadataKey, MetadataCodec.encode(metadata));
+        db.write(writeOptions, writeBatch);
+        metadataCache.put(metadataKey, metadata);
+    }
+
+    /**
+     * Rewrite metadata of a namespace stored by older versions through the value serializer in the binary format.
+     * Metadata in the older format is still readable, so migration is optional.
+     *
+     * @param ns namespace
+     * @return true if the metadata was migrated, false if there is no metadata or it's already in binary format
+     */
+    public boolean migrateMetadata(byte[] ns) {
+        byte[] metadataKey = getMetadataKey(ns);
+        byte[] metadataValueBytes = get(metadataKey);
+        if (metadataValueBytes == null || metadataValueBytes.length == 0 || MetadataCodec.isEncoded(metadataValueBytes))
+            return false;
+
+        TypeMetadata metadata = getMetadata(ns).orElseThrow();
+        writeMetadata(null, metadataKey, metadata);
+        return true;
+    }
+
+    /**
+     * Lock for read-modify-write of the metadata stored under the given key. Locks are striped and shared by all
+     * instances, so unrelated namespaces may share a lock.
+     */
+    protected static ReentrantLock getMetadataLock(byte[] metadataKey) {
+        return METADATA_LOCKS[Math.floorMod(Arrays.hashCode(metadataKey), METADATA_LOCK_STRIPES)];
+    }
+
+    protected byte[] getMetadataKey(byte[] ns) {
+        if (ns != null)
+            return new KeyBuilder(name, ns)
+                    .build();
+        else
+            return new KeyBuilder(name)
+                    .build();
+    }
+
+    /**
+     * Prefix shared by all data keys of a namespace for a metadata version: name | ns | version.
+     * Compute it once per operation and append sub key parts with {@link KeyBuilder#appendToKey(byte[], byte[]...)}.
+     */
+    protected byte[] getKeyPrefix(byte[] ns, long version) {
+        return KeyBuilder.appendToKey(getMetadataKey(ns), KeyBuilder.longToBytes(version));
+    }
+
+    /**
+     * Drop all cached metadata. Use this when another instance or process has updated metadata of this collection.
+     */
+    public void clearMetadataCache() {
+        metadataCache.clear();
+    }
+
+    public long getMetadataCacheHits() {
+        return metadataCache.getHits();
+    }
+
+    public long getMetadataCacheMisses() {
+        return metadataCache.getMisses();
+    }
+
     protected void write(WriteBatch writeBatch, byte[] key, byte[] value) {
         if (writeBatch != null) {
             writeBatch(writeBatch, key, value);
@@ -85,6 +245,195 @@ abstract class BaseDataType<T> {
         }
     }
 
+    /**
+     * Delete all keys in the range [beginKey, endKey) in a write batch
+     */
+    @SneakyThrows
+    protected void deleteRangeBatch(WriteBatch batch, byte[] beginKey, byte[] endKey) {
+        if (columnFamilyHandle != null) {
+            batch.deleteRange(columnFamilyHandle, beginKey, endKey);
+        } else {
+            batch.deleteRange(beginKey, endKey);
+        }
+    }
+
+    /**
+     * Read and deserialize a value. In direct buffer I/O mode the value is read into a pooled direct buffer and
+     * deserialized from there, otherwise it's read as a byte array.
+     *
+     * @return deserialized value or null if the key is not found or the value is empty
+     */
+    @SneakyThrows
+    protected <V> V getValue(byte[] key, Class<V> type) {
+        if (!directBufferIO) {
+            byte[] valueBytes = get(key);
+            if (valueBytes == null || valueBytes.length == 0)
+                return null;
+            return valueSerializer.deserialize(valueBytes, type);
+        }
+
+        ByteBuffer keyBuffer = KEY_BUFFERS.wrap(key);
+        ByteBuffer valueBuffer = VALUE_BUFFERS.acquire(0);
+        int size = getDirect(keyBuffer, valueBuffer);
+        if (size == RocksDB.NOT_FOUND || size == 0)
+            return null;
+
+        if (size > valueBuffer.capacity()) { //retry with a buffer big enough for the value
+            keyBuffer.rewind();
+            valueBuffer = VALUE_BUFFERS.acquire(size);
+            size = getDirect(keyBuffer, valueBuffer);
+            if (size == RocksDB.NOT_FOUND || size == 0)
+                return null;
+        }
+
+        return valueSerializer.deserialize(valueBuffer, type);
+    }
+
+    /**
+     * Get the size of a value without copying it in direct buffer I/O mode
+     *
+     * @return value size or {@link RocksDB#NOT_FOUND}
+     */
+    @SneakyThrows
+    protected int getValueSize(byte[] key) {
+        if (!directBufferIO) {
+            byte[] valueBytes = get(key);
+            return valueBytes != null ? valueBytes.length : RocksDB.NOT_FOUND;
+        }
+
+        ByteBuffer keyBuffer = KEY_BUFFERS.wrap(key);
+        ByteBuffer valueBuffer = VALUE_BUFFERS.acquire(0);
+        valueBuffer.limit(0);
+        return getDirect(keyBuffer, valueBuffer);
+    }
+
+    /**
+     * Read and deserialize values of multiple keys. In direct buffer I/O mode the values are read with
+     * multiGetByteBuffers into slices of a pooled direct buffer, and each value is deserialized from its slice.
+     * Values which don't fit into their slice are read again with {@link #getValue(byte[], Class)}.
+     *
+     * @return deserialized values in the order of keys. null for keys which are not found or have an empty value.
+     */
+    @SneakyThrows
+    protected <V> List<V> getValues(List<byte[]> keys, Class<V> type) {
+        List<V> values = new ArrayList<>(keys.size());
+        if (!directBufferIO) {
+            for (byte[] valueBytes : get(keys)) {
+                values.add(valueBytes == null || valueBytes.length == 0 ? null : valueSerializer.deserialize(valueBytes, type));
+            }
+            return values;
+        }
+
+        int chunkSize = Math.max(1, VALUE_BUFFERS.acquire(0).capacity() / MULTI_GET_VALUE_SIZE_HINT);
+        for (int from = 0; from < keys.size(); from += chunkSize) {
+            var chunk = keys.subList(from, Math.min(from + chunkSize, keys.size()));
+            values.addAll(getValuesDirect(chunk, type));
+        }
+        return values;
+    }
+
+    private <V> List<V> getValuesDirect(List<byte[]> keys, Class<V> type) throws Exception {
+        int keysLength = keys.stream().mapToInt(key -> key.length).sum();
+        ByteBuffer keyBuffer = KEY_BUFFERS.acquire(keysLength);
+        ByteBuffer valueBuffer = VALUE_BUFFERS.acquire(keys.size() * MULTI_GET_VALUE_SIZE_HINT);
+
+        List<ByteBuffer> keySlices = new ArrayList<>(keys.size());
+        List<ByteBuffer> valueSlices = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            byte[] key = keys.get(i);
+            keySlices.add(keyBuffer.slice(keyBuffer.position(), key.length).put(key).flip());
+            keyBuffer.position(keyBuffer.position() + key.length);
+            valueSlices.add(valueBuffer.slice(i * MULTI_GET_VALUE_SIZE_HINT, MULTI_GET_VALUE_SIZE_HINT));
+        }
+
+        List<ByteBufferGetStatus> results;
+        if (columnFamilyHandle != null) {
+            var columnFamilies = keys.stream()
+                    .map(key -> columnFamilyHandle)
+                    .toList();
+            results = db.multiGetByteBuffers(directReadOptions, columnFamilies, keySlices, valueSlices);
+        } else {
+            results = db.multiGetByteBuffers(directReadOptions, keySlices, valueSlices);
+        }
+
+        //Deserialize all values fitting into their slices before any retry reuses the pooled buffers
+        List<V> values = new ArrayList<>(keys.size());
+        List<Integer> retries = new ArrayList<>();
+        for (int i = 0; i < results.size(); i++) {
+            var result = results.get(i);
+            if (result.status.getCode() != Status.Code.Ok || result.requiredSize == 0) {
+                values.add(null);
+            } else if (result.requiredSize > MULTI_GET_VALUE_SIZE_HINT) {
+                values.add(null);
+                retries.add(i);
+            } else {
+                values.add(valueSerializer.deserialize(result.value, type));
+            }
+        }
+
+        for (int i : retries) {
+            values.set(i, getValue(keys.get(i), type));
+        }
+
+        return values;
+    }
+
+    /**
+     * Deserialize the value at the iterator's current position. In direct buffer I/O mode the value is copied into a
+     * pooled direct buffer and deserialized from there.
+     */
+    protected <V> V getIteratorValue(RocksIterator iterator, Class<V> type) {
+        if (!directBufferIO)
+            return valueSerializer.deserialize(iterator.value(), type);
+
+        ByteBuffer valueBuffer = VALUE_BUFFERS.acquire(0);
+        int size = iterator.value(valueBuffer);
+        if (size > valueBuffer.capacity()) {
+            valueBuffer = VALUE_BUFFERS.acquire(size);
+            iterator.value(valueBuffer);
+        }
+
+        return valueSerializer.deserialize(valueBuffer, type);
+    }
+
+    private int getDirect(ByteBuffer keyBuffer, ByteBuffer valueBuffer) throws Exception {
+        if (columnFamilyHandle != null)
+            return db.get(columnFamilyHandle, directReadOptions, keyBuffer, valueBuffer);
+        else
+            return db.get(directReadOptions, keyBuffer, valueBuffer);
+    }
+
+    /**
+     * Serialize and write a value. In direct buffer I/O mode the value is serialized into a pooled direct buffer.
+     */
+    @SneakyThrows
+    protected void putValue(WriteBatch writeBatch, byte[] key, Object value) {
+        if (!directBufferIO) {
+            write(writeBatch, key, valueSerializer.serialize(value));
+            return;
+        }
+
+        ByteBuffer valueBuffer = VALUE_BUFFERS.acquire(0);
+        if (valueSerializer.serialize(value, valueBuffer)) {
+            valueBuffer.flip();
+        } else {
+            valueBuffer = VALUE_BUFFERS.wrap(valueSerializer.serialize(value));
+        }
+        ByteBuffer keyBuffer = KEY_BUFFERS.wrap(key);
+
+        if (writeBatch != null) {
+            if (columnFamilyHandle != null)
+                writeBatch.put(columnFamilyHandle, keyBuffer, valueBuffer);
+            else
+                writeBatch.put(keyBuffer, valueBuffer);
+        } else {
+            if (columnFamilyHandle != null)
+                db.put(columnFamilyHandle, directWriteOptions, keyBuffer, valueBuffer);
+            else
+                db.put(directWriteOptions, keyBuffer, valueBuffer);
+        }
+    }
+
     @SneakyThrows
     protected void put(byte[] key, byte[] value) {
         if (columnFamilyHandle != null) {
@@ -103,6 +452,68 @@ abstract class BaseDataType<T> {
         }
     }
 
+    /**
+     * Check if a key exists. A negative answer from the bloom filters and memtables of {@link RocksDB#keyMayExist}
+     * avoids a read. A key which may exist is confirmed with a get, unless keyMayExist already found its value.
+     */
+    protected boolean keyExists(byte[] key) {
+        var valueHolder = new Holder<byte[]>();
+        boolean mayExist = columnFamilyHandle != null
+                ? db.keyMayExist(columnFamilyHandle, key, valueHolder)
+                : db.keyMayExist(key, valueHolder);
+        if (!mayExist)
+            return false;
+        if (valueHolder.getValue() != null)
+            return true;
+
+        return get(key) != null;
+    }
+
+    /**
+     * Estimate the number of keys in the range [startKey, endKey). The size of the range from
+     * {@link RocksDB#getApproximateSizes} is divided by the average size of the first entries of the range. Ranges
+     * with only a few entries are counted exactly.
+     * <p>
+     * The estimate is biased low. The range size of SST files is after compression and block overhead, while the
+     * sampled entries are uncompressed key and value bytes, so with compression enabled the count is undercounted by
+     * about the compression ratio. Only the memtable part of the range is in raw bytes. Use it for planning, like
+     * choosing between a scan and a lookup, not where an exact count is needed.
+     */
+    @SneakyThrows
+    protected long approximateCount(byte[] startKey, byte[] endKey) {
+        long rangeSize;
+        try (var start = new Slice(startKey);
+             var limit = new Slice(endKey)) {
+            var ranges = List.of(new Range(start, limit));
+            long[] sizes = columnFamilyHandle != null
+                    ? db.getApproximateSizes(columnFamilyHandle, ranges,
+                            SizeApproximationFlag.INCLUDE_FILES, SizeApproximationFlag.INCLUDE_MEMTABLES)
+                    : db.getApproximateSizes(ranges,
+                            SizeApproximationFlag.INCLUDE_FILES, SizeApproximationFlag.INCLUDE_MEMTABLES);
+            rangeSize = sizes[0];
+        }
+
+        long sampleSize = 0;
+        int sampleCount = 0;
+        try (var readOptions = new ReadOptions().setTotalOrderSeek(true);
+             RocksIterator iterator = iterator(readOptions)) {
+            for (iterator.seek(startKey); iterator.isValid() && sampleCount < APPROXIMATE_COUNT_SAMPLE_SIZE;
+                 iterator.next()) {
+                byte[] key = iterator.key();
+                if (Arrays.compareUnsigned(key, endKey) >= 0)
+                    return sampleCount; //whole range is sampled
+
+                sampleSize += key.length + iterator.value().length;
+                sampleCount++;
+            }
+        }
+
+        if (sampleCount < APPROXIMATE_COUNT_SAMPLE_SIZE)
+            return sampleCount;
+
+        return Math.max(sampleCount, rangeSize * sampleCount / Math.max(sampleSize, 1));
+    }
+
     @SneakyThrows
     protected List<byte[]> get(List<byte[]> keys) {
         if (columnFamilyHandle != null) {
@@ -141,4 +552,12 @@ abstract class BaseDataType<T> {
             return db.newIterator();
         }
     }
+
+    protected RocksIterator iterator(ReadOptions readOptions) {
+        if (columnFamilyHandle != null) {
+            return db.newIterator(columnFamilyHandle, readOptions);
+        } else {
+            return db.newIterator(readOptions);
+        }
+    }
 }
@@ -0,0 +1,58 @@
+package com.bloxbean.rocks.types.collection;
+
+import com.bloxbean.rocks.types.collection.util.ValueIterator;
+import com.bloxbean.rocks.types.common.Tuple;
+import lombok.SneakyThrows;
+import org.roaringbitmap.PeekableIntIterator;
+import org.roaringbitmap.RoaringBitmap;
+
+import java.util.NoSuchElementException;
+import java.util.function.LongFunction;
+
+/**
+ * Iterates over the set bits of a bitmap, one fragment at a time, from an iterator of
+ * (index of the first bit of the fragment, fragment bits). The bit index type is given by the bitmap.
+ */
+class BitmapBitIterator<T> implements ValueIterator<T> {
+    private final ValueIterator<Tuple<Long, RoaringBitmap>> fragments;
+    private final LongFunction<T> bitIndexMapper;
+    private PeekableIntIterator fragmentBits;
+    private long offset;
+
+    BitmapBitIterator(ValueIterator<Tuple<Long, RoaringBitmap>> fragments, LongFunction<T> bitIndexMapper) {
+        this.fragments = fragments;
+        this.bitIndexMapper = bitIndexMapper;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (fragmentBits == null || !fragmentBits.hasNext()) {
+            if (!fragments.hasNext())
+                return false;
+
+            var fragment = fragments.next();
+            offset = fragment._1;
+            fragmentBits = fragment._2.getIntIterator();
+        }
+        return true;
+    }
+
+    @Override
+    public T next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return bitIndexMapper.apply(offset + fragmentBits.next());
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Remove not supported");
+    }
+
+    @Override
+    @SneakyThrows
+    public void close() {
+        fragments.close();
+    }
+}
@@ -0,0 +1,113 @@
+package com.bloxbean.rocks.types.collection;
+
+import com.bloxbean.rocks.types.collection.util.ValueIterator;
+import com.bloxbean.rocks.types.common.KeyBuilder;
+import com.bloxbean.rocks.types.common.Tuple;
+import lombok.SneakyThrows;
+import org.roaringbitmap.RoaringBitmap;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksIterator;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterates over the non-empty fragments of a bitmap version in [fromFragmentIndex, toFragmentIndex], in ascending
+ * order or in descending order if reverse. Returns (index of the first bit of the fragment, fragment bits).
+ * Shared by {@link RocksMultiBitmap} and {@link RocksMultiBitmap64}, which differ in how the fragment index is stored
+ * in the key. See {@link FragmentFormat}.
+ */
+class BitmapFragmentIterator implements ValueIterator<Tuple<Long, RoaringBitmap>> {
+
+    /**
+     * Key layout and value format of the fragments of a bitmap type
+     */
+    interface FragmentFormat {
+        byte[] getKey(byte[] keyPrefix, long fragmentIndex);
+
+        long getFragmentIndex(byte[] key, byte[] keyPrefix);
+
+        //Other keys under the prefix, like a cardinality index, are not fragments
+        boolean isFragmentKey(byte[] key, byte[] keyPrefix);
+
+        RoaringBitmap getRoaringBitmap(byte[] valueBytes) throws IOException;
+    }
+
+    private final FragmentFormat format;
+    private final ReadOptions readOptions;
+    private final RocksIterator iterator;
+    private final byte[] keyPrefix;
+    private final long fromFragmentIndex;
+    private final long toFragmentIndex;
+    private final int fragmentSize;
+    private final boolean reverse;
+
+    BitmapFragmentIterator(BaseDataType<?> bitmap, FragmentFormat format, byte[] keyPrefix, long fromFragmentIndex,
+                           long toFragmentIndex, int fragmentSize, boolean reverse) {
+        this.format = format;
+        //Fragment keys can span prefix extractor domains, so seek in total order
+        this.readOptions = new ReadOptions().setTotalOrderSeek(true);
+        this.iterator = bitmap.iterator(readOptions);
+        this.keyPrefix = keyPrefix;
+        this.fromFragmentIndex = Math.max(fromFragmentIndex, 0);
+        this.toFragmentIndex = toFragmentIndex;
+        this.fragmentSize = fragmentSize;
+        this.reverse = reverse;
+        if (reverse)
+            this.iterator.seekForPrev(format.getKey(keyPrefix, this.toFragmentIndex));
+        else
+            this.iterator.seek(format.getKey(keyPrefix, this.fromFragmentIndex));
+        skipEmptyFragments();
+    }
+
+    @Override
+    public boolean hasNext() {
+        //in reverse order, keys which aren't fragments can come right before the first fragment
+        if (!iterator.isValid() || !KeyBuilder.hasPrefix(iterator.key(), keyPrefix)
+                || !format.isFragmentKey(iterator.key(), keyPrefix))
+            return false;
+
+        long fragmentIndex = format.getFragmentIndex(iterator.key(), keyPrefix);
+        return fragmentIndex >= fromFragmentIndex && fragmentIndex <= toFragmentIndex;
+    }
+
+    @Override
+    @SneakyThrows
+    public Tuple<Long, RoaringBitmap> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        long fragmentIndex = format.getFragmentIndex(iterator.key(), keyPrefix);
+        var bitSet = format.getRoaringBitmap(iterator.value());
+        move();
+        skipEmptyFragments();
+
+        return new Tuple<>(fragmentIndex * fragmentSize, bitSet);
+    }
+
+    private void move() {
+        if (reverse)
+            iterator.prev();
+        else
+            iterator.next();
+    }
+
+    //Fragments can be empty after clearBit
+    private void skipEmptyFragments() {
+        while (hasNext() && iterator.value().length == 0) {
+            move();
+        }
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Remove not supported");
+    }
+
+    @Override
+    public void close() {
+        iterator.close();
+        readOptions.close();
+    }
+}
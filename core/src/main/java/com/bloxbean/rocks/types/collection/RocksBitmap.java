@@ -1,5 +1,7 @@
 package com.bloxbean.rocks.types.collection;
 
+import com.bloxbean.rocks.types.collection.util.ValueIterator;
+import com.bloxbean.rocks.types.common.Tuple;
 import com.bloxbean.rocks.types.config.RocksDBConfig;
 import org.roaringbitmap.RoaringBitmap;
 import org.rocksdb.WriteBatch;
@@ -34,6 +36,26 @@ public class RocksBitmap extends RocksMultiBitmap {
         super.setBitBatch(null, writeBatch, bitIndexes);
     }
 
+    public void setBitBatch(WriteBatch writeBatch, RoaringBitmap bits) {
+        super.setBitBatch(null, writeBatch, bits);
+    }
+
+    public void setRange(int fromIndex, int toIndex) {
+        super.setRange(null, fromIndex, toIndex);
+    }
+
+    public void clearRange(int fromIndex, int toIndex) {
+        super.clearRange(null, fromIndex, toIndex);
+    }
+
+    public void flipRange(int fromIndex, int toIndex) {
+        super.flipRange(null, fromIndex, toIndex);
+    }
+
+    public long countRange(int fromIndex, int toIndex) {
+        return super.countRange(null, fromIndex, toIndex);
+    }
+
     public boolean getBit(int bitIndex) {
         return super.getBit(null, bitIndex);
     }
@@ -46,6 +68,18 @@ public class RocksBitmap extends RocksMultiBitmap {
         super.clearBitBatch(null, writeBatch, bitIndexes);
     }
 
+    public void clearBitBatch(WriteBatch writeBatch, RoaringBitmap bits) {
+        super.clearBitBatch(null, writeBatch, bits);
+    }
+
+    public void compact() {
+        super.compact(null);
+    }
+
+    public void rechunk(int newFragmentSize) {
+        super.rechunk(null, newFragmentSize);
+    }
+
     public long nextSetBit(int fromIndex) {
         return super.nextSetBit(null, fromIndex);
     }
@@ -69,4 +103,28 @@ public class RocksBitmap extends RocksMultiBitmap {
     public RoaringBitmap getBits(int fromFragmentIndex, int toFragmentIndex) {
         return super.getBits(null, fromFragmentIndex, toFragmentIndex);
     }
+
+    public long cardinality() {
+        return super.cardinality(null);
+    }
+
+    public long rank(int bitIndex) {
+        return super.rank(null, bitIndex);
+    }
+
+    public long select(long k) {
+        return super.select(null, k);
+    }
+
+    public ValueIterator<Tuple<Long, RoaringBitmap>> fragmentIterator() {
+        return super.fragmentIterator(null);
+    }
+
+    public ValueIterator<Tuple<Long, RoaringBitmap>> fragmentIterator(int fromFragmentIndex, int toFragmentIndex) {
+        return super.fragmentIterator(null, fromFragmentIndex, toFragmentIndex);
+    }
+
+    public ValueIterator<Integer> bitIterator() {
+        return super.bitIterator(null);
+    }
 }
@@ -0,0 +1,99 @@
+package com.bloxbean.rocks.types.collection;
+
+import com.bloxbean.rocks.types.collection.util.ValueIterator;
+import com.bloxbean.rocks.types.common.Tuple;
+import com.bloxbean.rocks.types.config.RocksDBConfig;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.rocksdb.WriteBatch;
+
+/**
+ * 64-bit bitmap implementation using RocksDB
+ * RocksBitmap64 is a wrapper class for RocksMultiBitmap64 with default column family
+ */
+public class RocksBitmap64 extends RocksMultiBitmap64 {
+
+    public RocksBitmap64(RocksDBConfig rocksDBConfig, String name) {
+        super(rocksDBConfig, name);
+    }
+
+    public RocksBitmap64(RocksDBConfig rocksDBConfig, String name, int fragmentSize) {
+        super(rocksDBConfig, name, fragmentSize);
+    }
+
+    public RocksBitmap64(RocksDBConfig rocksDBConfig, String columnFamily, String name) {
+        super(rocksDBConfig, columnFamily, name);
+    }
+
+    public RocksBitmap64(RocksDBConfig rocksDBConfig, String columnFamily, String name, int fragmentSize) {
+        super(rocksDBConfig, columnFamily, name, fragmentSize);
+    }
+
+    public void setBit(long bitIndex) {
+        super.setBit(null, bitIndex);
+    }
+
+    public void setBitBatch(WriteBatch writeBatch, long... bitIndexes) {
+        super.setBitBatch(null, writeBatch, bitIndexes);
+    }
+
+    public void setBitBatch(WriteBatch writeBatch, Roaring64NavigableMap bits) {
+        super.setBitBatch(null, writeBatch, bits);
+    }
+
+    public boolean getBit(long bitIndex) {
+        return super.getBit(null, bitIndex);
+    }
+
+    public void clearBit(long bitIndex) {
+        super.clearBit(null, bitIndex);
+    }
+
+    public void clearBitBatch(WriteBatch writeBatch, long... bitIndexes) {
+        super.clearBitBatch(null, writeBatch, bitIndexes);
+    }
+
+    public void clearBitBatch(WriteBatch writeBatch, Roaring64NavigableMap bits) {
+        super.clearBitBatch(null, writeBatch, bits);
+    }
+
+    public long nextSetBit(long fromIndex) {
+        return super.nextSetBit(null, fromIndex);
+    }
+
+    public long nextClearBit(long fromIndex) {
+        return super.nextClearBit(null, fromIndex);
+    }
+
+    public long previousSetBit(long fromIndex) {
+        return super.previousSetBit(null, fromIndex);
+    }
+
+    public long previousClearBit(long fromIndex) {
+        return super.previousClearBit(null, fromIndex);
+    }
+
+    public Roaring64NavigableMap getAllBits() {
+        return super.getAllBits(null);
+    }
+
+    public Roaring64NavigableMap getBits(long fromFragmentIndex, long toFragmentIndex) {
+        return super.getBits(null, fromFragmentIndex, toFragmentIndex);
+    }
+
+    public long cardinality() {
+        return super.cardinality(null);
+    }
+
+    public ValueIterator<Tuple<Long, RoaringBitmap>> fragmentIterator() {
+        return super.fragmentIterator(null);
+    }
+
+    public ValueIterator<Tuple<Long, RoaringBitmap>> fragmentIterator(long fromFragmentIndex, long toFragmentIndex) {
+        return super.fragmentIterator(null, fromFragmentIndex, toFragmentIndex);
+    }
+
+    public ValueIterator<Long> bitIterator() {
+        return super.bitIterator(null);
+    }
+}
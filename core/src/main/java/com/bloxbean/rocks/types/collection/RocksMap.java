@@ -1,6 +1,7 @@
 package com.bloxbean.rocks.types.collection;
 
 import com.bloxbean.rocks.types.collection.util.ValueIterator;
+import com.bloxbean.rocks.types.common.IndexQuery;
 import com.bloxbean.rocks.types.common.Tuple;
 import com.bloxbean.rocks.types.config.RocksDBConfig;
 import lombok.NonNull;
@@ -63,4 +64,28 @@ public class RocksMap<K, V> extends RocksMultiMap<K, V> {
     public List<V> multiGet(List<K> keys) {
         return super.multiGet(null, keys);
     }
+
+    public long size() {
+        return super.size(null);
+    }
+
+    public long approximateSize() {
+        return super.approximateSize(null);
+    }
+
+    public List<Map.Entry<K, V>> findBy(String indexName, String partKey, String secondaryKey) {
+        return super.findBy(null, indexName, partKey, secondaryKey);
+    }
+
+    public List<Map.Entry<K, V>> findBy(String indexName, String partKey) {
+        return super.findBy(null, indexName, partKey);
+    }
+
+    public List<Map.Entry<K, V>> findByAll(IndexQuery... queries) {
+        return super.findByAll(null, queries);
+    }
+
+    public List<Map.Entry<K, V>> findByAny(IndexQuery... queries) {
+        return super.findByAny(null, queries);
+    }
 }
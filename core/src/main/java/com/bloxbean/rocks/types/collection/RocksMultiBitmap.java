@@ -1,44 +1,158 @@
 package com.bloxbean.rocks.types.collection;
 
 import com.bloxbean.rocks.types.collection.metadata.BitmapMetadata;
+import com.bloxbean.rocks.types.collection.util.EmptyIterator;
+import com.bloxbean.rocks.types.collection.util.ValueIterator;
 import com.bloxbean.rocks.types.common.KeyBuilder;
+import com.bloxbean.rocks.types.common.Tuple;
 import com.bloxbean.rocks.types.config.RocksDBConfig;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
 import org.roaringbitmap.RoaringBitmap;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksIterator;
 import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAccumulator;
 
 /**
  * Bitmap implementation using RocksDB. It supports multiple bitmaps under the same name but different namespaces.
  * This implementation uses RoaringBitmap as the underlying bitmap implementation.
  * <p>
- * This implementation is not thread safe.
+ * This implementation is not thread safe. With {@link RocksDBConfig#setBitmapMergeWrites(boolean)}, bit changes are
+ * appended to fragments as merge operands instead of rewriting the fragment, so concurrent direct setBit / clearBit
+ * calls don't lose bit changes. Their metadata updates (maxFragmentIndex and the unknown cardinality) are made under
+ * the metadata lock against the stored metadata, so they aren't lost either, at the cost of one metadata read per
+ * write. Appended changes are applied on read and folded into the fragments by {@link #compact(byte[])}.
+ * <p>
+ * The cardinality of each fragment is kept in a side index next to the fragments, and the total cardinality in the
+ * bitmap metadata, so {@link #cardinality(byte[])}, {@link #rank(byte[], int)} and {@link #select(byte[], long)} don't
+ * need to read every fragment. Merge writes can't track cardinality without reading the fragment, so they mark it
+ * unknown until the next {@link #compact(byte[])}. Like maxFragmentIndex, the cardinality is read from the stored
+ * metadata, so a namespace should be updated only once per uncommitted WriteBatch.
+ * <p>
+ * {@link #nextSetBit(byte[], int)} and {@link #previousSetBit(byte[], int)} only visit non-empty fragments, seeking
+ * over the fragment keys with an iterator. With {@link RocksDBConfig#setBitmapFragmentSummaries(boolean)}, each
+ * instance instead keeps an in-memory summary bitmap of the non-empty fragment indexes of recently navigated
+ * namespaces, built with one scan over the fragment keys and kept up to date by writes through the same instance.
+ * The summary doesn't see writes made through other instances, so it's off by default.
  */
 @Slf4j
 public class RocksMultiBitmap extends BaseDataType {
-    private static final int DEFAULT_FRAGMENT_SIZE = 1000; //1000 bits
-    private int fragmentSize;
+    private static final int DEFAULT_FRAGMENT_SIZE = 1 << 16; //one RoaringBitmap container per fragment
+    //Fragment size of bitmaps created by older versions without an explicit fragment size
+    private static final int LEGACY_FRAGMENT_SIZE = 1000;
+
+    //Bit change appended to a fragment in merge write mode: op (1 byte) | fragment bit index (int).
+    //Op values never collide with the first byte of a serialized RoaringBitmap.
+    private static final byte SET_BIT_OP = 0x01;
+    private static final byte CLEAR_BIT_OP = 0x02;
+
+    //Cardinality index key: prefix | "c" | fragment index. The 1 byte part sorts before all fragment keys
+    private static final byte[] COUNTS_PART = "c".getBytes();
+
+    //No of fragments combined by one task of a bitmap operation
+    private static final int OPERATION_CHUNK_SIZE = 1024;
+
+    //Fragment key: prefix | fragment index (int)
+    private static final BitmapFragmentIterator.FragmentFormat FRAGMENT_FORMAT = new BitmapFragmentIterator.FragmentFormat() {
+        @Override
+        public byte[] getKey(byte[] keyPrefix, long fragmentIndex) {
+            return RocksMultiBitmap.getKey(keyPrefix, (int) fragmentIndex);
+        }
+
+        @Override
+        public long getFragmentIndex(byte[] key, byte[] keyPrefix) {
+            return RocksMultiBitmap.getFragmentIndex(key, keyPrefix);
+        }
+
+        @Override
+        public boolean isFragmentKey(byte[] key, byte[] keyPrefix) {
+            return RocksMultiBitmap.isFragmentKey(key, keyPrefix);
+        }
+
+        @Override
+        public RoaringBitmap getRoaringBitmap(byte[] valueBytes) throws IOException {
+            return RocksMultiBitmap.getRoaringBitmap(valueBytes);
+        }
+    };
+
+    private enum BitmapOperation {
+        AND, OR, XOR, ANDNOT
+    }
+
+    private enum RangeOperation {
+        SET, CLEAR, FLIP
+    }
+
+    //Fragment size of new namespaces. Existing namespaces use the fragment size in their metadata
+    private final int fragmentSize;
+    //Fragment size of namespaces with metadata written before the fragment size was recorded
+    private final int legacyFragmentSize;
+    private final boolean mergeWrites;
+    //Executor for the chunks of bitmap operations. Null to run them in the calling thread
+    private final Executor operationExecutor;
+    //Fragment key prefix -> summary of fragments which may be non-empty. Bounded by the metadata cache size
+    private final Map<ByteBuffer, FragmentSummary> fragmentSummaries;
+    private final int maxFragmentSummaries;
 
     public RocksMultiBitmap(RocksDBConfig rocksDBConfig, String name) {
-        super(rocksDBConfig, name, null);
-        this.fragmentSize = DEFAULT_FRAGMENT_SIZE;
+        this(rocksDBConfig, null, name, DEFAULT_FRAGMENT_SIZE, LEGACY_FRAGMENT_SIZE);
     }
 
     public RocksMultiBitmap(RocksDBConfig rocksDBConfig, String name, int fragmentSize) {
-        super(rocksDBConfig, name, null);
-        this.fragmentSize = fragmentSize;
+        this(rocksDBConfig, null, name, fragmentSize, fragmentSize);
     }
 
     public RocksMultiBitmap(RocksDBConfig rocksDBConfig, String columnFamily, String name) {
-        super(rocksDBConfig, columnFamily, name, null);
+        this(rocksDBConfig, columnFamily, name, DEFAULT_FRAGMENT_SIZE, LEGACY_FRAGMENT_SIZE);
     }
 
     public RocksMultiBitmap(RocksDBConfig rocksDBConfig, String columnFamily, String name, int fragmentSize) {
+        this(rocksDBConfig, columnFamily, name, fragmentSize, fragmentSize);
+    }
+
+    private RocksMultiBitmap(RocksDBConfig rocksDBConfig, String columnFamily, String name, int fragmentSize,
+                             int legacyFragmentSize) {
         super(rocksDBConfig, columnFamily, name, null);
+        if (fragmentSize <= 0)
+            throw new IllegalArgumentException("Fragment size must be greater than 0");
+
         this.fragmentSize = fragmentSize;
+        this.legacyFragmentSize = legacyFragmentSize;
+        this.mergeWrites = rocksDBConfig.isBitmapMergeWrites();
+        this.operationExecutor = rocksDBConfig.getBitmapOperationExecutor();
+        if (mergeWrites && !rocksDBConfig.hasMergeOperator(columnFamily))
+            throw new IllegalStateException("Bitmap merge writes need the merge operator on column family "
+                    + (columnFamily != null ? columnFamily : "default") + ". Add it to the merge column families");
+        this.maxFragmentSummaries = rocksDBConfig.isBitmapFragmentSummaries() ? rocksDBConfig.getMetadataCacheSize() : 0;
+        this.fragmentSummaries = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, FragmentSummary> eldest) {
+                return size() > maxFragmentSummaries;
+            }
+        });
+    }
+
+    private int getFragmentSize(BitmapMetadata metadata) {
+        return metadata.getFragmentSize() > 0 ? metadata.getFragmentSize() : legacyFragmentSize;
     }
 
     public void setBit(byte[] ns, int bitIndex) {
@@ -47,39 +161,98 @@ public class RocksMultiBitmap extends BaseDataType {
     }
 
     public void setBitBatch(byte[] ns, WriteBatch writeBatch, int... bitIndexes) {
+        setBitBatch(ns, writeBatch, RoaringBitmap.bitmapOf(bitIndexes));
+    }
+
+    /**
+     * Set all bits of the given bitmap. Bits are grouped by fragment, so each fragment is read and written once.
+     */
+    public void setBitBatch(byte[] ns, WriteBatch writeBatch, RoaringBitmap bits) {
         var metadata = createMetadata(ns).orElseThrow();
-        for (int bitIndex : bitIndexes) {
-            setBit(ns, writeBatch, metadata, bitIndex);
-        }
+        updateBits(ns, writeBatch, metadata, bits, true);
     }
 
     @SneakyThrows
     private void setBit(byte[] ns, WriteBatch writeBatch, BitmapMetadata metadata, int bitIndex) {
-
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        int fragmentSize = getFragmentSize(metadata);
         int fragmentIndex = bitIndex / fragmentSize;
         int fragmentBitIndex = bitIndex % fragmentSize;
 
-        byte[] keyBytes = getKey(metadata, ns, fragmentIndex);
-
+        byte[] keyBytes = getKey(keyPrefix, fragmentIndex);
 
-        RoaringBitmap bitSet = null;
-        byte[] valueBytes = get(keyBytes);
-        if (valueBytes == null || valueBytes.length == 0) {
-            bitSet = new RoaringBitmap();
+        boolean metadataChanged;
+        if (mergeWrites) {
+            merge(writeBatch, keyBytes, bitChange(SET_BIT_OP, fragmentBitIndex));
+            addToFragmentSummary(writeBatch, keyPrefix, fragmentIndex);
+            metadataChanged = invalidateCardinality(metadata);
         } else {
-            bitSet = getRoaringBitmap(valueBytes);
-        }
+            RoaringBitmap bitSet = null;
+            byte[] valueBytes = get(keyBytes);
+            if (valueBytes == null || valueBytes.length == 0) {
+                bitSet = new RoaringBitmap();
+            } else {
+                bitSet = getRoaringBitmap(valueBytes);
+            }
 
-        bitSet.add(fragmentBitIndex);
+            long oldCardinality = bitSet.getLongCardinality();
+            bitSet.add(fragmentBitIndex);
 
-        byte[] bytes = serializeRoaringBitmap(bitSet);
+            metadataChanged = writeFragment(writeBatch, metadata, keyPrefix, fragmentIndex, bitSet, oldCardinality);
+        }
 
-        write(writeBatch, keyBytes, bytes);
         if (fragmentIndex > metadata.getMaxFragmentIndex()) {
             metadata.setMaxFragmentIndex(fragmentIndex);
-            updateMetadata(writeBatch, metadata, ns);
+            metadataChanged = true;
             log.info("Max fragment index updated to {}", metadata);
         }
+
+        if (mergeWrites)
+            updateMergedMetadata(writeBatch, metadata, ns, metadataChanged);
+        else if (metadataChanged)
+            updateMetadata(writeBatch, metadata, ns);
+    }
+
+    /**
+     * Write a fragment and update the cardinality index if the fragment's cardinality has changed.
+     *
+     * @return true if the cardinality in metadata was updated
+     */
+    private boolean writeFragment(WriteBatch writeBatch, BitmapMetadata metadata, byte[] keyPrefix, int fragmentIndex,
+                                  RoaringBitmap bitSet, long oldCardinality) throws IOException {
+        write(writeBatch, getKey(keyPrefix, fragmentIndex), serializeRoaringBitmap(bitSet));
+        if (!bitSet.isEmpty())
+            addToFragmentSummary(writeBatch, keyPrefix, fragmentIndex);
+        else if (writeBatch == null)
+            removeFromFragmentSummary(keyPrefix, fragmentIndex);
+
+        long cardinality = bitSet.getLongCardinality();
+        if (metadata.getCardinality() < 0 || cardinality == oldCardinality)
+            return false;
+
+        writeFragmentCardinality(writeBatch, keyPrefix, fragmentIndex, cardinality);
+        metadata.setCardinality(metadata.getCardinality() + cardinality - oldCardinality);
+        return true;
+    }
+
+    private void writeFragmentCardinality(WriteBatch writeBatch, byte[] keyPrefix, int fragmentIndex, long cardinality) {
+        byte[] countKey = getCountKey(keyPrefix, fragmentIndex);
+        if (cardinality == 0) {
+            if (writeBatch != null)
+                deleteBatch(writeBatch, countKey);
+            else
+                delete(countKey);
+        } else {
+            write(writeBatch, countKey, KeyBuilder.intToBytes((int) cardinality));
+        }
+    }
+
+    private boolean invalidateCardinality(BitmapMetadata metadata) {
+        if (metadata.getCardinality() < 0)
+            return false;
+
+        metadata.setCardinality(-1);
+        return true;
     }
 
     private static byte[] serializeRoaringBitmap(RoaringBitmap bitSet) throws IOException {
@@ -88,33 +261,140 @@ public class RocksMultiBitmap extends BaseDataType {
         return baos.toByteArray();
     }
 
+    /**
+     * Read a fragment value: a serialized RoaringBitmap followed by bit changes appended by merge writes, or only
+     * bit changes if the fragment was never rewritten. The bit changes are applied in order.
+     */
     private static RoaringBitmap getRoaringBitmap(byte[] valueBytes) throws IOException {
         RoaringBitmap bitSet;
         bitSet = new RoaringBitmap();//BitSet.valueOf(valueBytes);
-        ByteArrayInputStream bais = new ByteArrayInputStream(valueBytes);
-        bitSet.deserialize(new DataInputStream(bais));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(valueBytes));
+        if (valueBytes[0] != SET_BIT_OP && valueBytes[0] != CLEAR_BIT_OP)
+            bitSet.deserialize(in);
+
+        while (in.available() > 0) {
+            byte op = in.readByte();
+            int fragmentBitIndex = in.readInt();
+            if (op == SET_BIT_OP)
+                bitSet.add(fragmentBitIndex);
+            else if (op == CLEAR_BIT_OP)
+                bitSet.remove(fragmentBitIndex);
+            else
+                throw new IllegalStateException("Invalid bit change op in bitmap fragment: " + op);
+        }
         return bitSet;
     }
 
+    private static byte[] bitChange(byte op, int fragmentBitIndex) {
+        return new byte[]{op,
+                (byte) (fragmentBitIndex >>> 24),
+                (byte) (fragmentBitIndex >>> 16),
+                (byte) (fragmentBitIndex >>> 8),
+                (byte) fragmentBitIndex};
+    }
+
+    //All changes of a fragment concatenated into a single merge operand
+    private static byte[] bitChanges(byte op, RoaringBitmap fragmentBits) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(fragmentBits.getCardinality() * 5);
+        fragmentBits.forEach((int fragmentBitIndex) -> baos.writeBytes(bitChange(op, fragmentBitIndex)));
+        return baos.toByteArray();
+    }
+
     public void clearBit(byte[] ns, int bitIndex) {
         var metadata = createMetadata(ns).orElseThrow();
         clearBit(ns, null, metadata, bitIndex);
     }
 
     public void clearBitBatch(byte[] ns, WriteBatch writeBatch, int... bitIndexes) {
+        clearBitBatch(ns, writeBatch, RoaringBitmap.bitmapOf(bitIndexes));
+    }
+
+    /**
+     * Clear all bits of the given bitmap. Bits are grouped by fragment, so each fragment is read and written once.
+     */
+    public void clearBitBatch(byte[] ns, WriteBatch writeBatch, RoaringBitmap bits) {
         var metadata = createMetadata(ns).orElseThrow();
-        for (int bitIndex : bitIndexes) {
-            clearBit(ns, writeBatch, metadata, bitIndex);
+        updateBits(ns, writeBatch, metadata, bits, false);
+    }
+
+    @SneakyThrows
+    private void updateBits(byte[] ns, WriteBatch writeBatch, BitmapMetadata metadata, RoaringBitmap bits, boolean set) {
+        TreeMap<Integer, RoaringBitmap> fragmentBits = groupByFragment(bits, getFragmentSize(metadata));
+        if (!set) //nothing to clear in fragments which were never written
+            fragmentBits.keySet().removeIf(fragmentIndex -> fragmentIndex > metadata.getMaxFragmentIndex());
+        if (fragmentBits.isEmpty())
+            return;
+
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        List<byte[]> keys = new ArrayList<>(fragmentBits.size());
+        for (int fragmentIndex : fragmentBits.keySet()) {
+            keys.add(getKey(keyPrefix, fragmentIndex));
+        }
+
+        boolean metadataChanged = false;
+        if (mergeWrites) {
+            int i = 0;
+            for (var entry : fragmentBits.entrySet()) {
+                merge(writeBatch, keys.get(i++), bitChanges(set ? SET_BIT_OP : CLEAR_BIT_OP, entry.getValue()));
+                if (set)
+                    addToFragmentSummary(writeBatch, keyPrefix, entry.getKey());
+            }
+            metadataChanged = invalidateCardinality(metadata);
+        } else {
+            List<byte[]> values = get(keys);
+            int i = 0;
+            for (var entry : fragmentBits.entrySet()) {
+                byte[] valueBytes = values.get(i++);
+                if ((valueBytes == null || valueBytes.length == 0) && !set)
+                    continue;
+
+                var bitSet = valueBytes == null || valueBytes.length == 0 ? new RoaringBitmap() : getRoaringBitmap(valueBytes);
+                long oldCardinality = bitSet.getLongCardinality();
+                if (set)
+                    bitSet.or(entry.getValue());
+                else
+                    bitSet.andNot(entry.getValue());
+                metadataChanged |= writeFragment(writeBatch, metadata, keyPrefix, entry.getKey(), bitSet, oldCardinality);
+            }
         }
+
+        int maxFragmentIndex = fragmentBits.lastKey();
+        if (set && maxFragmentIndex > metadata.getMaxFragmentIndex()) {
+            metadata.setMaxFragmentIndex(maxFragmentIndex);
+            metadataChanged = true;
+        }
+
+        if (mergeWrites)
+            updateMergedMetadata(writeBatch, metadata, ns, metadataChanged);
+        else if (metadataChanged)
+            updateMetadata(writeBatch, metadata, ns);
+    }
+
+    //Split bits into fragment index -> bits relative to the fragment
+    private static TreeMap<Integer, RoaringBitmap> groupByFragment(RoaringBitmap bits, int fragmentSize) {
+        TreeMap<Integer, RoaringBitmap> fragmentBits = new TreeMap<>();
+        bits.forEach((int bitIndex) -> fragmentBits
+                .computeIfAbsent(bitIndex / fragmentSize, k -> new RoaringBitmap())
+                .add(bitIndex % fragmentSize));
+        return fragmentBits;
     }
 
     @SneakyThrows
     private void clearBit(byte[] ns, WriteBatch writeBatch, BitmapMetadata metadata, int bitIndex) {
-
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        int fragmentSize = getFragmentSize(metadata);
         int fragmentIndex = bitIndex / fragmentSize;
         int fragmentBitIndex = bitIndex % fragmentSize;
 
-        byte[] keyBytes = getKey(metadata, ns, fragmentIndex);
+        byte[] keyBytes = getKey(keyPrefix, fragmentIndex);
+
+        if (mergeWrites) {
+            if (fragmentIndex <= metadata.getMaxFragmentIndex()) {
+                merge(writeBatch, keyBytes, bitChange(CLEAR_BIT_OP, fragmentBitIndex));
+                updateMergedMetadata(writeBatch, metadata, ns, invalidateCardinality(metadata));
+            }
+            return;
+        }
 
         byte[] valueBytes = get(keyBytes);
         if (valueBytes == null || valueBytes.length == 0) {
@@ -122,11 +402,176 @@ public class RocksMultiBitmap extends BaseDataType {
         }
 
         var bitSet = getRoaringBitmap(valueBytes);
+        long oldCardinality = bitSet.getLongCardinality();
         bitSet.remove(fragmentBitIndex);
 
-        byte[] serializedBytes = serializeRoaringBitmap(bitSet);
+        if (writeFragment(writeBatch, metadata, keyPrefix, fragmentIndex, bitSet, oldCardinality))
+            updateMetadata(writeBatch, metadata, ns);
+    }
 
-        write(writeBatch, keyBytes, serializedBytes);
+    /**
+     * Set all bits in the range [fromIndex, toIndex). Each affected fragment is read and written once.
+     * Range operations always rewrite fragments, also in merge write mode.
+     */
+    public void setRange(byte[] ns, int fromIndex, int toIndex) {
+        var metadata = createMetadata(ns).orElseThrow();
+        updateRange(ns, null, metadata, fromIndex, toIndex, RangeOperation.SET);
+    }
+
+    public void setRangeBatch(byte[] ns, WriteBatch writeBatch, int fromIndex, int toIndex) {
+        var metadata = createMetadata(ns).orElseThrow();
+        updateRange(ns, writeBatch, metadata, fromIndex, toIndex, RangeOperation.SET);
+    }
+
+    /**
+     * Clear all bits in the range [fromIndex, toIndex). Fragments which become empty are deleted.
+     */
+    public void clearRange(byte[] ns, int fromIndex, int toIndex) {
+        var metadata = createMetadata(ns).orElseThrow();
+        updateRange(ns, null, metadata, fromIndex, toIndex, RangeOperation.CLEAR);
+    }
+
+    public void clearRangeBatch(byte[] ns, WriteBatch writeBatch, int fromIndex, int toIndex) {
+        var metadata = createMetadata(ns).orElseThrow();
+        updateRange(ns, writeBatch, metadata, fromIndex, toIndex, RangeOperation.CLEAR);
+    }
+
+    /**
+     * Flip all bits in the range [fromIndex, toIndex). Fragments which become empty are deleted.
+     */
+    public void flipRange(byte[] ns, int fromIndex, int toIndex) {
+        var metadata = createMetadata(ns).orElseThrow();
+        updateRange(ns, null, metadata, fromIndex, toIndex, RangeOperation.FLIP);
+    }
+
+    public void flipRangeBatch(byte[] ns, WriteBatch writeBatch, int fromIndex, int toIndex) {
+        var metadata = createMetadata(ns).orElseThrow();
+        updateRange(ns, writeBatch, metadata, fromIndex, toIndex, RangeOperation.FLIP);
+    }
+
+    @SneakyThrows
+    private void updateRange(byte[] ns, WriteBatch writeBatch, BitmapMetadata metadata, int fromIndex, int toIndex,
+                             RangeOperation operation) {
+        if (fromIndex < 0 || fromIndex > toIndex)
+            throw new IllegalArgumentException("Invalid range: [" + fromIndex + ", " + toIndex + ")");
+        if (fromIndex == toIndex)
+            return;
+
+        int fragmentSize = getFragmentSize(metadata);
+        int fromFragmentIndex = fromIndex / fragmentSize;
+        int toFragmentIndex = (toIndex - 1) / fragmentSize;
+        if (operation == RangeOperation.CLEAR) //nothing to clear in fragments which were never written
+            toFragmentIndex = (int) Math.min(toFragmentIndex, metadata.getMaxFragmentIndex());
+
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        boolean metadataChanged = false;
+        for (int chunkStart = fromFragmentIndex; chunkStart <= toFragmentIndex; chunkStart += OPERATION_CHUNK_SIZE) {
+            int chunkEnd = (int) Math.min((long) chunkStart + OPERATION_CHUNK_SIZE - 1, toFragmentIndex);
+            List<byte[]> keys = new ArrayList<>(chunkEnd - chunkStart + 1);
+            for (int i = chunkStart; i <= chunkEnd; i++) {
+                keys.add(getKey(keyPrefix, i));
+            }
+
+            List<byte[]> values = get(keys);
+            for (int i = chunkStart; i <= chunkEnd; i++) {
+                byte[] valueBytes = values.get(i - chunkStart);
+                boolean exists = valueBytes != null && valueBytes.length > 0;
+                if (!exists && operation == RangeOperation.CLEAR)
+                    continue;
+
+                long fragmentOffset = (long) i * fragmentSize;
+                long rangeStart = Math.max(fromIndex, fragmentOffset) - fragmentOffset;
+                long rangeEnd = Math.min(toIndex, fragmentOffset + fragmentSize) - fragmentOffset;
+
+                var bitSet = exists ? getRoaringBitmap(valueBytes) : new RoaringBitmap();
+                long oldCardinality = bitSet.getLongCardinality();
+                switch (operation) {
+                    case SET -> bitSet.add(rangeStart, rangeEnd);
+                    case CLEAR -> bitSet.remove(rangeStart, rangeEnd);
+                    case FLIP -> bitSet.flip(rangeStart, rangeEnd);
+                }
+
+                if (bitSet.isEmpty())
+                    metadataChanged |= deleteFragment(writeBatch, metadata, keyPrefix, i, oldCardinality);
+                else
+                    metadataChanged |= writeFragment(writeBatch, metadata, keyPrefix, i, bitSet, oldCardinality);
+            }
+        }
+
+        if (operation != RangeOperation.CLEAR && toFragmentIndex > metadata.getMaxFragmentIndex()) {
+            metadata.setMaxFragmentIndex(toFragmentIndex);
+            metadataChanged = true;
+        }
+
+        if (metadataChanged)
+            updateMetadata(writeBatch, metadata, ns);
+    }
+
+    /**
+     * Delete a fragment and its entry in the cardinality index.
+     *
+     * @return true if the cardinality in metadata was updated
+     */
+    private boolean deleteFragment(WriteBatch writeBatch, BitmapMetadata metadata, byte[] keyPrefix, int fragmentIndex,
+                                   long oldCardinality) {
+        byte[] keyBytes = getKey(keyPrefix, fragmentIndex);
+        if (writeBatch != null) {
+            deleteBatch(writeBatch, keyBytes);
+        } else {
+            delete(keyBytes);
+            removeFromFragmentSummary(keyPrefix, fragmentIndex);
+        }
+
+        if (metadata.getCardinality() < 0 || oldCardinality == 0)
+            return false;
+
+        writeFragmentCardinality(writeBatch, keyPrefix, fragmentIndex, 0);
+        metadata.setCardinality(metadata.getCardinality() - oldCardinality);
+        return true;
+    }
+
+    /**
+     * Number of bits set in the range [fromIndex, toIndex). Only the first and last fragment of the range are
+     * loaded if the cardinality index is available.
+     */
+    @SneakyThrows
+    public long countRange(byte[] ns, int fromIndex, int toIndex) {
+        if (fromIndex < 0 || fromIndex > toIndex)
+            throw new IllegalArgumentException("Invalid range: [" + fromIndex + ", " + toIndex + ")");
+
+        var metadata = getMetadata(ns).orElseThrow();
+        if (fromIndex == toIndex)
+            return 0;
+
+        int fragmentSize = getFragmentSize(metadata);
+        int fromFragmentIndex = fromIndex / fragmentSize;
+        int toFragmentIndex = (toIndex - 1) / fragmentSize;
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+
+        long count = 0;
+        //Whole fragments inside the range
+        try (var counts = new FragmentCardinalityIterator(ns, metadata, fromFragmentIndex + 1)) {
+            while (counts.hasNext()) {
+                var fragmentCount = counts.next();
+                if (fragmentCount._1 >= toFragmentIndex)
+                    break;
+                count += fragmentCount._2;
+            }
+        }
+
+        //Partial fragments at both ends of the range
+        for (int fragmentIndex : new TreeSet<>(List.of(fromFragmentIndex, toFragmentIndex))) {
+            byte[] valueBytes = get(getKey(keyPrefix, fragmentIndex));
+            if (valueBytes == null || valueBytes.length == 0)
+                continue;
+
+            long fragmentOffset = (long) fragmentIndex * fragmentSize;
+            long rangeStart = Math.max(fromIndex, fragmentOffset) - fragmentOffset;
+            long rangeEnd = Math.min(toIndex, fragmentOffset + fragmentSize) - fragmentOffset;
+            count += getRoaringBitmap(valueBytes).rangeCardinality(rangeStart, rangeEnd);
+        }
+
+        return count;
     }
 
     public boolean getBit(byte[] ns, int bitIndex) {
@@ -136,11 +581,12 @@ public class RocksMultiBitmap extends BaseDataType {
 
     @SneakyThrows
     private boolean getBit(byte[] ns, BitmapMetadata metadata, int bitIndex) {
-
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        int fragmentSize = getFragmentSize(metadata);
         int fragmentIndex = bitIndex / fragmentSize;
         int fragmentBitIndex = bitIndex % fragmentSize;
 
-        byte[] keyBytes = getKey(metadata, ns, fragmentIndex);
+        byte[] keyBytes = getKey(keyPrefix, fragmentIndex);
 
         byte[] valueBytes = get(keyBytes);
         if (valueBytes == null || valueBytes.length == 0) {
@@ -157,59 +603,438 @@ public class RocksMultiBitmap extends BaseDataType {
         return getAllBits(ns, metadata);
     }
 
-    @SneakyThrows
     private RoaringBitmap getAllBits(byte[] ns, BitmapMetadata metadata) {
-        RoaringBitmap roaringBitmap = null;
-        for (int i = 0; i <= metadata.getMaxFragmentIndex(); i++) {
-            byte[] keyBytes = getKey(metadata, ns, i);
-            byte[] valueBytes = get(keyBytes);
-            RoaringBitmap fragmentBitSet = null;
-            if (valueBytes == null || valueBytes.length == 0) {
-                fragmentBitSet = new RoaringBitmap();
-            } else {
-                fragmentBitSet = getRoaringBitmap(valueBytes);
-            }
+        return getBits(ns, metadata, 0, Integer.MAX_VALUE);
+    }
 
-            fragmentBitSet = RoaringBitmap.addOffset(fragmentBitSet, i * fragmentSize);
+    public RoaringBitmap getBits(byte[] ns, int fromFragmentIndex, int toFragmentIndex) {
+        var metadata = getMetadata(ns).orElseThrow();
+        return getBits(ns, metadata, fromFragmentIndex, toFragmentIndex);
+    }
 
-            if (roaringBitmap == null) {
-                roaringBitmap = fragmentBitSet;
-            } else {
-                roaringBitmap.or(fragmentBitSet);
+    private RoaringBitmap getBits(byte[] ns, BitmapMetadata metadata, int fromFragmentIndex, int toFragmentIndex) {
+        RoaringBitmap roaringBitmap = new RoaringBitmap();
+        try (var fragments = new FragmentIterator(ns, metadata, fromFragmentIndex, toFragmentIndex)) {
+            while (fragments.hasNext()) {
+                var fragment = fragments.next();
+                roaringBitmap.or(RoaringBitmap.addOffset(fragment._2, fragment._1));
             }
         }
 
         return roaringBitmap;
     }
 
-    public RoaringBitmap getBits(byte[] ns, int fromFragmentIndex, int toFragmentIndex) {
+    /**
+     * Iterate over the non-empty fragments of a bitmap without loading the whole bitmap. Each element is a tuple of
+     * the fragment's offset (fragment index * fragment size) and the bits set in the fragment, relative to the offset.
+     * The iterator must be closed after use.
+     */
+    public ValueIterator<Tuple<Long, RoaringBitmap>> fragmentIterator(byte[] ns) {
+        return fragmentIterator(ns, 0, Integer.MAX_VALUE);
+    }
+
+    public ValueIterator<Tuple<Long, RoaringBitmap>> fragmentIterator(byte[] ns, int fromFragmentIndex, int toFragmentIndex) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return new EmptyIterator<>();
+
+        return new FragmentIterator(ns, metadata.get(), fromFragmentIndex, toFragmentIndex);
+    }
+
+    /**
+     * Iterate over the set bits of a bitmap in ascending order, loading one fragment at a time.
+     * The iterator must be closed after use.
+     */
+    public ValueIterator<Integer> bitIterator(byte[] ns) {
+        return new BitmapBitIterator<>(fragmentIterator(ns), bitIndex -> (int) bitIndex);
+    }
+
+    /**
+     * Number of bits set in the bitmap. This is read from metadata, unless the cardinality is unknown after merge
+     * writes. Then the bits are counted one fragment at a time.
+     */
+    public long cardinality(byte[] ns) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return 0;
+        if (metadata.get().getCardinality() >= 0)
+            return metadata.get().getCardinality();
+
+        long cardinality = 0;
+        try (var fragments = new FragmentIterator(ns, metadata.get(), 0, Integer.MAX_VALUE)) {
+            while (fragments.hasNext()) {
+                cardinality += fragments.next()._2.getLongCardinality();
+            }
+        }
+        return cardinality;
+    }
+
+    /**
+     * Number of bits set at or before the given bit index. Only the fragment of the bit index is loaded, the
+     * cardinality of the fragments before it comes from the cardinality index. The index holds one count per
+     * fragment, not cumulative counts, so the counts of all fragments before the bit index are read. This is linear
+     * in the number of fragments, but reads a small count entry per fragment instead of the fragment.
+     */
+    @SneakyThrows
+    public long rank(byte[] ns, int bitIndex) {
         var metadata = getMetadata(ns).orElseThrow();
-        return getBits(ns, metadata, fromFragmentIndex, toFragmentIndex);
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        int fragmentSize = getFragmentSize(metadata);
+        int fragmentIndex = bitIndex / fragmentSize;
+        int fragmentBitIndex = bitIndex % fragmentSize;
+
+        long rank = 0;
+        try (var counts = new FragmentCardinalityIterator(ns, metadata, 0)) {
+            while (counts.hasNext()) {
+                var count = counts.next();
+                if (count._1 >= fragmentIndex)
+                    break;
+                rank += count._2;
+            }
+        }
+
+        byte[] valueBytes = get(getKey(keyPrefix, fragmentIndex));
+        if (valueBytes != null && valueBytes.length > 0)
+            rank += getRoaringBitmap(valueBytes).rankLong(fragmentBitIndex);
+
+        return rank;
     }
 
+    /**
+     * Find the bit index of the k-th set bit, starting from 0. Only the fragment containing the bit is loaded. Like
+     * {@link #rank(byte[], int)}, the counts of the fragments before it are read one by one from the cardinality
+     * index, so this is linear in the number of fragments.
+     *
+     * @return bit index or -1 if less than k + 1 bits are set
+     */
     @SneakyThrows
-    private RoaringBitmap getBits(byte[] ns, BitmapMetadata metadata, int fromFragmentIndex, int toFragmentIndex) {
-        RoaringBitmap roaringBitmap = null;
-        for (int i = fromFragmentIndex; i <= toFragmentIndex; i++) {
-            byte[] keyBytes = getKey(metadata, ns, i);
-            byte[] valueBytes = get(keyBytes);
-            RoaringBitmap fragmentBitSet = null;
-            if (valueBytes == null || valueBytes.length == 0) {
-                fragmentBitSet = new RoaringBitmap();
+    public long select(byte[] ns, long k) {
+        var metadata = getMetadata(ns).orElseThrow();
+        if (k < 0 || (metadata.getCardinality() >= 0 && k >= metadata.getCardinality()))
+            return -1;
+
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        int fragmentSize = getFragmentSize(metadata);
+        long remaining = k;
+        try (var counts = new FragmentCardinalityIterator(ns, metadata, 0)) {
+            while (counts.hasNext()) {
+                var count = counts.next();
+                if (remaining < count._2) {
+                    //a count entry can outlive its fragment
+                    byte[] valueBytes = get(getKey(keyPrefix, count._1));
+                    if (valueBytes == null || valueBytes.length == 0)
+                        continue;
+
+                    var bitSet = getRoaringBitmap(valueBytes);
+                    if (remaining < bitSet.getLongCardinality())
+                        return (long) count._1 * fragmentSize + bitSet.select((int) remaining);
+                    remaining -= bitSet.getLongCardinality();
+                    continue;
+                }
+                remaining -= count._2;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Store the intersection of the source bitmaps as the bitmap of target namespace. The existing bitmap of the
+     * target namespace is replaced. The target can be one of the sources.
+     * <p>
+     * Bitmaps are combined fragment by fragment, in parallel on {@link RocksDBConfig#getBitmapOperationExecutor()}
+     * if set, and result fragments are written directly, so the bitmaps are never loaded in full. The result is
+     * written under a new version and becomes visible at once when all fragments are written. If the operation fails,
+     * the written fragments are deleted. If the process stops before the result is switched in, they are left behind
+     * unreferenced, see {@link #removeStaleVersions(byte[])}.
+     *
+     * @param targetNs namespace to store the result
+     * @param sourceNs namespaces of the source bitmaps
+     * @return cardinality of the result
+     */
+    public long and(byte[] targetNs, byte[]... sourceNs) {
+        return combine(BitmapOperation.AND, targetNs, sourceNs);
+    }
+
+    /**
+     * Store the union of the source bitmaps as the bitmap of target namespace.
+     * See {@link #and(byte[], byte[]...)}
+     */
+    public long or(byte[] targetNs, byte[]... sourceNs) {
+        return combine(BitmapOperation.OR, targetNs, sourceNs);
+    }
+
+    /**
+     * Store the symmetric difference of the source bitmaps as the bitmap of target namespace.
+     * See {@link #and(byte[], byte[]...)}
+     */
+    public long xor(byte[] targetNs, byte[]... sourceNs) {
+        return combine(BitmapOperation.XOR, targetNs, sourceNs);
+    }
+
+    /**
+     * Store the bits of the first source bitmap which are not set in any of the other source bitmaps as the bitmap
+     * of target namespace. See {@link #and(byte[], byte[]...)}
+     */
+    public long andNot(byte[] targetNs, byte[]... sourceNs) {
+        return combine(BitmapOperation.ANDNOT, targetNs, sourceNs);
+    }
+
+    @SneakyThrows
+    private long combine(BitmapOperation operation, byte[] targetNs, byte[]... sourceNs) {
+        if (sourceNs.length == 0)
+            throw new IllegalArgumentException("At least one source namespace is required");
+
+        List<BitmapMetadata> sourceMetadata = new ArrayList<>(sourceNs.length);
+        long maxFragmentIndex = 0;
+        int sourceFragmentSize = 0;
+        for (byte[] ns : sourceNs) {
+            var metadata = getMetadata(ns).orElse(null);
+            sourceMetadata.add(metadata);
+            if (metadata == null)
+                continue;
+
+            maxFragmentIndex = Math.max(maxFragmentIndex, metadata.getMaxFragmentIndex());
+            if (sourceFragmentSize != 0 && sourceFragmentSize != getFragmentSize(metadata))
+                throw new IllegalArgumentException("Bitmaps with different fragment sizes can't be combined. " +
+                        "Use rechunk to change the fragment size of a bitmap");
+            sourceFragmentSize = getFragmentSize(metadata);
+        }
+        int fragmentSize = sourceFragmentSize != 0 ? sourceFragmentSize : this.fragmentSize;
+
+        //Write the result under a new version, so the old bitmap stays visible until the metadata is switched
+        var oldTargetMetadata = getMetadata(targetNs);
+        var targetMetadata = new BitmapMetadata();
+        targetMetadata.setVersion(nextVersion(oldTargetMetadata));
+        targetMetadata.setFragmentSize(fragmentSize);
+        byte[] targetKeyPrefix = getKeyPrefix(targetNs, targetMetadata.getVersion());
+
+        int chunks = (int) (maxFragmentIndex / OPERATION_CHUNK_SIZE) + 1;
+        var maxResultFragmentIndex = new LongAccumulator(Math::max, 0);
+        long cardinality = 0;
+        try {
+            if (operationExecutor == null) {
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    cardinality += combineChunk(operation, sourceNs, sourceMetadata, fragmentSize, targetKeyPrefix,
+                            chunk * OPERATION_CHUNK_SIZE, chunk * OPERATION_CHUNK_SIZE + OPERATION_CHUNK_SIZE - 1,
+                            maxResultFragmentIndex);
+                }
             } else {
-                fragmentBitSet = getRoaringBitmap(valueBytes);
+                List<CompletableFuture<Long>> tasks = new ArrayList<>(chunks);
+                for (int chunk = 0; chunk < chunks; chunk++) {
+                    int fromFragmentIndex = chunk * OPERATION_CHUNK_SIZE;
+                    tasks.add(CompletableFuture.supplyAsync(() -> combineChunk(operation, sourceNs, sourceMetadata,
+                            fragmentSize, targetKeyPrefix, fromFragmentIndex, fromFragmentIndex + OPERATION_CHUNK_SIZE - 1,
+                            maxResultFragmentIndex), operationExecutor));
+                }
+
+                //Wait for all chunks, also after a failure, so no task writes after the cleanup below
+                try {
+                    CompletableFuture.allOf(tasks.toArray(new CompletableFuture[0])).join();
+                } catch (CompletionException e) {
+                    throw e.getCause() != null ? e.getCause() : e;
+                }
+                for (var task : tasks)
+                    cardinality += task.join();
             }
+        } catch (Throwable e) {
+            deleteVersion(targetKeyPrefix);
+            throw e;
+        }
+
+        targetMetadata.setMaxFragmentIndex(maxResultFragmentIndex.get());
+        targetMetadata.setCardinality(cardinality);
+        replaceBitmap(targetNs, oldTargetMetadata.orElse(null), targetMetadata);
 
-            fragmentBitSet = RoaringBitmap.addOffset(fragmentBitSet, i * fragmentSize);
+        return cardinality;
+    }
+
+    /**
+     * Delete fragments of a namespace which don't belong to its current version. {@link #and(byte[], byte[]...)} and
+     * the other bitmap operations and {@link #rechunk(byte[], int)} write the result under a new version and switch
+     * the metadata to it when complete. A process which stops in between leaves the fragments of the new version
+     * behind. They are never read, but take space until removed.
+     * <p>
+     * Don't call this while a bitmap operation or rechunk targeting the namespace is running.
+     *
+     * @param ns namespace
+     * @throws IllegalArgumentException if ns is null. Without a namespace part, the key range of the versions also
+     *                                  covers the namespaces of the same name with an 8 byte namespace
+     */
+    @SneakyThrows
+    public void removeStaleVersions(byte[] ns) {
+        if (ns == null)
+            throw new IllegalArgumentException("Stale versions can only be removed for a namespace");
 
-            if (roaringBitmap == null) {
-                roaringBitmap = fragmentBitSet;
+        byte[] metadataKey = getMetadataKey(ns);
+        //Key prefixes of all versions start with the length part of the version
+        byte[] versionsStart = KeyBuilder.merge(metadataKey, KeyBuilder.intToBytes(Long.BYTES));
+        byte[] versionsEnd = KeyBuilder.merge(metadataKey, KeyBuilder.intToBytes(Long.BYTES + 1));
+
+        var metadata = getMetadata(ns);
+        try (var writeBatch = new WriteBatch(); var writeOptions = new WriteOptions()) {
+            if (metadata.isPresent()) {
+                deleteRangeBatch(writeBatch, versionsStart, getKeyPrefix(ns, metadata.get().getVersion()));
+                deleteRangeBatch(writeBatch, getKeyPrefix(ns, metadata.get().getVersion() + 1), versionsEnd);
             } else {
-                roaringBitmap.or(fragmentBitSet);
+                deleteRangeBatch(writeBatch, versionsStart, versionsEnd);
             }
+            db.write(writeOptions, writeBatch);
         }
+    }
 
-        return roaringBitmap;
+    //Delete all fragments and cardinality index entries of a version which was never switched in
+    @SneakyThrows
+    private void deleteVersion(byte[] keyPrefix) {
+        try (var writeBatch = new WriteBatch(); var writeOptions = new WriteOptions()) {
+            deleteRangeBatch(writeBatch, keyPrefix, KeyBuilder.merge(keyPrefix, new byte[]{(byte) 0xFF}));
+            db.write(writeOptions, writeBatch);
+        }
+        fragmentSummaries.remove(ByteBuffer.wrap(keyPrefix));
+    }
+
+    private long nextVersion(Optional<BitmapMetadata> metadata) {
+        return metadata
+                .map(m -> Math.max(System.currentTimeMillis(), m.getVersion() + 1))
+                .orElse(System.currentTimeMillis());
+    }
+
+    /**
+     * Switch a namespace to a bitmap fully written under the version of new metadata, and delete the fragments
+     * of the old version in the same batch
+     */
+    @SneakyThrows
+    private void replaceBitmap(byte[] ns, BitmapMetadata oldMetadata, BitmapMetadata newMetadata) {
+        byte[] metadataKey = getMetadataKey(ns);
+        var lock = getMetadataLock(metadataKey);
+        lock.lock();
+        try (var writeBatch = new WriteBatch(); var writeOptions = new WriteOptions()) {
+            if (oldMetadata != null) {
+                byte[] oldKeyPrefix = getKeyPrefix(ns, oldMetadata.getVersion());
+                deleteRangeBatch(writeBatch, oldKeyPrefix, KeyBuilder.merge(oldKeyPrefix, new byte[]{(byte) 0xFF}));
+            }
+            commitWithMetadata(writeOptions, writeBatch, metadataKey, newMetadata);
+        } finally {
+            lock.unlock();
+        }
+
+        if (oldMetadata != null)
+            fragmentSummaries.remove(ByteBuffer.wrap(getKeyPrefix(ns, oldMetadata.getVersion())));
+        fragmentSummaries.remove(ByteBuffer.wrap(getKeyPrefix(ns, newMetadata.getVersion())));
+    }
+
+    /**
+     * Rewrite the bitmap of a namespace with a different fragment size, e.g. to move bitmaps written with the old
+     * default of 1000 bits per fragment to container aligned fragments of 65536 bits. The bitmap is streamed one
+     * fragment at a time into a new version, which replaces the old one at once when complete.
+     * Bits written to the namespace while it's being rechunked are lost. If the process stops before the new version
+     * is switched in, its fragments are left behind, see {@link #removeStaleVersions(byte[])}.
+     *
+     * @param ns              namespace
+     * @param newFragmentSize new fragment size
+     */
+    @SneakyThrows
+    public void rechunk(byte[] ns, int newFragmentSize) {
+        if (newFragmentSize <= 0)
+            throw new IllegalArgumentException("Fragment size must be greater than 0");
+
+        var metadata = getMetadata(ns).orElseThrow();
+        var newMetadata = new BitmapMetadata();
+        newMetadata.setVersion(nextVersion(Optional.of(metadata)));
+        newMetadata.setFragmentSize(newFragmentSize);
+        byte[] newKeyPrefix = getKeyPrefix(ns, newMetadata.getVersion());
+
+        long cardinality = 0;
+        int newFragmentIndex = -1;
+        RoaringBitmap newFragment = null;
+        try (var fragments = new FragmentIterator(ns, metadata, 0, Integer.MAX_VALUE);
+             var writeBatch = new WriteBatch(); var writeOptions = new WriteOptions()) {
+            while (fragments.hasNext()) {
+                var fragment = fragments.next();
+                var bits = fragment._2.getIntIterator();
+                while (bits.hasNext()) {
+                    long bitIndex = fragment._1 + bits.next();
+                    if (bitIndex / newFragmentSize != newFragmentIndex) {
+                        if (newFragment != null) {
+                            writeBatch(writeBatch, getKey(newKeyPrefix, newFragmentIndex), serializeRoaringBitmap(newFragment));
+                            writeFragmentCardinality(writeBatch, newKeyPrefix, newFragmentIndex, newFragment.getLongCardinality());
+                            cardinality += newFragment.getLongCardinality();
+                        }
+                        newFragmentIndex = (int) (bitIndex / newFragmentSize);
+                        newFragment = new RoaringBitmap();
+                    }
+                    newFragment.add((int) (bitIndex % newFragmentSize));
+                }
+
+                if (writeBatch.count() >= OPERATION_CHUNK_SIZE) {
+                    db.write(writeOptions, writeBatch);
+                    writeBatch.clear();
+                }
+            }
+
+            if (newFragment != null) {
+                writeBatch(writeBatch, getKey(newKeyPrefix, newFragmentIndex), serializeRoaringBitmap(newFragment));
+                writeFragmentCardinality(writeBatch, newKeyPrefix, newFragmentIndex, newFragment.getLongCardinality());
+                cardinality += newFragment.getLongCardinality();
+            }
+            db.write(writeOptions, writeBatch);
+        } catch (Throwable e) {
+            deleteVersion(newKeyPrefix);
+            throw e;
+        }
+
+        newMetadata.setMaxFragmentIndex(Math.max(newFragmentIndex, 0));
+        newMetadata.setCardinality(cardinality);
+        replaceBitmap(ns, metadata, newMetadata);
+    }
+
+    @SneakyThrows
+    private long combineChunk(BitmapOperation operation, byte[][] sourceNs, List<BitmapMetadata> sourceMetadata,
+                              int fragmentSize, byte[] targetKeyPrefix, int fromFragmentIndex, int toFragmentIndex,
+                              LongAccumulator maxResultFragmentIndex) {
+        List<Map<Integer, RoaringBitmap>> sourceFragments = new ArrayList<>(sourceNs.length);
+        TreeSet<Integer> fragmentIndexes = new TreeSet<>();
+        for (int i = 0; i < sourceNs.length; i++) {
+            Map<Integer, RoaringBitmap> fragments = new HashMap<>();
+            if (sourceMetadata.get(i) != null) {
+                try (var iterator = new FragmentIterator(sourceNs[i], sourceMetadata.get(i), fromFragmentIndex, toFragmentIndex)) {
+                    while (iterator.hasNext()) {
+                        var fragment = iterator.next();
+                        fragments.put((int) (fragment._1 / fragmentSize), fragment._2);
+                    }
+                }
+            }
+            sourceFragments.add(fragments);
+            fragmentIndexes.addAll(fragments.keySet());
+        }
+
+        long cardinality = 0;
+        try (var writeBatch = new WriteBatch(); var writeOptions = new WriteOptions()) {
+            for (int fragmentIndex : fragmentIndexes) {
+                RoaringBitmap result = sourceFragments.get(0).getOrDefault(fragmentIndex, new RoaringBitmap());
+                for (int i = 1; i < sourceFragments.size(); i++) {
+                    RoaringBitmap fragment = sourceFragments.get(i).getOrDefault(fragmentIndex, new RoaringBitmap());
+                    switch (operation) {
+                        case AND -> result.and(fragment);
+                        case OR -> result.or(fragment);
+                        case XOR -> result.xor(fragment);
+                        case ANDNOT -> result.andNot(fragment);
+                    }
+                }
+
+                if (result.isEmpty())
+                    continue;
+
+                writeBatch(writeBatch, getKey(targetKeyPrefix, fragmentIndex), serializeRoaringBitmap(result));
+                writeFragmentCardinality(writeBatch, targetKeyPrefix, fragmentIndex, result.getLongCardinality());
+                cardinality += result.getLongCardinality();
+                maxResultFragmentIndex.accumulate(fragmentIndex);
+            }
+
+            db.write(writeOptions, writeBatch);
+        }
+
+        return cardinality;
     }
 
     public long nextSetBit(byte[] ns, int fromIndex) {
@@ -219,36 +1044,32 @@ public class RocksMultiBitmap extends BaseDataType {
 
     @SneakyThrows
     private long nextSetBit(byte[] ns, BitmapMetadata metadata, int fromIndex) {
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        int fragmentSize = getFragmentSize(metadata);
         int fragmentIndex = fromIndex / fragmentSize;
         int fragmentBitIndex = fromIndex % fragmentSize;
 
-        byte[] keyBytes = getKey(metadata, ns, fragmentIndex);
+        var summary = getFragmentSummary(keyPrefix);
+        if (summary != null) {
+            for (long i = summary.nextValue(fragmentIndex); i != -1; i = i < Integer.MAX_VALUE ? summary.nextValue((int) i + 1) : -1) {
+                byte[] valueBytes = get(getKey(keyPrefix, (int) i));
+                if (valueBytes == null || valueBytes.length == 0)
+                    continue;
 
-        byte[] valueBytes = get(keyBytes);
-        RoaringBitmap bitSet = null;
-        if (valueBytes == null || valueBytes.length == 0) {
-            bitSet = new RoaringBitmap();
-        } else {
-            bitSet = getRoaringBitmap(valueBytes);
+                long nextSetBit = getRoaringBitmap(valueBytes).nextValue(i == fragmentIndex ? fragmentBitIndex : 0);
+                if (nextSetBit != -1)
+                    return nextSetBit + i * fragmentSize;
+            }
+            return -1;
         }
 
-        long nextSetBit = bitSet.nextValue(fragmentBitIndex);
-        if (nextSetBit == -1) {
-            for (int i = fragmentIndex + 1; i <= metadata.getMaxFragmentIndex(); i++) {
-                byte[] nextKeyBytes = getKey(metadata, ns, i);
-                byte[] nextValueBytes = get(nextKeyBytes);
-                if (nextValueBytes == null || nextValueBytes.length == 0) {
-                    continue;
-                }
-
-                var nextBitSet = getRoaringBitmap(nextValueBytes);
-                nextSetBit = nextBitSet.nextValue(0);
-                if (nextSetBit != -1) {
-                    return nextSetBit + (i * fragmentSize);
-                }
+        try (var fragments = new FragmentIterator(ns, metadata, fragmentIndex, Integer.MAX_VALUE, false)) {
+            while (fragments.hasNext()) {
+                var fragment = fragments.next();
+                long nextSetBit = fragment._2.nextValue((int) Math.max(fromIndex - fragment._1, 0));
+                if (nextSetBit != -1)
+                    return nextSetBit + fragment._1;
             }
-        } else {
-            return nextSetBit + (fragmentIndex * fragmentSize);
         }
 
         return -1;
@@ -261,10 +1082,12 @@ public class RocksMultiBitmap extends BaseDataType {
 
     @SneakyThrows
     private long nextClearBit(byte[] ns, BitmapMetadata metadata, int fromIndex) {
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        int fragmentSize = getFragmentSize(metadata);
         int fragmentIndex = fromIndex / fragmentSize;
         int fragmentBitIndex = fromIndex % fragmentSize;
 
-        byte[] keyBytes = getKey(metadata, ns, fragmentIndex);
+        byte[] keyBytes = getKey(keyPrefix, fragmentIndex);
 
         RoaringBitmap bitSet = null;
         byte[] valueBytes = get(keyBytes);
@@ -277,7 +1100,7 @@ public class RocksMultiBitmap extends BaseDataType {
         long nextClearBit = bitSet.nextAbsentValue(fragmentBitIndex);
         if (nextClearBit == -1) {
             for (int i = fragmentIndex + 1; i <= metadata.getMaxFragmentIndex(); i++) {
-                byte[] nextKeyBytes = getKey(metadata, ns, i);
+                byte[] nextKeyBytes = getKey(keyPrefix, i);
                 byte[] nextValueBytes = get(nextKeyBytes);
                 if (nextValueBytes == null || nextValueBytes.length == 0) {
                     continue;
@@ -303,38 +1126,33 @@ public class RocksMultiBitmap extends BaseDataType {
 
     @SneakyThrows
     private long previousSetBit(byte[] ns, BitmapMetadata metadata, int fromIndex) {
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        int fragmentSize = getFragmentSize(metadata);
         int fragmentIndex = fromIndex / fragmentSize;
         int fragmentBitIndex = fromIndex % fragmentSize;
 
-        byte[] keyBytes = getKey(metadata, ns, fragmentIndex);
+        var summary = getFragmentSummary(keyPrefix);
+        if (summary != null) {
+            for (long i = summary.previousValue(fragmentIndex); i != -1; i = i > 0 ? summary.previousValue((int) i - 1) : -1) {
+                byte[] valueBytes = get(getKey(keyPrefix, (int) i));
+                if (valueBytes == null || valueBytes.length == 0)
+                    continue;
 
-        RoaringBitmap bitSet = null;
-        byte[] valueBytes = get(keyBytes);
-        if (valueBytes == null || valueBytes.length == 0) {
-            bitSet = new RoaringBitmap();
-        } else {
-            bitSet = getRoaringBitmap(valueBytes);
+                long previousSetBit = getRoaringBitmap(valueBytes)
+                        .previousValue(i == fragmentIndex ? fragmentBitIndex : fragmentSize - 1);
+                if (previousSetBit != -1)
+                    return previousSetBit + i * fragmentSize;
+            }
+            return -1;
         }
 
-        long previousSetBit = bitSet.previousValue(fragmentBitIndex);
-        if (previousSetBit == -1) {
-            for (int i = fragmentIndex - 1; i >= 0; i--) {
-                byte[] nextKeyBytes = getKey(metadata, ns, i);
-                byte[] nextValueBytes = get(nextKeyBytes);
-                RoaringBitmap nextBitSet = null;
-                if (nextValueBytes == null || nextValueBytes.length == 0) {
-                    nextBitSet = new RoaringBitmap();
-                } else {
-                    nextBitSet = getRoaringBitmap(nextValueBytes);
-                }
-
-                previousSetBit = nextBitSet.previousValue(fragmentSize - 1);
-                if (previousSetBit != -1) {
-                    return previousSetBit + (i * fragmentSize);
-                }
+        try (var fragments = new FragmentIterator(ns, metadata, 0, fragmentIndex, true)) {
+            while (fragments.hasNext()) {
+                var fragment = fragments.next();
+                long previousSetBit = fragment._2.previousValue((int) Math.min(fromIndex - fragment._1, fragmentSize - 1));
+                if (previousSetBit != -1)
+                    return previousSetBit + fragment._1;
             }
-        } else {
-            return previousSetBit + (fragmentIndex * fragmentSize);
         }
 
         return -1;
@@ -347,10 +1165,12 @@ public class RocksMultiBitmap extends BaseDataType {
 
     @SneakyThrows
     private long previousClearBit(byte[] ns, BitmapMetadata metadata, int fromIndex) {
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        int fragmentSize = getFragmentSize(metadata);
         int fragmentIndex = fromIndex / fragmentSize;
         int fragmentBitIndex = fromIndex % fragmentSize;
 
-        byte[] keyBytes = getKey(metadata, ns, fragmentIndex);
+        byte[] keyBytes = getKey(keyPrefix, fragmentIndex);
 
         RoaringBitmap bitSet = null;
         byte[] valueBytes = get(keyBytes);
@@ -363,7 +1183,7 @@ public class RocksMultiBitmap extends BaseDataType {
         long previousClearBit = bitSet.previousAbsentValue(fragmentBitIndex);
         if (previousClearBit == -1) {
             for (int i = fragmentIndex - 1; i >= 0; i--) {
-                byte[] nextKeyBytes = getKey(metadata, ns, i);
+                byte[] nextKeyBytes = getKey(keyPrefix, i);
                 byte[] nextValueBytes = get(nextKeyBytes);
                 RoaringBitmap nextBitSet = null;
                 if (nextValueBytes == null || nextValueBytes.length == 0) {
@@ -384,22 +1204,167 @@ public class RocksMultiBitmap extends BaseDataType {
         return -1;
     }
 
+    /**
+     * Fold bit changes appended by merge writes into the fragments of a namespace and rebuild the cardinality index.
+     * Fragments which end up empty are deleted. The cardinality index is rebuilt from a scan over the fragments, which
+     * drops entries of fragments deleted while the cardinality was unknown. Bit changes written to the namespace
+     * while it's being compacted can be lost, so compact only when there are no concurrent writers for the namespace.
+     *
+     * @param ns namespace
+     */
+    @SneakyThrows
+    public void compact(byte[] ns) {
+        var metadata = getMetadata(ns).orElseThrow();
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        byte[] countsPrefix = KeyBuilder.appendToKey(keyPrefix, COUNTS_PART);
+        long cardinality = 0;
+        try (var readOptions = new ReadOptions().setTotalOrderSeek(true);
+             var iterator = iterator(readOptions);
+             var writeBatch = new WriteBatch(); var writeOptions = new WriteOptions()) {
+            deleteRangeBatch(writeBatch, countsPrefix, KeyBuilder.merge(countsPrefix, new byte[]{(byte) 0xFF}));
+
+            iterator.seek(getKey(keyPrefix, 0));
+            while (iterator.isValid() && KeyBuilder.hasPrefix(iterator.key(), keyPrefix)
+                    && isFragmentKey(iterator.key(), keyPrefix)) {
+                byte[] keyBytes = iterator.key();
+                byte[] valueBytes = iterator.value();
+                int fragmentIndex = getFragmentIndex(keyBytes, keyPrefix);
+                iterator.next();
+
+                var bitSet = getRoaringBitmap(valueBytes);
+                if (bitSet.isEmpty()) {
+                    deleteBatch(writeBatch, keyBytes);
+                    removeFromFragmentSummary(keyPrefix, fragmentIndex);
+                } else {
+                    writeFragmentCardinality(writeBatch, keyPrefix, fragmentIndex, bitSet.getLongCardinality());
+                    cardinality += bitSet.getLongCardinality();
+                    byte[] compacted = serializeRoaringBitmap(bitSet);
+                    if (!Arrays.equals(compacted, valueBytes))
+                        writeBatch(writeBatch, keyBytes, compacted);
+                }
+
+                if (writeBatch.count() >= OPERATION_CHUNK_SIZE) {
+                    db.write(writeOptions, writeBatch);
+                    writeBatch.clear();
+                }
+            }
+            db.write(writeOptions, writeBatch);
+        }
+
+        metadata.setCardinality(cardinality);
+        updateMetadata(null, metadata, ns);
+    }
+
+    /**
+     * Summary of the fragments of a bitmap version which may be non-empty. Built on first use with a scan over the
+     * fragment keys, without reading the fragments.
+     *
+     * @return an immutable snapshot of the summary or null if summaries are disabled
+     */
+    private RoaringBitmap getFragmentSummary(byte[] keyPrefix) {
+        if (maxFragmentSummaries == 0)
+            return null;
+
+        var summary = fragmentSummaries.computeIfAbsent(ByteBuffer.wrap(keyPrefix), k -> new FragmentSummary());
+        if (!summary.loaded) {
+            var fragments = new RoaringBitmap();
+            try (var readOptions = new ReadOptions().setTotalOrderSeek(true);
+                 var iterator = iterator(readOptions)) {
+                iterator.seek(getKey(keyPrefix, 0));
+                while (iterator.isValid() && KeyBuilder.hasPrefix(iterator.key(), keyPrefix)
+                        && isFragmentKey(iterator.key(), keyPrefix)) {
+                    fragments.add(getFragmentIndex(iterator.key(), keyPrefix));
+                    iterator.next();
+                }
+            }
+            summary.load(fragments);
+        }
+        return summary.fragments;
+    }
+
+    /**
+     * Fragments written in a WriteBatch are recorded even if the summary isn't loaded yet, as the summary may be
+     * loaded before the batch is written
+     */
+    private void addToFragmentSummary(WriteBatch writeBatch, byte[] keyPrefix, int fragmentIndex) {
+        if (maxFragmentSummaries == 0)
+            return;
+
+        var summary = writeBatch != null
+                ? fragmentSummaries.computeIfAbsent(ByteBuffer.wrap(keyPrefix), k -> new FragmentSummary())
+                : fragmentSummaries.get(ByteBuffer.wrap(keyPrefix));
+        if (summary != null)
+            summary.add(fragmentIndex);
+    }
+
+    //Only for direct writes. A fragment emptied in a WriteBatch stays in the summary, as the batch may not be written
+    private void removeFromFragmentSummary(byte[] keyPrefix, int fragmentIndex) {
+        if (maxFragmentSummaries == 0)
+            return;
+
+        var summary = fragmentSummaries.get(ByteBuffer.wrap(keyPrefix));
+        if (summary != null)
+            summary.remove(fragmentIndex);
+    }
+
+    /**
+     * Drop the in-memory fragment summaries, e.g. after the bitmaps were updated through another instance
+     */
+    public void clearFragmentSummaries() {
+        fragmentSummaries.clear();
+    }
+
     @SneakyThrows
     private BitmapMetadata updateMetadata(WriteBatch writeBatch, BitmapMetadata metadata, byte[] ns) {
         var metadataKeyName = getMetadataKey(ns);
-        write(writeBatch, metadataKeyName, valueSerializer.serialize(metadata));
+        writeMetadata(writeBatch, metadataKeyName, metadata);
         return metadata;
     }
 
+    /**
+     * Metadata update after a merge write. A merge write only raises maxFragmentIndex and marks the cardinality
+     * unknown, so a direct write applies that to the stored metadata under the metadata lock instead of writing
+     * metadata read before the lock, which may be stale or cached. This keeps concurrent merge writers from
+     * lowering maxFragmentIndex or restoring a cardinality another writer has invalidated. A WriteBatch write can't
+     * see the stored metadata at commit time, so it writes the given metadata if changed.
+     * <p>
+     * Nothing is done if the metadata didn't change, i.e. the cardinality is already unknown and maxFragmentIndex is
+     * large enough, so merge writes within known fragments stay blind writes without a lock or a read.
+     */
+    private void updateMergedMetadata(WriteBatch writeBatch, BitmapMetadata metadata, byte[] ns, boolean changed) {
+        if (!changed)
+            return;
+
+        if (writeBatch != null) {
+            updateMetadata(writeBatch, metadata, ns);
+            return;
+        }
+
+        byte[] metadataKey = getMetadataKey(ns);
+        var lock = getMetadataLock(metadataKey);
+        lock.lock();
+        try {
+            var stored = readStoredMetadata(metadataKey, BitmapMetadata.class).orElse(null);
+            if (stored == null || stored.getVersion() != metadata.getVersion())
+                return; //namespace was deleted or recreated concurrently
+
+            boolean storedChanged = false;
+            if (metadata.getMaxFragmentIndex() > stored.getMaxFragmentIndex()) {
+                stored.setMaxFragmentIndex(metadata.getMaxFragmentIndex());
+                storedChanged = true;
+            }
+            storedChanged |= invalidateCardinality(stored);
+
+            if (storedChanged)
+                writeMetadata(null, metadataKey, stored);
+        } finally {
+            lock.unlock();
+        }
+    }
+
     @SneakyThrows
     protected Optional<BitmapMetadata> getMetadata(byte[] ns) {
-        byte[] metadataKeyName = getMetadataKey(ns);
-        var metadataValueBytes = get(metadataKeyName);
-        if (metadataValueBytes == null || metadataValueBytes.length == 0) {
-            return Optional.empty();
-        } else {
-            return Optional.of(valueSerializer.deserialize(metadataValueBytes, BitmapMetadata.class));
-        }
+        return readMetadata(getMetadataKey(ns), BitmapMetadata.class);
     }
 
     @Override
@@ -409,32 +1374,150 @@ public class RocksMultiBitmap extends BaseDataType {
         if (metadata.isEmpty()) {
             var newMetadata = new BitmapMetadata();
             newMetadata.setVersion(System.currentTimeMillis());
-            write(null, metadataKeyName, valueSerializer.serialize(newMetadata));
+            newMetadata.setCardinality(0);
+            newMetadata.setFragmentSize(fragmentSize);
+            writeMetadata(null, metadataKeyName, newMetadata);
             return Optional.of(newMetadata);
         } else {
             return metadata;
         }
     }
 
-    protected byte[] getMetadataKey(byte[] ns) {
-        if (ns != null)
-            return new KeyBuilder(name, ns)
-                    .build();
-        else
-            return new KeyBuilder(name)
-                    .build();
+    private static byte[] getKey(byte[] keyPrefix, int fragmentIndex) {
+        return KeyBuilder.appendToKey(keyPrefix, KeyBuilder.intToBytes(fragmentIndex));
+    }
+
+    private byte[] getCountKey(byte[] keyPrefix, int fragmentIndex) {
+        return KeyBuilder.appendToKey(keyPrefix, COUNTS_PART, KeyBuilder.intToBytes(fragmentIndex));
+    }
+
+    private static int getFragmentIndex(byte[] key, byte[] keyPrefix) {
+        //fragment index is the int part right after the prefix
+        return KeyBuilder.readInt(key, keyPrefix.length + Integer.BYTES);
+    }
+
+    //Cardinality index keys share the prefix, but their first part is 1 byte long
+    private static boolean isFragmentKey(byte[] key, byte[] keyPrefix) {
+        return key.length == keyPrefix.length + Integer.BYTES + Integer.BYTES
+                && KeyBuilder.readInt(key, keyPrefix.length) == Integer.BYTES;
     }
 
-    private byte[] getKey(BitmapMetadata metadata, byte[] ns, int fragmentIndex) {
-        if (ns != null)
-            return new KeyBuilder(name, ns)
-                    .append(metadata.getVersion())
-                    .append(fragmentIndex)
-                    .build();
-        else
-            return new KeyBuilder(name)
-                    .append(metadata.getVersion())
-                    .append(fragmentIndex)
-                    .build();
+    //Fragments of a version in [fromFragmentIndex, toFragmentIndex], up to maxFragmentIndex
+    private class FragmentIterator extends BitmapFragmentIterator {
+
+        public FragmentIterator(byte[] ns, BitmapMetadata metadata, int fromFragmentIndex, int toFragmentIndex) {
+            this(ns, metadata, fromFragmentIndex, toFragmentIndex, false);
+        }
+
+        public FragmentIterator(byte[] ns, BitmapMetadata metadata, int fromFragmentIndex, int toFragmentIndex,
+                                boolean reverse) {
+            super(RocksMultiBitmap.this, FRAGMENT_FORMAT, getKeyPrefix(ns, metadata.getVersion()), fromFragmentIndex,
+                    Math.min(toFragmentIndex, metadata.getMaxFragmentIndex()), getFragmentSize(metadata), reverse);
+        }
+    }
+
+    /**
+     * Iterates over (fragment index, cardinality) of non-empty fragments. Reads the cardinality index if the
+     * cardinality is known, otherwise counts the bits of each fragment.
+     */
+    private class FragmentCardinalityIterator implements ValueIterator<Tuple<Integer, Long>> {
+        private final ValueIterator<Tuple<Long, RoaringBitmap>> fragments;
+        private final ReadOptions readOptions;
+        private final RocksIterator iterator;
+        private final byte[] countsPrefix;
+        private final int fragmentSize;
+
+        public FragmentCardinalityIterator(byte[] ns, BitmapMetadata metadata, int fromFragmentIndex) {
+            this.fragmentSize = getFragmentSize(metadata);
+            if (metadata.getCardinality() >= 0) {
+                byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+                this.fragments = null;
+                this.readOptions = new ReadOptions().setTotalOrderSeek(true);
+                this.iterator = RocksMultiBitmap.this.iterator(readOptions);
+                this.countsPrefix = KeyBuilder.appendToKey(keyPrefix, COUNTS_PART);
+                this.iterator.seek(getCountKey(keyPrefix, fromFragmentIndex));
+            } else {
+                this.fragments = new FragmentIterator(ns, metadata, fromFragmentIndex, Integer.MAX_VALUE);
+                this.readOptions = null;
+                this.iterator = null;
+                this.countsPrefix = null;
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (fragments != null)
+                return fragments.hasNext();
+            return iterator.isValid() && KeyBuilder.hasPrefix(iterator.key(), countsPrefix);
+        }
+
+        @Override
+        public Tuple<Integer, Long> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            if (fragments != null) {
+                var fragment = fragments.next();
+                return new Tuple<>((int) (fragment._1 / fragmentSize), fragment._2.getLongCardinality());
+            }
+
+            int fragmentIndex = getFragmentIndex(iterator.key(), countsPrefix);
+            long cardinality = KeyBuilder.bytesToInt(iterator.value());
+            iterator.next();
+            return new Tuple<>(fragmentIndex, cardinality);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Remove not supported");
+        }
+
+        @Override
+        @SneakyThrows
+        public void close() {
+            if (fragments != null) {
+                fragments.close();
+            } else {
+                iterator.close();
+                readOptions.close();
+            }
+        }
+    }
+
+    /**
+     * Fragment indexes which may be non-empty. Updates replace the bitmap with a modified copy, so readers navigate a
+     * published snapshot without locking. Copies are only made when a fragment is added or removed, which is rare
+     * compared to bit changes. A fragment deleted while the summary is loaded may stay in it, which only costs a read.
+     */
+    private static class FragmentSummary {
+        private volatile RoaringBitmap fragments = new RoaringBitmap();
+        private volatile boolean loaded;
+
+        synchronized void load(RoaringBitmap scannedFragments) {
+            if (loaded)
+                return;
+
+            fragments = RoaringBitmap.or(fragments, scannedFragments);
+            loaded = true;
+        }
+
+        synchronized void add(int fragmentIndex) {
+            if (fragments.contains(fragmentIndex))
+                return;
+
+            var copy = fragments.clone();
+            copy.add(fragmentIndex);
+            fragments = copy;
+        }
+
+        synchronized void remove(int fragmentIndex) {
+            if (!fragments.contains(fragmentIndex))
+                return;
+
+            var copy = fragments.clone();
+            copy.remove(fragmentIndex);
+            fragments = copy;
+        }
     }
 }
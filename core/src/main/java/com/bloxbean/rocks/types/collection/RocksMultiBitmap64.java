@@ -0,0 +1,443 @@
+package com.bloxbean.rocks.types.collection;
+
+import com.bloxbean.rocks.types.collection.metadata.BitmapMetadata;
+import com.bloxbean.rocks.types.collection.util.EmptyIterator;
+import com.bloxbean.rocks.types.collection.util.ValueIterator;
+import com.bloxbean.rocks.types.common.KeyBuilder;
+import com.bloxbean.rocks.types.common.Tuple;
+import com.bloxbean.rocks.types.config.RocksDBConfig;
+import lombok.SneakyThrows;
+import org.roaringbitmap.RoaringBitmap;
+import org.roaringbitmap.longlong.LongIterator;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.rocksdb.WriteBatch;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * Bitmap implementation using RocksDB for long bit indexes. It supports multiple bitmaps under the same name but
+ * different namespaces and follows the semantics of {@link Roaring64NavigableMap}.
+ * <p>
+ * Bits are stored in fragments of a fixed no of bits, recorded in the bitmap metadata. The key of a fragment is the
+ * key prefix followed by the fragment index as a long, so the fragment index space is 64-bit while each fragment is a
+ * compact 32-bit RoaringBitmap of the bits relative to the fragment's offset. Empty fragments are deleted, so
+ * navigation and iteration only visit fragments with bits set.
+ * <p>
+ * Bit indexes must not be negative. This implementation is not thread safe. The cardinality is read from the stored
+ * metadata, so a namespace should be updated only once per uncommitted WriteBatch.
+ */
+public class RocksMultiBitmap64 extends BaseDataType {
+    private static final int DEFAULT_FRAGMENT_SIZE = 1 << 16; //one RoaringBitmap container per fragment
+
+    //Fragment key: prefix | fragment index (long). There are no other keys under the prefix
+    private static final BitmapFragmentIterator.FragmentFormat FRAGMENT_FORMAT = new BitmapFragmentIterator.FragmentFormat() {
+        @Override
+        public byte[] getKey(byte[] keyPrefix, long fragmentIndex) {
+            return RocksMultiBitmap64.getKey(keyPrefix, fragmentIndex);
+        }
+
+        @Override
+        public long getFragmentIndex(byte[] key, byte[] keyPrefix) {
+            return RocksMultiBitmap64.getFragmentIndex(key, keyPrefix);
+        }
+
+        @Override
+        public boolean isFragmentKey(byte[] key, byte[] keyPrefix) {
+            return true;
+        }
+
+        @Override
+        public RoaringBitmap getRoaringBitmap(byte[] valueBytes) throws IOException {
+            return RocksMultiBitmap64.getRoaringBitmap(valueBytes);
+        }
+    };
+
+    //Fragment size of new namespaces. Existing namespaces use the fragment size in their metadata
+    private final int fragmentSize;
+
+    public RocksMultiBitmap64(RocksDBConfig rocksDBConfig, String name) {
+        this(rocksDBConfig, null, name, DEFAULT_FRAGMENT_SIZE);
+    }
+
+    public RocksMultiBitmap64(RocksDBConfig rocksDBConfig, String name, int fragmentSize) {
+        this(rocksDBConfig, null, name, fragmentSize);
+    }
+
+    public RocksMultiBitmap64(RocksDBConfig rocksDBConfig, String columnFamily, String name) {
+        this(rocksDBConfig, columnFamily, name, DEFAULT_FRAGMENT_SIZE);
+    }
+
+    public RocksMultiBitmap64(RocksDBConfig rocksDBConfig, String columnFamily, String name, int fragmentSize) {
+        super(rocksDBConfig, columnFamily, name, null);
+        if (fragmentSize <= 0)
+            throw new IllegalArgumentException("Fragment size must be greater than 0");
+
+        this.fragmentSize = fragmentSize;
+    }
+
+    public void setBit(byte[] ns, long bitIndex) {
+        setBitBatch(ns, null, bitIndex);
+    }
+
+    public void setBitBatch(byte[] ns, WriteBatch writeBatch, long... bitIndexes) {
+        setBitBatch(ns, writeBatch, Roaring64NavigableMap.bitmapOf(bitIndexes));
+    }
+
+    /**
+     * Set all bits of the given bitmap. Bits are grouped by fragment, so each fragment is read and written once.
+     */
+    public void setBitBatch(byte[] ns, WriteBatch writeBatch, Roaring64NavigableMap bits) {
+        var metadata = createMetadata(ns).orElseThrow();
+        updateBits(ns, writeBatch, metadata, bits, true);
+    }
+
+    public void clearBit(byte[] ns, long bitIndex) {
+        clearBitBatch(ns, null, bitIndex);
+    }
+
+    public void clearBitBatch(byte[] ns, WriteBatch writeBatch, long... bitIndexes) {
+        clearBitBatch(ns, writeBatch, Roaring64NavigableMap.bitmapOf(bitIndexes));
+    }
+
+    /**
+     * Clear all bits of the given bitmap. Fragments which become empty are deleted.
+     */
+    public void clearBitBatch(byte[] ns, WriteBatch writeBatch, Roaring64NavigableMap bits) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return;
+
+        updateBits(ns, writeBatch, metadata.get(), bits, false);
+    }
+
+    @SneakyThrows
+    private void updateBits(byte[] ns, WriteBatch writeBatch, BitmapMetadata metadata, Roaring64NavigableMap bits,
+                            boolean set) {
+        TreeMap<Long, RoaringBitmap> fragmentBits = groupByFragment(bits, metadata.getFragmentSize());
+        if (!set) //nothing to clear in fragments which were never written
+            fragmentBits.keySet().removeIf(fragmentIndex -> fragmentIndex > metadata.getMaxFragmentIndex());
+        if (fragmentBits.isEmpty())
+            return;
+
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        List<byte[]> keys = new ArrayList<>(fragmentBits.size());
+        for (long fragmentIndex : fragmentBits.keySet()) {
+            keys.add(getKey(keyPrefix, fragmentIndex));
+        }
+
+        List<byte[]> values = get(keys);
+        long cardinality = metadata.getCardinality();
+        int i = 0;
+        for (var entry : fragmentBits.values()) {
+            byte[] keyBytes = keys.get(i);
+            byte[] valueBytes = values.get(i++);
+            boolean exists = valueBytes != null && valueBytes.length > 0;
+            if (!exists && !set)
+                continue;
+
+            var bitSet = exists ? getRoaringBitmap(valueBytes) : new RoaringBitmap();
+            long oldCardinality = bitSet.getLongCardinality();
+            if (set)
+                bitSet.or(entry);
+            else
+                bitSet.andNot(entry);
+
+            long newCardinality = bitSet.getLongCardinality();
+            if (newCardinality == oldCardinality)
+                continue;
+
+            if (bitSet.isEmpty())
+                deleteFragment(writeBatch, keyBytes);
+            else
+                write(writeBatch, keyBytes, serializeRoaringBitmap(bitSet));
+            cardinality += newCardinality - oldCardinality;
+        }
+
+        boolean metadataChanged = cardinality != metadata.getCardinality();
+        metadata.setCardinality(cardinality);
+
+        long maxFragmentIndex = fragmentBits.lastKey();
+        if (set && maxFragmentIndex > metadata.getMaxFragmentIndex()) {
+            metadata.setMaxFragmentIndex(maxFragmentIndex);
+            metadataChanged = true;
+        }
+
+        if (metadataChanged)
+            updateMetadata(writeBatch, metadata, ns);
+    }
+
+    //Split bits into fragment index -> bits relative to the fragment
+    private static TreeMap<Long, RoaringBitmap> groupByFragment(Roaring64NavigableMap bits, int fragmentSize) {
+        TreeMap<Long, RoaringBitmap> fragmentBits = new TreeMap<>();
+        LongIterator iterator = bits.getLongIterator();
+        while (iterator.hasNext()) {
+            long bitIndex = iterator.next();
+            checkBitIndex(bitIndex);
+            fragmentBits.computeIfAbsent(bitIndex / fragmentSize, k -> new RoaringBitmap())
+                    .add((int) (bitIndex % fragmentSize));
+        }
+        return fragmentBits;
+    }
+
+    private static void checkBitIndex(long bitIndex) {
+        if (bitIndex < 0)
+            throw new IllegalArgumentException("Bit index must not be negative: " + bitIndex);
+    }
+
+    private void deleteFragment(WriteBatch writeBatch, byte[] keyBytes) {
+        if (writeBatch != null)
+            deleteBatch(writeBatch, keyBytes);
+        else
+            delete(keyBytes);
+    }
+
+    private static byte[] serializeRoaringBitmap(RoaringBitmap bitSet) throws IOException {
+        bitSet.runOptimize(); //use run containers where they are smaller
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(bitSet.serializedSizeInBytes());
+        bitSet.serialize(new DataOutputStream(baos));
+        return baos.toByteArray();
+    }
+
+    private static RoaringBitmap getRoaringBitmap(byte[] valueBytes) throws IOException {
+        RoaringBitmap bitSet = new RoaringBitmap();
+        bitSet.deserialize(new DataInputStream(new ByteArrayInputStream(valueBytes)));
+        return bitSet;
+    }
+
+    public boolean getBit(byte[] ns, long bitIndex) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return false;
+
+        return getBit(ns, metadata.get(), bitIndex);
+    }
+
+    @SneakyThrows
+    private boolean getBit(byte[] ns, BitmapMetadata metadata, long bitIndex) {
+        checkBitIndex(bitIndex);
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        int fragmentSize = metadata.getFragmentSize();
+
+        byte[] valueBytes = get(getKey(keyPrefix, bitIndex / fragmentSize));
+        if (valueBytes == null || valueBytes.length == 0) {
+            return false;
+        }
+
+        return getRoaringBitmap(valueBytes).contains((int) (bitIndex % fragmentSize));
+    }
+
+    //Get all the bits set in the bitmap in all fragments
+    public Roaring64NavigableMap getAllBits(byte[] ns) {
+        return getBits(ns, 0, Long.MAX_VALUE);
+    }
+
+    public Roaring64NavigableMap getBits(byte[] ns, long fromFragmentIndex, long toFragmentIndex) {
+        Roaring64NavigableMap bits = new Roaring64NavigableMap();
+        try (var fragments = fragmentIterator(ns, fromFragmentIndex, toFragmentIndex)) {
+            while (fragments.hasNext()) {
+                var fragment = fragments.next();
+                long offset = fragment._1;
+                fragment._2.forEach((int fragmentBitIndex) -> bits.addLong(offset + fragmentBitIndex));
+            }
+        }
+
+        return bits;
+    }
+
+    /**
+     * Iterate over the non-empty fragments of a bitmap without loading the whole bitmap. Each element is a tuple of
+     * the fragment's offset (fragment index * fragment size) and the bits set in the fragment, relative to the offset.
+     * The iterator must be closed after use.
+     */
+    public ValueIterator<Tuple<Long, RoaringBitmap>> fragmentIterator(byte[] ns) {
+        return fragmentIterator(ns, 0, Long.MAX_VALUE);
+    }
+
+    public ValueIterator<Tuple<Long, RoaringBitmap>> fragmentIterator(byte[] ns, long fromFragmentIndex, long toFragmentIndex) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return new EmptyIterator<>();
+
+        return new FragmentIterator(ns, metadata.get(), fromFragmentIndex, toFragmentIndex, false);
+    }
+
+    /**
+     * Iterate over the set bits of a bitmap in ascending order, loading one fragment at a time.
+     * The iterator must be closed after use.
+     */
+    public ValueIterator<Long> bitIterator(byte[] ns) {
+        return new BitmapBitIterator<>(fragmentIterator(ns), bitIndex -> bitIndex);
+    }
+
+    /**
+     * Number of bits set in the bitmap, read from metadata.
+     */
+    public long cardinality(byte[] ns) {
+        return getMetadata(ns).map(BitmapMetadata::getCardinality).orElse(0L);
+    }
+
+    /**
+     * Index of the first set bit at or after fromIndex. Seeks to the fragment of fromIndex and skips to the next
+     * non-empty fragment instead of reading every fragment in between.
+     *
+     * @return index of the next set bit or -1 if there is none
+     */
+    public long nextSetBit(byte[] ns, long fromIndex) {
+        checkBitIndex(fromIndex);
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return -1;
+
+        int fragmentSize = metadata.get().getFragmentSize();
+        try (var fragments = new FragmentIterator(ns, metadata.get(), fromIndex / fragmentSize, Long.MAX_VALUE, false)) {
+            while (fragments.hasNext()) {
+                var fragment = fragments.next();
+                long offset = fragment._1;
+                long nextSetBit = fragment._2.nextValue((int) Math.max(fromIndex - offset, 0));
+                if (nextSetBit != -1)
+                    return offset + nextSetBit;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Index of the first clear bit at or after fromIndex. Only full fragments make the search move to the next
+     * fragment, so it usually reads one or two fragments.
+     */
+    public long nextClearBit(byte[] ns, long fromIndex) {
+        checkBitIndex(fromIndex);
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return fromIndex;
+
+        int fragmentSize = metadata.get().getFragmentSize();
+        long candidate = fromIndex;
+        try (var fragments = new FragmentIterator(ns, metadata.get(), fromIndex / fragmentSize, Long.MAX_VALUE, false)) {
+            while (fragments.hasNext()) {
+                var fragment = fragments.next();
+                long offset = fragment._1;
+                if (offset > candidate) //candidate is in a missing fragment
+                    return candidate;
+
+                long nextClearBit = fragment._2.nextAbsentValue((int) (candidate - offset));
+                if (nextClearBit < fragmentSize)
+                    return offset + nextClearBit;
+
+                candidate = offset + fragmentSize;
+            }
+        }
+
+        return candidate;
+    }
+
+    /**
+     * Index of the last set bit at or before fromIndex. Seeks backwards from the fragment of fromIndex.
+     *
+     * @return index of the previous set bit or -1 if there is none
+     */
+    public long previousSetBit(byte[] ns, long fromIndex) {
+        if (fromIndex < 0)
+            return -1;
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return -1;
+
+        int fragmentSize = metadata.get().getFragmentSize();
+        try (var fragments = new FragmentIterator(ns, metadata.get(), 0, fromIndex / fragmentSize, true)) {
+            while (fragments.hasNext()) {
+                var fragment = fragments.next();
+                long offset = fragment._1;
+                long previousSetBit = fragment._2.previousValue((int) Math.min(fromIndex - offset, fragmentSize - 1));
+                if (previousSetBit != -1)
+                    return offset + previousSetBit;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Index of the last clear bit at or before fromIndex.
+     *
+     * @return index of the previous clear bit or -1 if all bits from 0 to fromIndex are set
+     */
+    public long previousClearBit(byte[] ns, long fromIndex) {
+        if (fromIndex < 0)
+            return -1;
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return fromIndex;
+
+        int fragmentSize = metadata.get().getFragmentSize();
+        long candidate = fromIndex;
+        try (var fragments = new FragmentIterator(ns, metadata.get(), 0, fromIndex / fragmentSize, true)) {
+            while (fragments.hasNext() && candidate >= 0) {
+                var fragment = fragments.next();
+                long offset = fragment._1;
+                if (offset + fragmentSize <= candidate) //candidate is in a missing fragment
+                    return candidate;
+
+                long previousClearBit = fragment._2.previousAbsentValue((int) (candidate - offset));
+                if (previousClearBit != -1)
+                    return offset + previousClearBit;
+
+                candidate = offset - 1;
+            }
+        }
+
+        return candidate;
+    }
+
+    @SneakyThrows
+    private BitmapMetadata updateMetadata(WriteBatch writeBatch, BitmapMetadata metadata, byte[] ns) {
+        var metadataKeyName = getMetadataKey(ns);
+        writeMetadata(writeBatch, metadataKeyName, metadata);
+        return metadata;
+    }
+
+    @Override
+    protected Optional<BitmapMetadata> getMetadata(byte[] ns) {
+        return readMetadata(getMetadataKey(ns), BitmapMetadata.class);
+    }
+
+    @Override
+    protected Optional<BitmapMetadata> createMetadata(byte[] ns) {
+        byte[] metadataKeyName = getMetadataKey(ns);
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty()) {
+            var newMetadata = new BitmapMetadata();
+            newMetadata.setVersion(System.currentTimeMillis());
+            newMetadata.setCardinality(0);
+            newMetadata.setFragmentSize(fragmentSize);
+            writeMetadata(null, metadataKeyName, newMetadata);
+            return Optional.of(newMetadata);
+        } else {
+            return metadata;
+        }
+    }
+
+    private static byte[] getKey(byte[] keyPrefix, long fragmentIndex) {
+        return KeyBuilder.appendToKey(keyPrefix, KeyBuilder.longToBytes(fragmentIndex));
+    }
+
+    private static long getFragmentIndex(byte[] key, byte[] keyPrefix) {
+        //fragment index is the long part right after the prefix
+        return KeyBuilder.readLong(key, keyPrefix.length + Integer.BYTES);
+    }
+
+    //Fragments of a version in [fromFragmentIndex, toFragmentIndex], up to maxFragmentIndex
+    private class FragmentIterator extends BitmapFragmentIterator {
+
+        public FragmentIterator(byte[] ns, BitmapMetadata metadata, long fromFragmentIndex, long toFragmentIndex,
+                                boolean reverse) {
+            super(RocksMultiBitmap64.this, FRAGMENT_FORMAT, getKeyPrefix(ns, metadata.getVersion()), fromFragmentIndex,
+                    Math.min(toFragmentIndex, metadata.getMaxFragmentIndex()), metadata.getFragmentSize(), reverse);
+        }
+    }
+}
@@ -26,20 +26,21 @@ public class RocksMultiList<T> extends BaseDataType<T> {
 
     public void add(byte[] ns, T value) {
         var metadata = createMetadata(ns).orElseThrow();
-        add(ns, null, metadata, value);
+        add(ns, null, metadata, getKeyPrefix(ns, metadata.getVersion()), value);
     }
 
     public void addBatch(byte[] ns, WriteBatch writeBatch, T... value) {
         var metadata = createMetadata(ns).orElseThrow();
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
         for (T val : value)
-            add(ns, writeBatch, metadata, val);
+            add(ns, writeBatch, metadata, keyPrefix, val);
     }
 
     @SneakyThrows
-    private void add(byte[] ns, WriteBatch writeBatch, @NonNull ListMetadata metadata, T value) {
+    private void add(byte[] ns, WriteBatch writeBatch, @NonNull ListMetadata metadata, byte[] keyPrefix, T value) {
         long index = metadata.getSize(); // Get the current length of the list
-        byte[] key = getSubKey(metadata, ns, index);
-        write(writeBatch, key, valueSerializer.serialize(value));
+        byte[] key = getSubKey(keyPrefix, index);
+        putValue(writeBatch, key, value);
         updateMetadata(writeBatch, metadata, ns, key); // Increment the length
     }
 
@@ -49,8 +50,7 @@ public class RocksMultiList<T> extends BaseDataType<T> {
         if (metadata.isEmpty())
             return null;
 
-        byte[] value = get(getSubKey(metadata.get(), ns, index));
-        return value != null ? valueSerializer.deserialize(value, valueType) : null;
+        return getValue(getSubKey(getKeyPrefix(ns, metadata.get().getVersion()), index), valueType);
     }
 
     @SneakyThrows
@@ -71,7 +71,7 @@ public class RocksMultiList<T> extends BaseDataType<T> {
             var listMetadata = new ListMetadata();
             listMetadata.setSize(0);
             listMetadata.setVersion(System.currentTimeMillis());
-            write(null, metadataKeyName, valueSerializer.serialize(listMetadata));
+            writeMetadata(null, metadataKeyName, listMetadata);
             return Optional.of(listMetadata);
         } else {
             return metadata;
@@ -83,41 +83,17 @@ public class RocksMultiList<T> extends BaseDataType<T> {
         var metadataKeyName = getMetadataKey(ns);
         metadata.setSize(metadata.getSize() + 1);
         metadata.setTail(currentKey);
-        write(writeBatch, metadataKeyName, valueSerializer.serialize(metadata));
+        writeMetadata(writeBatch, metadataKeyName, metadata);
         return metadata;
     }
 
     @SneakyThrows
     protected Optional<ListMetadata> getMetadata(byte[] ns) {
-        byte[] metadataKeyName = getMetadataKey(ns);
-        var metadataValueBytes = get(metadataKeyName);
-        if (metadataValueBytes == null || metadataValueBytes.length == 0) {
-            return Optional.empty();
-        } else {
-            return Optional.of(valueSerializer.deserialize(metadataValueBytes, ListMetadata.class));
-        }
-    }
-
-    protected byte[] getMetadataKey(byte[] ns) {
-        if (ns != null)
-            return new KeyBuilder(name, ns)
-                    .build();
-        else
-            return new KeyBuilder(name)
-                    .build();
+        return readMetadata(getMetadataKey(ns), ListMetadata.class);
     }
 
-    private byte[] getSubKey(ListMetadata currentMetadata, byte[] ns, long index) {
-        if (ns != null)
-            return new KeyBuilder(name, ns)
-                    .append(currentMetadata.getVersion())
-                    .append(index)
-                    .build();
-        else
-            return new KeyBuilder(name)
-                    .append(currentMetadata.getVersion())
-                    .append(index)
-                    .build();
+    private byte[] getSubKey(byte[] keyPrefix, long index) {
+        return KeyBuilder.appendToKey(keyPrefix, KeyBuilder.longToBytes(index));
     }
 }
 
@@ -3,48 +3,113 @@ package com.bloxbean.rocks.types.collection;
 import com.bloxbean.rocks.types.collection.metadata.MapMetadata;
 import com.bloxbean.rocks.types.collection.util.EmptyIterator;
 import com.bloxbean.rocks.types.collection.util.ValueIterator;
+import com.bloxbean.rocks.types.common.IndexDef;
+import com.bloxbean.rocks.types.common.IndexQuery;
+import com.bloxbean.rocks.types.common.IndexRecord;
 import com.bloxbean.rocks.types.common.KeyBuilder;
 import com.bloxbean.rocks.types.common.Tuple;
 import com.bloxbean.rocks.types.config.RocksDBConfig;
 import lombok.NonNull;
 import lombok.SneakyThrows;
+import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksIterator;
 import org.rocksdb.WriteBatch;
 import org.rocksdb.WriteOptions;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
  * Provides Map functionality on top of RocksDB. This is a multi map where you can have multiple maps
  * under the same name. Each map is identified by a namespace.
+ * <p>
+ * Secondary indexes can be registered with {@link #addIndex(IndexDef)}. Each index entry is a key
+ * prefix | -1 | index name | partKey | secondaryKey | map key with an empty value, so a lookup is a prefix scan over
+ * sorted map keys. -1 is never the length of a map key part, also not of a key which serializes to no bytes, so index
+ * entries sort after all map entries of a namespace and scans over the entries stop there. Index entries are written
+ * in the same WriteBatch as the map entry. The old value is read to remove stale index entries. Values written
+ * earlier in the same putBatch call are tracked, but values in other uncommitted batches can't be seen, so a key
+ * should be updated by only one call per uncommitted WriteBatch.
+ * <p>
+ * With {@link RocksDBConfig#setSizeTracking(boolean)} the number of entries is kept in the metadata and updated in
+ * the same WriteBatch as the entries, so {@link #size(byte[])} doesn't scan the map. A write checks if the key
+ * exists with a bloom filter probe before falling back to a read. Direct writes hold a metadata lock while
+ * updating the size. Writes to a caller's WriteBatch compute the new size under the same lock, but the batch is
+ * committed later and stores that size, so a namespace should be written only once per uncommitted WriteBatch and
+ * not by other writers until the batch is committed.
  * @param <K>
  * @param <V>
  */
 public class RocksMultiMap<K, V> extends BaseDataType<V> {
+    //Written after the key prefix in place of a part length, so index entries can't collide with map entries
+    private static final int INDEX_MARKER = -1;
+
     private final Class<K> keyType;
+    private final boolean sizeTracking;
+    private final Map<String, IndexDef<V>> indexes = new LinkedHashMap<>();
 
     public RocksMultiMap(@NonNull RocksDBConfig rocksDBConfig, String columnFamily,
                           @NonNull String name, @NonNull Class<K> keyType, @NonNull Class<V> valueType) {
         super(rocksDBConfig, columnFamily, name, valueType);
         this.keyType = keyType;
+        this.sizeTracking = rocksDBConfig.isSizeTracking();
     }
 
     public RocksMultiMap(@NonNull RocksDBConfig rocksDBConfig, @NonNull String name,
                          @NonNull Class<K> keyType, @NonNull Class<V> valueType) {
         super(rocksDBConfig, name, valueType);
         this.keyType = keyType;
+        this.sizeTracking = rocksDBConfig.isSizeTracking();
+    }
+
+    /**
+     * Register a secondary index. Only entries written after the index is registered are indexed, so register
+     * indexes before writing to the map.
+     *
+     * @param indexDef index name and mapper from value to index records
+     */
+    public void addIndex(@NonNull IndexDef<V> indexDef) {
+        if (indexes.containsKey(indexDef.getIndexName()))
+            throw new IllegalArgumentException("Index already exists: " + indexDef.getIndexName());
+
+        indexes.put(indexDef.getIndexName(), indexDef);
     }
 
+    @SneakyThrows
     public void put(byte[] ns, K key, V value) {
         var metadata = createMetadata(ns).orElseThrow();
-        put(ns, null, metadata, key, value);
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        boolean tracked = metadata.getSize() >= 0;
+        if (indexes.isEmpty() && !tracked) {
+            put(null, keyPrefix, key, value, null, null);
+            return;
+        }
+
+        //write the entry, its index entries and the new size at once
+        byte[] metadataKey = getMetadataKey(ns);
+        var lock = getMetadataLock(metadataKey);
+        lock.lock();
+        try (var writeBatch = new WriteBatch();
+             var writeOption = new WriteOptions()) {
+            Set<ByteBuffer> addedKeys = tracked ? new HashSet<>() : null;
+            put(writeBatch, keyPrefix, key, value, addedKeys, null);
+            commit(writeOption, writeBatch, metadataKey, tracked ? addedKeys.size() : 0);
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void putBatch(byte[] ns, WriteBatch writeBatch, Tuple<K, V>... keyValues) {
         var metadata = createMetadata(ns).orElseThrow();
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        Set<ByteBuffer> addedKeys = metadata.getSize() >= 0 ? new HashSet<>() : null;
+        Map<ByteBuffer, V> writtenValues = !indexes.isEmpty() ? new HashMap<>() : null;
         for (var keyVal : keyValues) {
-            put(ns, writeBatch, metadata, keyVal._1, keyVal._2);
+            put(writeBatch, keyPrefix, keyVal._1, keyVal._2, addedKeys, writtenValues);
         }
+
+        if (addedKeys != null && !addedKeys.isEmpty())
+            writeSize(writeBatch, getMetadataKey(ns), metadata.getVersion(), addedKeys.size());
     }
 
     public Optional<V> get(byte[] ns, K key) {
@@ -52,11 +117,8 @@ public class RocksMultiMap<K, V> extends BaseDataType<V> {
         if (metadata.isEmpty())
             return Optional.empty();
 
-        byte[] valueBytes = get(getKey(metadata.get(), ns, key));
-        if (valueBytes == null || valueBytes.length == 0)
-            return Optional.empty();
-
-        return Optional.of(valueSerializer.deserialize(valueBytes, valueType));
+        V value = getValue(getKey(getKeyPrefix(ns, metadata.get().getVersion()), key), valueType);
+        return Optional.ofNullable(value);
     }
 
     public List<V> multiGet(byte[] ns, List<K> keys) {
@@ -64,23 +126,17 @@ public class RocksMultiMap<K, V> extends BaseDataType<V> {
         if (metadata.isEmpty())
             return Collections.emptyList();
 
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.get().getVersion());
         var keysBytes = keys.stream()
-                .map(key -> getKey(metadata.get(), ns, key))
+                .map(key -> getKey(keyPrefix, key))
                 .toList();
 
-        List<byte[]> values = get(keysBytes);
+        List<V> values = getValues(keysBytes, valueType);
 
         if (values == null || values.size() == 0)
             return Collections.emptyList();
 
-        return values.stream()
-                .map(value -> {
-                    if (value == null)
-                        return null;
-                    else
-                        return valueSerializer.deserialize(value, valueType);
-                })
-                .toList();
+        return values;
     }
 
     public boolean contains(byte[] ns, K key) {
@@ -88,8 +144,7 @@ public class RocksMultiMap<K, V> extends BaseDataType<V> {
         if (metadata.isEmpty())
             return false;
 
-        byte[] valueBytes = get(getKey(metadata.get(), ns, key));
-        return valueBytes != null && valueBytes.length > 0;
+        return getValueSize(getKey(getKeyPrefix(ns, metadata.get().getVersion()), key)) > 0;
     }
 
     @SneakyThrows
@@ -98,10 +153,23 @@ public class RocksMultiMap<K, V> extends BaseDataType<V> {
         if (metadata.isEmpty())
             return;
 
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.get().getVersion());
+        boolean tracked = metadata.get().getSize() >= 0;
+        if (indexes.isEmpty() && !tracked) {
+            delete(getKey(keyPrefix, key));
+            return;
+        }
+
+        byte[] metadataKey = getMetadataKey(ns);
+        var lock = getMetadataLock(metadataKey);
+        lock.lock();
         try(var writeBatch = new WriteBatch();
             var writeOption = new WriteOptions()) {
-            delete(ns, writeBatch, metadata.get(), key);
-            db.write(writeOption, writeBatch);
+            Set<ByteBuffer> removedKeys = tracked ? new HashSet<>() : null;
+            delete(writeBatch, keyPrefix, key, removedKeys);
+            commit(writeOption, writeBatch, metadataKey, tracked ? -removedKeys.size() : 0);
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -111,8 +179,53 @@ public class RocksMultiMap<K, V> extends BaseDataType<V> {
         if (metadata.isEmpty())
             return;
 
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.get().getVersion());
+        long size = metadata.get().getSize();
+        Set<ByteBuffer> removedKeys = size >= 0 ? new HashSet<>() : null;
         for (var key : keys)
-            delete(ns, writeBatch, metadata.get(), key);
+            delete(writeBatch, keyPrefix, key, removedKeys);
+
+        if (removedKeys != null && !removedKeys.isEmpty())
+            writeSize(writeBatch, getMetadataKey(ns), metadata.get().getVersion(), -removedKeys.size());
+    }
+
+    /**
+     * Number of entries in the map. Read from the metadata if the map tracks its size, see
+     * {@link RocksDBConfig#setSizeTracking(boolean)}. Otherwise the keys are counted by a scan which doesn't read
+     * the entries.
+     */
+    public long size(byte[] ns) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return 0;
+        if (metadata.get().getSize() >= 0)
+            return metadata.get().getSize();
+
+        byte[] prefix = getKeyPrefix(ns, metadata.get().getVersion());
+        long count = 0;
+        try (RocksIterator iterator = iterator()) {
+            for (iterator.seek(prefix); iterator.isValid(); iterator.next()) {
+                if (!isEntryKey(iterator.key(), prefix))
+                    break;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Estimated number of entries in the map from the size of its key range. Cheap for large maps which don't
+     * track their size, but only a rough estimate. Small maps are counted exactly.
+     */
+    public long approximateSize(byte[] ns) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return 0;
+        if (metadata.get().getSize() >= 0)
+            return metadata.get().getSize();
+
+        byte[] prefix = getKeyPrefix(ns, metadata.get().getVersion());
+        return approximateCount(prefix, getIndexPrefix(prefix));
     }
 
     public Set<Map.Entry<K, V>> entries(byte[] ns) {
@@ -121,18 +234,16 @@ public class RocksMultiMap<K, V> extends BaseDataType<V> {
             return Collections.emptySet();
 
         Set<Map.Entry<K, V>> members = new HashSet<>();
-        byte[] prefix = getKey(metadata.get(), ns, null);
+        byte[] prefix = getKeyPrefix(ns, metadata.get().getVersion());
         try (RocksIterator iterator = iterator()) {
             for (iterator.seek(prefix); iterator.isValid(); iterator.next()) {
                 byte[] key = iterator.key();
-                if (!KeyBuilder.hasPrefix(key, prefix)) {
-                    break; // Break if the key no longer starts with the prefix
+                if (!isEntryKey(key, prefix)) {
+                    break; // Break at the end of the map entries
                 }
 
-                byte[] valueBytes = iterator.value();
-
-                K keyObj = getKeyFromCompositeKey(key);
-                V valueObj = valueSerializer.deserialize(valueBytes, valueType);
+                K keyObj = getKeyFromCompositeKey(key, prefix);
+                V valueObj = getIteratorValue(iterator, valueType);
 
                 members.add(new AbstractMap.SimpleEntry<>(keyObj, valueObj));
             }
@@ -145,32 +256,258 @@ public class RocksMultiMap<K, V> extends BaseDataType<V> {
         if (metadata.isEmpty()) {
             return new EmptyIterator<>();
         }
-        byte[] prefix = getKey(metadata.get(), ns, null);
+        byte[] prefix = getKeyPrefix(ns, metadata.get().getVersion());
         return new MapIterator(prefix);
     }
 
-    private void put(byte[] ns, WriteBatch writeBatch, MapMetadata metadata, K key, V value) {
-        byte[] keyBytes = getKey(metadata, ns, key);
-        byte[] valueBytes = valueSerializer.serialize(value);
+    /**
+     * Find all entries with the given partKey and secondaryKey in an index
+     *
+     * @return matching entries in the order of the serialized keys
+     */
+    public List<Map.Entry<K, V>> findBy(byte[] ns, String indexName, String partKey, String secondaryKey) {
+        return findByAll(ns, new IndexQuery(indexName, partKey, secondaryKey));
+    }
+
+    /**
+     * Find all entries with the given partKey and any secondaryKey in an index
+     */
+    public List<Map.Entry<K, V>> findBy(byte[] ns, String indexName, String partKey) {
+        return findByAll(ns, new IndexQuery(indexName, partKey));
+    }
+
+    /**
+     * Find entries matching all queries (AND)
+     */
+    public List<Map.Entry<K, V>> findByAll(byte[] ns, IndexQuery... queries) {
+        return findBy(ns, true, queries);
+    }
+
+    /**
+     * Find entries matching any of the queries (OR)
+     */
+    public List<Map.Entry<K, V>> findByAny(byte[] ns, IndexQuery... queries) {
+        return findBy(ns, false, queries);
+    }
+
+    private List<Map.Entry<K, V>> findBy(byte[] ns, boolean matchAll, IndexQuery... queries) {
+        if (queries.length == 0)
+            throw new IllegalArgumentException("At least one index query is required");
+        for (var query : queries) {
+            if (!indexes.containsKey(query.getIndexName()))
+                throw new IllegalArgumentException("Index not found: " + query.getIndexName());
+        }
+
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return Collections.emptyList();
+
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.get().getVersion());
+        Set<ByteBuffer> keys = null;
+        for (var query : queries) {
+            var queryKeys = findKeys(keyPrefix, query);
+            if (keys == null)
+                keys = queryKeys;
+            else if (matchAll)
+                keys.retainAll(queryKeys);
+            else
+                keys.addAll(queryKeys);
+
+            if (matchAll && keys.isEmpty())
+                break;
+        }
+
+        List<byte[]> keysBytes = new ArrayList<>(keys.size());
+        List<byte[]> entryKeys = new ArrayList<>(keys.size());
+        for (var key : keys) {
+            keysBytes.add(key.array());
+            entryKeys.add(KeyBuilder.appendToKey(keyPrefix, key.array()));
+        }
+
+        List<V> values = getValues(entryKeys, valueType);
+        List<Map.Entry<K, V>> entries = new ArrayList<>(values.size());
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i) == null)
+                continue;
+            K keyObj = valueSerializer.deserialize(keysBytes.get(i), keyType);
+            entries.add(new AbstractMap.SimpleEntry<>(keyObj, values.get(i)));
+        }
+        return entries;
+    }
+
+    //Serialized map keys of the entries matching an index query
+    private Set<ByteBuffer> findKeys(byte[] keyPrefix, IndexQuery query) {
+        byte[] prefix = query.getSecondaryKey() != null
+                ? getIndexKey(keyPrefix, query.getIndexName(), query.getPartKey(), query.getSecondaryKey())
+                : KeyBuilder.appendToKey(getIndexPrefix(keyPrefix), KeyBuilder.strToBytes(query.getIndexName()),
+                        indexKeyPart(query.getPartKey()));
 
-        write(writeBatch, keyBytes, valueBytes);
+        Set<ByteBuffer> keys = new LinkedHashSet<>();
+        try (var readOptions = new ReadOptions().setTotalOrderSeek(true);
+             RocksIterator iterator = iterator(readOptions)) {
+            for (iterator.seek(prefix); iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+                if (!KeyBuilder.hasPrefix(key, prefix)) {
+                    break;
+                }
+
+                //map key is the part after the secondary key. Parts are read from the known prefix, as the
+                //index marker before the index name is not a length prefix
+                int mapKeyOffset = query.getSecondaryKey() != null
+                        ? prefix.length
+                        : prefix.length + Integer.BYTES + KeyBuilder.readInt(key, prefix.length);
+                keys.add(ByteBuffer.wrap(KeyBuilder.getPartAt(key, mapKeyOffset)));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * @param addedKeys     collects entry keys which didn't exist before, or null if the size is not tracked
+     * @param writtenValues values written earlier in the same call by entry key, so a key written twice replaces the
+     *                      index entries of its first value, which are not committed yet. Null for a single put
+     */
+    private void put(WriteBatch writeBatch, byte[] keyPrefix, K key, V value, Set<ByteBuffer> addedKeys,
+                     Map<ByteBuffer, V> writtenValues) {
+        byte[] keyBytes = valueSerializer.serialize(key);
+        byte[] entryKey = KeyBuilder.appendToKey(keyPrefix, keyBytes);
+        if (!indexes.isEmpty()) {
+            var entryKeyBuffer = ByteBuffer.wrap(entryKey);
+            V oldValue = writtenValues != null && writtenValues.containsKey(entryKeyBuffer)
+                    ? writtenValues.get(entryKeyBuffer)
+                    : getValue(entryKey, valueType);
+            updateIndexes(writeBatch, keyPrefix, keyBytes, oldValue, value);
+            if (addedKeys != null && oldValue == null)
+                addedKeys.add(entryKeyBuffer);
+            if (writtenValues != null)
+                writtenValues.put(entryKeyBuffer, value);
+        } else if (addedKeys != null) {
+            var entryKeyBuffer = ByteBuffer.wrap(entryKey);
+            if (!addedKeys.contains(entryKeyBuffer) && !keyExists(entryKey))
+                addedKeys.add(entryKeyBuffer);
+        }
+
+        putValue(writeBatch, entryKey, value);
     }
 
-    private void delete(byte[] ns, WriteBatch writeBatch, MapMetadata metadata, K key) {
-        deleteBatch(writeBatch, getKey(metadata, ns, key));
+    /**
+     * @param removedKeys collects entry keys which existed before, or null if the size is not tracked
+     */
+    private void delete(WriteBatch writeBatch, byte[] keyPrefix, K key, Set<ByteBuffer> removedKeys) {
+        byte[] keyBytes = valueSerializer.serialize(key);
+        byte[] entryKey = KeyBuilder.appendToKey(keyPrefix, keyBytes);
+        if (!indexes.isEmpty()) {
+            V oldValue = getValue(entryKey, valueType);
+            if (oldValue != null) {
+                updateIndexes(writeBatch, keyPrefix, keyBytes, oldValue, null);
+                if (removedKeys != null)
+                    removedKeys.add(ByteBuffer.wrap(entryKey));
+            }
+        } else if (removedKeys != null && keyExists(entryKey)) {
+            removedKeys.add(ByteBuffer.wrap(entryKey));
+        }
+
+        deleteBatch(writeBatch, entryKey);
     }
 
+    /**
+     * Commit a write batch with the size changed by sizeDelta. Must be called with the metadata lock held. The
+     * metadata is read from RocksDB, so size changes committed through other instances are not lost.
+     */
     @SneakyThrows
-    protected Optional<MapMetadata> getMetadata(byte[] ns) {
-        byte[] metadataKeyName = getMetadataKey(ns);
-        var metadataValueBytes = get(metadataKeyName);
-        if (metadataValueBytes == null || metadataValueBytes.length == 0) {
-            return Optional.empty();
-        } else {
-            return Optional.of(valueSerializer.deserialize(metadataValueBytes, MapMetadata.class));
+    private void commit(WriteOptions writeOptions, WriteBatch writeBatch, byte[] metadataKey, long sizeDelta) {
+        if (sizeDelta == 0) {
+            db.write(writeOptions, writeBatch);
+            return;
+        }
+
+        var metadata = readStoredMetadata(metadataKey, MapMetadata.class).orElseThrow();
+        metadata.setSize(metadata.getSize() + sizeDelta);
+        commitWithMetadata(writeOptions, writeBatch, metadataKey, metadata);
+    }
+
+    /**
+     * Add a size change to a caller's WriteBatch. The size is computed under the metadata lock from the metadata
+     * stored in RocksDB, so it includes all committed changes. The batch stores the resulting size, so changes
+     * committed to the namespace after this call and before the batch is committed are overwritten.
+     */
+    private void writeSize(WriteBatch writeBatch, byte[] metadataKey, long version, long sizeDelta) {
+        var lock = getMetadataLock(metadataKey);
+        lock.lock();
+        try {
+            var metadata = readStoredMetadata(metadataKey, MapMetadata.class).orElse(null);
+            //the namespace was deleted or recreated in the meantime
+            if (metadata == null || metadata.getVersion() != version || metadata.getSize() < 0)
+                return;
+
+            metadata.setSize(metadata.getSize() + sizeDelta);
+            writeMetadata(writeBatch, metadataKey, metadata);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Replace the index entries of the old value with the ones of the new value. Index entries which are the same
+     * for both values are not rewritten.
+     */
+    private void updateIndexes(WriteBatch writeBatch, byte[] keyPrefix, byte[] keyBytes, V oldValue, V newValue) {
+        for (var index : indexes.values()) {
+            Set<ByteBuffer> oldIndexKeys = getIndexKeys(keyPrefix, index, keyBytes, oldValue);
+            Set<ByteBuffer> newIndexKeys = getIndexKeys(keyPrefix, index, keyBytes, newValue);
+
+            for (var indexKey : oldIndexKeys) {
+                if (!newIndexKeys.contains(indexKey))
+                    deleteBatch(writeBatch, indexKey.array());
+            }
+
+            for (var indexKey : newIndexKeys) {
+                if (!oldIndexKeys.contains(indexKey))
+                    writeBatch(writeBatch, indexKey.array(), new byte[0]);
+            }
         }
     }
 
+    private Set<ByteBuffer> getIndexKeys(byte[] keyPrefix, IndexDef<V> index, byte[] keyBytes, V value) {
+        if (value == null)
+            return Collections.emptySet();
+
+        List<IndexRecord> records = index.getKeyMapper().apply(value);
+        if (records == null || records.isEmpty())
+            return Collections.emptySet();
+
+        Set<ByteBuffer> indexKeys = new HashSet<>();
+        for (var record : records) {
+            byte[] indexKey = getIndexKey(keyPrefix, index.getIndexName(), record.getPartKey(), record.getSecondaryKey());
+            indexKeys.add(ByteBuffer.wrap(KeyBuilder.appendToKey(indexKey, keyBytes)));
+        }
+        return indexKeys;
+    }
+
+    private byte[] getIndexKey(byte[] keyPrefix, String indexName, String partKey, String secondaryKey) {
+        return KeyBuilder.appendToKey(getIndexPrefix(keyPrefix), KeyBuilder.strToBytes(indexName),
+                indexKeyPart(partKey), indexKeyPart(secondaryKey));
+    }
+
+    //Index entries of all indexes, after all map entries of the namespace
+    private static byte[] getIndexPrefix(byte[] keyPrefix) {
+        return KeyBuilder.merge(keyPrefix, KeyBuilder.intToBytes(INDEX_MARKER));
+    }
+
+    private static boolean isEntryKey(byte[] key, byte[] keyPrefix) {
+        return KeyBuilder.hasPrefix(key, keyPrefix) && KeyBuilder.readInt(key, keyPrefix.length) != INDEX_MARKER;
+    }
+
+    //null keys are stored as empty parts
+    private static byte[] indexKeyPart(String key) {
+        return key != null ? KeyBuilder.strToBytes(key) : new byte[0];
+    }
+
+    @SneakyThrows
+    protected Optional<MapMetadata> getMetadata(byte[] ns) {
+        return readMetadata(getMetadataKey(ns), MapMetadata.class);
+    }
+
     @Override
     protected Optional<MapMetadata> createMetadata(byte[] ns) {
         byte[] metadataKeyName = getMetadataKey(ns);
@@ -178,39 +515,22 @@ public class RocksMultiMap<K, V> extends BaseDataType<V> {
         if (metadata.isEmpty()) {
             var newMetadata = new MapMetadata();
             newMetadata.setVersion(System.currentTimeMillis());
-            write(null, metadataKeyName, valueSerializer.serialize(newMetadata));
+            if (sizeTracking)
+                newMetadata.setSize(0);
+            writeMetadata(null, metadataKeyName, newMetadata);
             return Optional.of(newMetadata);
         } else {
             return metadata;
         }
     }
 
-    protected byte[] getMetadataKey(byte[] ns) {
-        if (ns != null)
-            return new KeyBuilder(name, ns)
-                    .build();
-        else
-            return new KeyBuilder(name)
-                    .build();
+    private byte[] getKey(byte[] keyPrefix, K key) {
+        return KeyBuilder.appendToKey(keyPrefix, valueSerializer.serialize(key));
     }
 
-    private byte[] getKey(MapMetadata metadata, byte[] ns, K key) {
-        if (ns != null)
-            return new KeyBuilder(name, ns)
-                    .append(metadata.getVersion())
-                    .append(key != null? valueSerializer.serialize(key): null)
-                    .build();
-        else
-            return new KeyBuilder(name)
-                    .append(metadata.getVersion())
-                    .append(key != null? valueSerializer.serialize(key): null)
-                    .build();
-    }
-
-    private K getKeyFromCompositeKey(byte[] compositeKey) {
-        List<byte[]> parts = KeyBuilder.decodeCompositeKey(compositeKey);
-        //last part is the key
-        return valueSerializer.deserialize(parts.get(parts.size() - 1), keyType);
+    private K getKeyFromCompositeKey(byte[] compositeKey, byte[] keyPrefix) {
+        //key is the part right after the prefix
+        return valueSerializer.deserialize(KeyBuilder.getPartAfterPrefix(compositeKey, keyPrefix), keyType);
     }
 
     private class MapIterator implements ValueIterator<Map.Entry<K, V>> {
@@ -225,7 +545,7 @@ public class RocksMultiMap<K, V> extends BaseDataType<V> {
 
         @Override
         public boolean hasNext() {
-            return iterator.isValid() && KeyBuilder.hasPrefix(iterator.key(), prefix);
+            return iterator.isValid() && isEntryKey(iterator.key(), prefix);
         }
 
         @Override
@@ -234,12 +554,10 @@ public class RocksMultiMap<K, V> extends BaseDataType<V> {
                 throw new NoSuchElementException();
             }
             byte[] key = iterator.key();
-            byte[] valueBytes = iterator.value();
+            K keyObj = getKeyFromCompositeKey(key, prefix);
+            V valueObj = getIteratorValue(iterator, valueType);
             iterator.next();
 
-            K keyObj = getKeyFromCompositeKey(key);
-            V valueObj = valueSerializer.deserialize(valueBytes, valueType);
-
             return new AbstractMap.SimpleEntry<>(keyObj, valueObj);
         }
 
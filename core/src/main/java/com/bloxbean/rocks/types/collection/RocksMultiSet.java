@@ -11,37 +11,78 @@ import org.rocksdb.RocksIterator;
 import org.rocksdb.WriteBatch;
 import org.rocksdb.WriteOptions;
 
+import java.nio.ByteBuffer;
 import java.util.*;
 
 /**
  * Provides Set functionality on top of RocksDB. This is a multi set where you can have multiple sets
  * under the same name. Each set is identified by a namespace.
+ * <p>
+ * Sets created with {@link RocksDBConfig#setSizeTracking(boolean)} keep the number of members in the metadata.
+ * Adding a member which is already in the set doesn't change the size, so each add and remove first checks if the
+ * member exists, mostly answered by a bloom filter probe. As with maps, writes to a caller's WriteBatch compute the
+ * new size under the metadata lock but store it when the batch is committed, so a namespace should be written only
+ * once per uncommitted WriteBatch and not by other writers until the batch is committed.
  */
 public class RocksMultiSet<T> extends BaseDataType<T> {
+    private final boolean sizeTracking;
 
     public RocksMultiSet(RocksDBConfig rocksDBConfig, String columnFamily, String name, Class<T> valueType) {
         super(rocksDBConfig, columnFamily, name, valueType);
+        this.sizeTracking = rocksDBConfig.isSizeTracking();
     }
 
     public RocksMultiSet(RocksDBConfig rocksDBConfig, String name, Class<T> valueType) {
         super(rocksDBConfig, null, name, valueType);
+        this.sizeTracking = rocksDBConfig.isSizeTracking();
     }
 
     @SneakyThrows
     public void add(byte[] ns, T member) {
         var metadata = createMetadata(ns).orElseThrow();
-        add(ns, null, metadata, member);
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        if (metadata.getSize() < 0) {
+            add(null, keyPrefix, member, null);
+            return;
+        }
+
+        byte[] metadataKey = getMetadataKey(ns);
+        var lock = getMetadataLock(metadataKey);
+        lock.lock();
+        try (var writeBatch = new WriteBatch();
+             var writeOption = new WriteOptions()) {
+            Set<ByteBuffer> addedKeys = new HashSet<>();
+            add(writeBatch, keyPrefix, member, addedKeys);
+            commit(writeOption, writeBatch, metadataKey, addedKeys.size());
+        } finally {
+            lock.unlock();
+        }
     }
 
     public void addBatch(byte[] ns, WriteBatch writeBatch, T... members) {
         var metadata = createMetadata(ns).orElseThrow();
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        Set<ByteBuffer> addedKeys = metadata.getSize() >= 0 ? new HashSet<>() : null;
         for (var val : members) {
-            add(ns, writeBatch, metadata, val);
+            add(writeBatch, keyPrefix, val, addedKeys);
         }
+
+        if (addedKeys != null && !addedKeys.isEmpty())
+            writeSize(writeBatch, getMetadataKey(ns), metadata.getVersion(), addedKeys.size());
     }
 
-    private void add(byte[] ns, WriteBatch writeBatch, SetMetadata metadata, T member) {
-        write(writeBatch, getSubKey(metadata, ns, member), new byte[0]);
+    /**
+     * @param addedKeys collects member keys which didn't exist before, or null if the size is not tracked
+     */
+    private void add(WriteBatch writeBatch, byte[] keyPrefix, T member, Set<ByteBuffer> addedKeys) {
+        byte[] subKey = getSubKey(keyPrefix, member);
+        if (addedKeys != null) {
+            var subKeyBuffer = ByteBuffer.wrap(subKey);
+            if (!addedKeys.contains(subKeyBuffer) && !keyExists(subKey))
+                addedKeys.add(subKeyBuffer);
+        }
+
+        write(writeBatch, subKey, new byte[0]);
     }
 
     @SneakyThrows
@@ -50,7 +91,7 @@ public class RocksMultiSet<T> extends BaseDataType<T> {
         if (metadata.isEmpty())
             return false;
 
-        byte[] val = get(getSubKey(metadata.get(), ns, member));
+        byte[] val = get(getSubKey(getKeyPrefix(ns, metadata.get().getVersion()), member));
         return val != null;
     }
 
@@ -60,10 +101,22 @@ public class RocksMultiSet<T> extends BaseDataType<T> {
         if (metadata.isEmpty())
             return;
 
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.get().getVersion());
+        if (metadata.get().getSize() < 0) {
+            delete(getSubKey(keyPrefix, member));
+            return;
+        }
+
+        byte[] metadataKey = getMetadataKey(ns);
+        var lock = getMetadataLock(metadataKey);
+        lock.lock();
         try(var writeBatch = new WriteBatch();
             var writeOption = new WriteOptions()) {
-            delete(ns, writeBatch, metadata.get(), member);
-            db.write(writeOption, writeBatch);
+            Set<ByteBuffer> removedKeys = new HashSet<>();
+            delete(writeBatch, keyPrefix, member, removedKeys);
+            commit(writeOption, writeBatch, metadataKey, -removedKeys.size());
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -73,12 +126,63 @@ public class RocksMultiSet<T> extends BaseDataType<T> {
         if (metadata.isEmpty())
             return;
 
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.get().getVersion());
+        long size = metadata.get().getSize();
+        Set<ByteBuffer> removedKeys = size >= 0 ? new HashSet<>() : null;
         for (var value : values)
-            delete(ns, writeBatch, metadata.get(), value);
+            delete(writeBatch, keyPrefix, value, removedKeys);
+
+        if (removedKeys != null && !removedKeys.isEmpty())
+            writeSize(writeBatch, getMetadataKey(ns), metadata.get().getVersion(), -removedKeys.size());
+    }
+
+    /**
+     * @param removedKeys collects member keys which existed before, or null if the size is not tracked
+     */
+    private void delete(WriteBatch writeBatch, byte[] keyPrefix, T value, Set<ByteBuffer> removedKeys) {
+        byte[] subKey = getSubKey(keyPrefix, value);
+        if (removedKeys != null && keyExists(subKey))
+            removedKeys.add(ByteBuffer.wrap(subKey));
+
+        deleteBatch(writeBatch, subKey);
+    }
+
+    /**
+     * Number of members in the set. Read from the metadata if the set tracks its size, otherwise counted by a key
+     * scan without deserializing the members.
+     */
+    public long size(byte[] ns) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return 0;
+        if (metadata.get().getSize() >= 0)
+            return metadata.get().getSize();
+
+        byte[] prefix = getKeyPrefix(ns, metadata.get().getVersion());
+        long count = 0;
+        try (RocksIterator iterator = iterator()) {
+            for (iterator.seek(prefix); iterator.isValid(); iterator.next()) {
+                if (!KeyBuilder.hasPrefix(iterator.key(), prefix))
+                    break;
+                count++;
+            }
+        }
+        return count;
     }
 
-    private void delete(byte[] ns, WriteBatch writeBatch, SetMetadata metadata, T value) {
-        deleteBatch(writeBatch, getSubKey(metadata, ns, value));
+    /**
+     * Estimated number of members from the size of the set's key range, for large sets which don't track their
+     * size. Small sets are counted exactly.
+     */
+    public long approximateSize(byte[] ns) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return 0;
+        if (metadata.get().getSize() >= 0)
+            return metadata.get().getSize();
+
+        byte[] prefix = getKeyPrefix(ns, metadata.get().getVersion());
+        return approximateCount(prefix, KeyBuilder.merge(prefix, new byte[]{(byte) 0xFF}));
     }
 
     @SneakyThrows
@@ -88,7 +192,7 @@ public class RocksMultiSet<T> extends BaseDataType<T> {
             return Collections.emptySet();
 
         Set<T> members = new HashSet<>();
-        byte[] prefix = getSubKey(metadata.get(), ns, null);
+        byte[] prefix = getKeyPrefix(ns, metadata.get().getVersion());
         try (RocksIterator iterator = iterator()) {
             for (iterator.seek(prefix); iterator.isValid(); iterator.next()) {
                 byte[] key = iterator.key();
@@ -96,7 +200,7 @@ public class RocksMultiSet<T> extends BaseDataType<T> {
                     break; // Break if the key no longer starts with the prefix
                 }
 
-                T member = getMemberFromCompositeSubKey(key);
+                T member = getMemberFromCompositeSubKey(key, prefix);
                 members.add(member);
             }
         }
@@ -109,19 +213,13 @@ public class RocksMultiSet<T> extends BaseDataType<T> {
         if (metadata.isEmpty()) {
             return new EmptyIterator<>();
         }
-        byte[] prefix = getSubKey(metadata.get(), ns, null);
+        byte[] prefix = getKeyPrefix(ns, metadata.get().getVersion());
         return new SetIterator<>(iterator(), prefix);
     }
 
     @SneakyThrows
     protected Optional<SetMetadata> getMetadata(byte[] ns) {
-        byte[] metadataKeyName = getMetadataKey(ns);
-        var metadataValueBytes = get(metadataKeyName);
-        if (metadataValueBytes == null || metadataValueBytes.length == 0) {
-            return Optional.empty();
-        } else {
-            return Optional.of(valueSerializer.deserialize(metadataValueBytes, SetMetadata.class));
-        }
+        return readMetadata(getMetadataKey(ns), SetMetadata.class);
     }
 
     @Override
@@ -131,38 +229,58 @@ public class RocksMultiSet<T> extends BaseDataType<T> {
         if (metadata.isEmpty()) {
             var newMetadata = new SetMetadata();
             newMetadata.setVersion(System.currentTimeMillis());
-            write(null, metadataKeyName, valueSerializer.serialize(newMetadata));
+            if (sizeTracking)
+                newMetadata.setSize(0);
+            writeMetadata(null, metadataKeyName, newMetadata);
             return Optional.of(newMetadata);
         } else {
             return metadata;
         }
     }
 
-    protected byte[] getMetadataKey(byte[] ns) {
-        if (ns != null)
-            return new KeyBuilder(name, ns)
-                    .build();
-        else
-            return new KeyBuilder(name)
-                    .build();
+    /**
+     * Commit a write batch with the size changed by sizeDelta. Must be called with the metadata lock held. The
+     * metadata is read from RocksDB, so size changes committed through other instances are not lost.
+     */
+    @SneakyThrows
+    private void commit(WriteOptions writeOptions, WriteBatch writeBatch, byte[] metadataKey, long sizeDelta) {
+        if (sizeDelta == 0) {
+            db.write(writeOptions, writeBatch);
+            return;
+        }
+
+        var metadata = readStoredMetadata(metadataKey, SetMetadata.class).orElseThrow();
+        metadata.setSize(metadata.getSize() + sizeDelta);
+        commitWithMetadata(writeOptions, writeBatch, metadataKey, metadata);
+    }
+
+    /**
+     * Add a size change to a caller's WriteBatch. The size is computed under the metadata lock from the metadata
+     * stored in RocksDB, so it includes all committed changes. The batch stores the resulting size, so changes
+     * committed to the namespace after this call and before the batch is committed are overwritten.
+     */
+    private void writeSize(WriteBatch writeBatch, byte[] metadataKey, long version, long sizeDelta) {
+        var lock = getMetadataLock(metadataKey);
+        lock.lock();
+        try {
+            var metadata = readStoredMetadata(metadataKey, SetMetadata.class).orElse(null);
+            //the namespace was deleted or recreated in the meantime
+            if (metadata == null || metadata.getVersion() != version || metadata.getSize() < 0)
+                return;
+
+            metadata.setSize(metadata.getSize() + sizeDelta);
+            writeMetadata(writeBatch, metadataKey, metadata);
+        } finally {
+            lock.unlock();
+        }
     }
 
-    private byte[] getSubKey(SetMetadata metadata, byte[] ns, T member) {
-        if (ns != null)
-            return new KeyBuilder(name, ns)
-                    .append(metadata.getVersion())
-                    .append(member != null ? valueSerializer.serialize(member) : null)
-                    .build();
-        else
-            return new KeyBuilder(name)
-                    .append(metadata.getVersion())
-                    .append(member != null ? valueSerializer.serialize(member) : null)
-                    .build();
+    private byte[] getSubKey(byte[] keyPrefix, T member) {
+        return KeyBuilder.appendToKey(keyPrefix, valueSerializer.serialize(member));
     }
 
-    private T getMemberFromCompositeSubKey(byte[] key) {
-        var parts = KeyBuilder.decodeCompositeKey(key);
-        return valueSerializer.deserialize(parts.get(parts.size() - 1), valueType);
+    private T getMemberFromCompositeSubKey(byte[] key, byte[] keyPrefix) {
+        return valueSerializer.deserialize(KeyBuilder.getPartAfterPrefix(key, keyPrefix), valueType);
     }
 
     private class SetIterator<T> implements ValueIterator<T> {
@@ -189,7 +307,7 @@ public class RocksMultiSet<T> extends BaseDataType<T> {
             }
             byte[] key = iterator.key();
             iterator.next();
-            return (T) getMemberFromCompositeSubKey(key);
+            return (T) getMemberFromCompositeSubKey(key, prefix);
         }
 
         @Override
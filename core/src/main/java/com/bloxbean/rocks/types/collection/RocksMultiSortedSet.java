@@ -0,0 +1,1669 @@
+package com.bloxbean.rocks.types.collection;
+
+import com.bloxbean.rocks.types.collection.metadata.TypeMetadata;
+import com.bloxbean.rocks.types.collection.metadata.ZSetMetadata;
+import com.bloxbean.rocks.types.collection.util.EmptyIterator;
+import com.bloxbean.rocks.types.collection.util.ReverseValueIterator;
+import com.bloxbean.rocks.types.collection.util.ValueIterator;
+import com.bloxbean.rocks.types.common.KeyBuilder;
+import com.bloxbean.rocks.types.common.OrderedBytes;
+import com.bloxbean.rocks.types.common.Page;
+import com.bloxbean.rocks.types.common.ScoreCodec;
+import com.bloxbean.rocks.types.common.Tuple;
+import com.bloxbean.rocks.types.config.RocksDBConfig;
+import lombok.NonNull;
+import lombok.SneakyThrows;
+import org.rocksdb.ReadOptions;
+import org.rocksdb.RocksIterator;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Provides sorted set functionality on top of RocksDB. A sorted set is a set where each member is associated with a
+ * score of type S. It supports multiple sorted sets under the same name with different namespaces.
+ * <p>
+ * Scores are stored in the score index in the fixed width, order preserving form of the {@link ScoreCodec}, so score
+ * ranges are plain seeks over the index. In the member keys, scores are stored with the value serializer.
+ * {@link RocksMultiZSet} is the sorted set with long scores.
+ * <p>
+ * Zsets written by older versions store raw two's complement scores in the score index, which range queries can't
+ * read correctly. The score format is recorded in {@link ZSetMetadata}, and operations on a namespace in the old
+ * format fail with an IllegalStateException until it is migrated once with {@link #migrateMetadata(byte[])}.
+ * <p>
+ * Rank queries use a rank index of member counts per score bucket. The first 8 bytes of the encoded score are split
+ * into 8 bit digits like a radix tree. Level 1 counts members per 256 adjacent buckets of the score's first 8 bytes,
+ * level 2 per 256 level 1 buckets and so on up to level 7, plus the total count. The rank of a score is the sum of the
+ * counts of the preceding sibling buckets at each level plus the members in the score's level 1 bucket with a lower
+ * score, so it reads at most 255 counters per level instead of all members. Members with equal scores are ordered by
+ * the length of their serialized bytes first and then by the bytes, as the member is a length prefixed part of the
+ * score key.
+ * <p>
+ * The rank index doesn't go below the level 1 bucket, so within a bucket the score keys are read one by one. Members
+ * with equal scores, or {@link com.bloxbean.rocks.types.common.CompositeScore}s sharing the same primary score, fall
+ * into the same level 1 bucket, so rank / count / rangeByRank read up to all members tied with the score they look
+ * up. They are O(log n) for distinct scores and degrade to O(ties) for scores shared by many members, e.g. the
+ * initial score of a leaderboard.
+ * <p>
+ * The rank index is updated in the same WriteBatch as the members. The counters are absolute counts, computed from
+ * the stored counts under the namespace's rank lock when addBatch / removeBatch is called. The lock can't be held
+ * until the caller writes the WriteBatch, so a WriteBatch with updates of a namespace must be written before the next
+ * update of that namespace, direct or batched, is made. Otherwise the later counts overwrite the earlier ones. For
+ * the same reason a namespace should be updated by only one addBatch / removeBatch call per WriteBatch. Sorted sets
+ * written by older versions have no rank index. Call {@link #rebuildRankIndex(byte[])} once before using rank queries
+ * on them.
+ * <p>
+ * Lex queries use a lex index of the members. Member keys are ordered by the length of the serialized member, so the
+ * lex index stores each member once more, encoded with {@link OrderedBytes#encodeBytes(byte[])}. String members are
+ * ordered by their UTF-8 bytes and other members by their serialized bytes. Sorted sets written by older versions
+ * have no lex index. Call {@link #rebuildLexIndex(byte[])} once before using lex queries on them.
+ * <p>
+ * {@link #add(byte[], Object, Object)}, {@link #incrementBy(byte[], Object, Object)} and
+ * {@link #remove(byte[], Object)} are atomic within the JVM. They hold a striped lock of the member while reading the
+ * old score and a striped lock of the namespace while updating the rank counts and writing. The batch methods take
+ * the namespace lock while computing the rank counts, but can't hold the locks until the caller writes the
+ * WriteBatch, so they must not run concurrently with other updates of the same namespace. See the commit ordering
+ * above.
+ *
+ * @param <T> member type
+ * @param <S> score type
+ */
+public class RocksMultiSortedSet<T, S> extends BaseDataType<T> {
+    private static final byte[] MEMBERS_PART = KeyBuilder.strToBytes("members");
+    private static final byte[] SCORES_PART = KeyBuilder.strToBytes("scores");
+    private static final byte[] RANKS_PART = KeyBuilder.strToBytes("ranks");
+    private static final byte[] LEX_PART = KeyBuilder.strToBytes("lex");
+
+    //Rank index levels. Level n counts members per bucket of the score's top 64 - 8n bits
+    private static final int RANK_LEVELS = 7;
+    private static final int RANK_BUCKET_BITS = 8;
+    private static final byte TOTAL_COUNT_LEVEL = RANK_LEVELS + 1;
+
+    //Striped locks for read-modify-write of a member's score and of a namespace's rank counts. They are shared by all
+    //instances, so updates through different instances of the same zset in this JVM are serialized too
+    private static final int LOCK_STRIPES = 256;
+    private static final int SCAN_BATCH_SIZE = 1000;
+    private static final ReentrantLock[] MEMBER_LOCKS = createLocks();
+    private static final ReentrantLock[] RANK_LOCKS = createLocks();
+
+    protected final ScoreCodec<S> scoreCodec;
+
+    public RocksMultiSortedSet(@NonNull RocksDBConfig rocksDBConfig, String columnFamily,
+                               @NonNull String name, Class<T> memberType, @NonNull ScoreCodec<S> scoreCodec) {
+        super(rocksDBConfig, columnFamily, name, memberType);
+        this.scoreCodec = scoreCodec;
+    }
+
+    public RocksMultiSortedSet(@NonNull RocksDBConfig rocksDBConfig,
+                               @NonNull String name, Class<T> memberType, @NonNull ScoreCodec<S> scoreCodec) {
+        this(rocksDBConfig, null, name, memberType, scoreCodec);
+    }
+
+    /**
+     * Add a member or replace the score of an existing member. Like ZADD.
+     */
+    public void add(byte[] ns, T member, S score) {
+        var metadata = createMetadata(ns).orElseThrow();
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        byte[] memberBytes = valueSerializer.serialize(member);
+        var memberLock = getLock(MEMBER_LOCKS, keyPrefix, memberBytes);
+        memberLock.lock();
+        try (var writeBatch = new WriteBatch()) {
+            var update = new ZSetUpdate(keyPrefix);
+            update.add(writeBatch, memberBytes, score);
+            update.commit(writeBatch);
+        } finally {
+            memberLock.unlock();
+        }
+    }
+
+    /**
+     * Add delta to the score of a member and return the new score. A member which doesn't exist is added with
+     * delta as score. Like ZINCRBY.
+     *
+     * @throws UnsupportedOperationException if the score codec doesn't support addition
+     */
+    public S incrementBy(byte[] ns, T member, S delta) {
+        var metadata = createMetadata(ns).orElseThrow();
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.getVersion());
+        byte[] memberBytes = valueSerializer.serialize(member);
+        var memberLock = getLock(MEMBER_LOCKS, keyPrefix, memberBytes);
+        memberLock.lock();
+        try (var writeBatch = new WriteBatch()) {
+            var update = new ZSetUpdate(keyPrefix);
+            S score = update.getScore(memberBytes)
+                    .map(oldScore -> scoreCodec.add(oldScore, delta))
+                    .orElse(delta);
+            update.add(writeBatch, memberBytes, score);
+            update.commit(writeBatch);
+            return score;
+        } finally {
+            memberLock.unlock();
+        }
+    }
+
+    public void addBatch(byte[] ns, WriteBatch writeBatch, Tuple<T, S>... membersWithScores) {
+        var metadata = createMetadata(ns).orElseThrow();
+        var update = new ZSetUpdate(getKeyPrefix(ns, metadata.getVersion()));
+        List<byte[]> membersBytes = new ArrayList<>(membersWithScores.length);
+        for (var memberWithScore : membersWithScores) {
+            membersBytes.add(valueSerializer.serialize(memberWithScore._1));
+        }
+        update.prefetchScores(membersBytes);
+        for (int i = 0; i < membersWithScores.length; i++) {
+            update.add(writeBatch, membersBytes.get(i), membersWithScores[i]._2);
+        }
+        update.writeRankCounts(writeBatch);
+    }
+
+    public Optional<S> getScore(byte[] ns, T member) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return Optional.empty();
+
+        return getScore(getKeyPrefix(ns, metadata.get().getVersion()), valueSerializer.serialize(member));
+    }
+
+    private Optional<S> getScore(byte[] keyPrefix, byte[] memberBytes) {
+        byte[] val = get(getMemberSubKey(keyPrefix, memberBytes));
+        if (val == null)
+            return Optional.empty();
+        else
+            return Optional.of(deserializeScore(val));
+    }
+
+    /**
+     * Scores of multiple members with one metadata read and one multiGet. Like ZMSCORE.
+     *
+     * @return scores in the order of members. null for members which don't exist.
+     */
+    public List<S> multiGetScore(byte[] ns, List<T> members) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return new ArrayList<>(Collections.nCopies(members.size(), null));
+
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.get().getVersion());
+        var memberKeys = members.stream()
+                .map(member -> getMemberSubKey(keyPrefix, valueSerializer.serialize(member)))
+                .toList();
+
+        return getValues(memberKeys, scoreCodec.getScoreType());
+    }
+
+    /**
+     * Check multiple members with one metadata read and one multiGet. Like SMISMEMBER.
+     *
+     * @return true / false in the order of members
+     */
+    public List<Boolean> multiContains(byte[] ns, List<T> members) {
+        return multiGetScore(ns, members).stream()
+                .map(Objects::nonNull)
+                .toList();
+    }
+
+    @SneakyThrows
+    public boolean contains(byte[] ns, T member) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return false;
+
+        byte[] val = get(getMemberSubKey(getKeyPrefix(ns, metadata.get().getVersion()), valueSerializer.serialize(member)));
+        return val != null;
+    }
+
+    public void remove(byte[] ns, T member) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return;
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.get().getVersion());
+        byte[] memberBytes = valueSerializer.serialize(member);
+        var memberLock = getLock(MEMBER_LOCKS, keyPrefix, memberBytes);
+        memberLock.lock();
+        try (var writeBatch = new WriteBatch()) {
+            var update = new ZSetUpdate(keyPrefix);
+            update.remove(writeBatch, memberBytes);
+            update.commit(writeBatch);
+        } finally {
+            memberLock.unlock();
+        }
+    }
+
+    @SneakyThrows
+    public void removeBatch(byte[] ns, WriteBatch writeBatch, T... member) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return;
+        var update = new ZSetUpdate(getKeyPrefix(ns, metadata.get().getVersion()));
+        List<byte[]> membersBytes = new ArrayList<>(member.length);
+        for (var value : member)
+            membersBytes.add(valueSerializer.serialize(value));
+        update.prefetchScores(membersBytes);
+        for (byte[] memberBytes : membersBytes)
+            update.remove(writeBatch, memberBytes);
+        update.writeRankCounts(writeBatch);
+    }
+
+    /**
+     * Remove and return up to count members with the lowest scores, in ascending score order. Like ZPOPMIN.
+     * The members are removed in one WriteBatch.
+     */
+    public List<Tuple<T, S>> popMin(byte[] ns, int count) {
+        List<Tuple<T, S>> popped = new ArrayList<>();
+        removeByScoreOrder(ns, false, null, null, count, count, popped);
+        return popped;
+    }
+
+    /**
+     * Remove and return up to count members with the highest scores, in descending score order. Like ZPOPMAX.
+     * The members are removed in one WriteBatch.
+     */
+    public List<Tuple<T, S>> popMax(byte[] ns, int count) {
+        List<Tuple<T, S>> popped = new ArrayList<>();
+        removeByScoreOrder(ns, true, null, null, count, count, popped);
+        return popped;
+    }
+
+    /**
+     * Remove the members with the lowest scores until the sorted set has at most maxSize members
+     *
+     * @return no of removed members
+     */
+    public long trimToSize(byte[] ns, long maxSize) {
+        long excess = size(ns) - Math.max(maxSize, 0);
+        if (excess <= 0)
+            return 0;
+
+        return removeByScoreOrder(ns, false, null, null, excess, SCAN_BATCH_SIZE, null);
+    }
+
+    /**
+     * Remove all members with a score in [minScore, maxScore]. Like ZREMRANGEBYSCORE.
+     *
+     * @return no of removed members
+     */
+    public long trimByScore(byte[] ns, S minScore, S maxScore) {
+        return removeByScoreOrder(ns, false, minScore, scoreCodec.encode(maxScore), Long.MAX_VALUE, SCAN_BATCH_SIZE, null);
+    }
+
+    /**
+     * Remove up to limit members in score order with a single iterator pass over the score index. The score keys are
+     * removed in WriteBatches of up to batchSize members.
+     *
+     * @param reverse          remove from the highest score down
+     * @param startScore       first score or null to start at the lowest score. Only for forward order.
+     * @param encodedEndScore  last score (inclusive) or null for no bound
+     * @param removed          list for the removed members and scores, or null to skip deserializing them
+     * @return no of removed members
+     */
+    private long removeByScoreOrder(byte[] ns, boolean reverse, S startScore, byte[] encodedEndScore,
+                                    long limit, int batchSize, List<Tuple<T, S>> removed) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty() || limit <= 0)
+            return 0;
+
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.get().getVersion());
+        byte[] scoresPrefix = getScoresPrefix(keyPrefix);
+        long count = 0;
+        try (var readOptions = new ReadOptions().setTotalOrderSeek(true);
+             var iterator = iterator(readOptions)) {
+            if (reverse)
+                iterator.seekForPrev(KeyBuilder.merge(scoresPrefix, new byte[]{(byte) 0xFF}));
+            else
+                iterator.seek(startScore != null ? getScoreSubKey(keyPrefix, startScore) : scoresPrefix);
+
+            List<byte[]> scoreKeys = new ArrayList<>();
+            while (count < limit) {
+                scoreKeys.clear();
+                while (scoreKeys.size() < Math.min(batchSize, limit - count) && iterator.isValid()) {
+                    byte[] key = iterator.key();
+                    if (!KeyBuilder.hasPrefix(key, scoresPrefix))
+                        break;
+                    if (encodedEndScore != null) {
+                        int cmp = compareScore(key, scoresPrefix, encodedEndScore);
+                        if (reverse ? cmp < 0 : cmp > 0)
+                            break;
+                    }
+
+                    scoreKeys.add(key);
+                    if (reverse)
+                        iterator.prev();
+                    else
+                        iterator.next();
+                }
+
+                if (scoreKeys.isEmpty())
+                    break;
+                count += removeScoreKeys(keyPrefix, scoresPrefix, scoreKeys, removed);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Remove the members of score keys found by an iterator. The members are locked and their scores are read again,
+     * so members changed or removed after the iterator was created are skipped.
+     */
+    private long removeScoreKeys(byte[] keyPrefix, byte[] scoresPrefix, List<byte[]> scoreKeys, List<Tuple<T, S>> removed) {
+        int memberOffset = scoresPrefix.length + Integer.BYTES + scoreCodec.getWidth();
+        List<byte[]> membersBytes = new ArrayList<>(scoreKeys.size());
+        //lock the stripes in ascending order, so concurrent pops can't deadlock
+        Set<Integer> stripes = new TreeSet<>();
+        for (byte[] scoreKey : scoreKeys) {
+            byte[] memberBytes = KeyBuilder.getPartAt(scoreKey, memberOffset);
+            membersBytes.add(memberBytes);
+            stripes.add(getLockIndex(keyPrefix, memberBytes));
+        }
+
+        for (int stripe : stripes) {
+            MEMBER_LOCKS[stripe].lock();
+        }
+        try (var writeBatch = new WriteBatch()) {
+            var update = new ZSetUpdate(keyPrefix);
+            update.prefetchScores(membersBytes);
+            long count = 0;
+            for (int i = 0; i < scoreKeys.size(); i++) {
+                byte[] memberBytes = membersBytes.get(i);
+                var score = update.getScore(memberBytes);
+                if (score.isEmpty() || compareScore(scoreKeys.get(i), scoresPrefix, scoreCodec.encode(score.get())) != 0)
+                    continue;
+
+                update.remove(writeBatch, memberBytes);
+                if (removed != null)
+                    removed.add(new Tuple<>(valueSerializer.deserialize(memberBytes, valueType), score.get()));
+                count++;
+            }
+
+            if (count > 0)
+                update.commit(writeBatch);
+            return count;
+        } finally {
+            for (int stripe : stripes) {
+                MEMBER_LOCKS[stripe].unlock();
+            }
+        }
+    }
+
+    @SneakyThrows
+    public Set<T> members(byte[] ns) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return Collections.emptySet();
+
+        Set<T> members = new HashSet<>();
+        byte[] prefix = getMembersPrefix(getKeyPrefix(ns, metadata.get().getVersion()));
+        try (RocksIterator iterator = iterator()) {
+            for (iterator.seek(prefix); iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+                if (!KeyBuilder.hasPrefix(key, prefix)) {
+                    break; // Break if the key no longer starts with the prefix
+                }
+
+                T member = getMemberFromMemberCompositeSubKey(key, prefix);
+
+                members.add(member);
+            }
+        }
+        return members;
+    }
+
+    @SneakyThrows
+    public Set<Tuple<T, S>> membersWithScores(byte[] ns) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return Collections.emptySet();
+
+        Set<Tuple<T, S>> members = new HashSet<>();
+        byte[] prefix = getMembersPrefix(getKeyPrefix(ns, metadata.get().getVersion()));
+        try (RocksIterator iterator = iterator()) {
+            for (iterator.seek(prefix); iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+                if (!KeyBuilder.hasPrefix(key, prefix)) {
+                    break; // Break if the key no longer starts with the prefix
+                }
+
+                T member = getMemberFromMemberCompositeSubKey(key, prefix);
+                var score = deserializeScore(iterator.value());
+                members.add(new Tuple<>(member, score));
+            }
+        }
+        return members;
+    }
+
+    public List<Tuple<T, S>> membersInRange(byte[] ns, S beginningScore, S endScore) {
+        //Iterate over the range of scores
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return Collections.emptyList();
+        List<Tuple<T, S>> members = new ArrayList<>();
+
+        byte[] prefixWithoutScore = getScoresPrefix(getKeyPrefix(ns, metadata.get().getVersion()));
+        byte[] prefix = KeyBuilder.appendToKey(prefixWithoutScore, scoreCodec.encode(beginningScore));
+        byte[] encodedEndScore = scoreCodec.encode(endScore);
+
+        try (RocksIterator iterator = iterator()) {
+            for (iterator.seek(prefix); iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+                if (!KeyBuilder.hasPrefix(key, prefixWithoutScore)) {
+                    break; // Break if the key no longer starts with the prefix
+                }
+
+                if (compareScore(key, prefixWithoutScore, encodedEndScore) > 0)
+                    break;
+
+                members.add(getMemberAndScoreFromScoreCompositeSubKey(key, prefixWithoutScore));
+            }
+        }
+
+        return members;
+    }
+
+    /**
+     * Members with a score in [beginningScore, endScore], skipping the first offset members. Skipped members are only
+     * counted, not deserialized. For deep pages use {@link #membersInRangePage(byte[], Object, Object, String, int)}.
+     */
+    public List<Tuple<T, S>> membersInRange(byte[] ns, S beginningScore, S endScore, long offset, int limit) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return Collections.emptyList();
+
+        byte[] prefixWithoutScore = getScoresPrefix(getKeyPrefix(ns, metadata.get().getVersion()));
+        return scanRange(prefixWithoutScore, KeyBuilder.appendToKey(prefixWithoutScore, scoreCodec.encode(beginningScore)),
+                scoreCodec.encode(endScore), offset, limit, null);
+    }
+
+    /**
+     * One page of members with a score in [beginningScore, endScore].
+     *
+     * @param continuationToken token of the previous page or null for the first page
+     * @return members and the token of the next page. The token encodes the last returned score key, so the next page
+     * starts with a seek and not by skipping the previous pages.
+     */
+    public Page<Tuple<T, S>> membersInRangePage(byte[] ns, S beginningScore, S endScore, String continuationToken, int limit) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return new Page<>(Collections.emptyList(), null);
+
+        byte[] prefixWithoutScore = getScoresPrefix(getKeyPrefix(ns, metadata.get().getVersion()));
+        byte[] startKey = KeyBuilder.appendToKey(prefixWithoutScore, scoreCodec.encode(beginningScore));
+        if (continuationToken != null) {
+            //smallest key after the last returned key
+            byte[] afterLastKey = KeyBuilder.merge(prefixWithoutScore,
+                    Base64.getUrlDecoder().decode(continuationToken), new byte[]{0});
+            if (Arrays.compareUnsigned(afterLastKey, startKey) > 0)
+                startKey = afterLastKey;
+        }
+
+        byte[][] lastKey = new byte[1][];
+        var members = scanRange(prefixWithoutScore, startKey, scoreCodec.encode(endScore), 0, limit, lastKey);
+        String nextToken = members.size() == limit && lastKey[0] != null
+                ? Base64.getUrlEncoder().withoutPadding().encodeToString(
+                        Arrays.copyOfRange(lastKey[0], prefixWithoutScore.length, lastKey[0].length))
+                : null;
+        return new Page<>(members, nextToken);
+    }
+
+    /**
+     * Read up to limit members from startKey to encodedEndScore, after skipping offset score keys
+     *
+     * @param lastKey if not null, lastKey[0] is set to the last returned score key
+     */
+    private List<Tuple<T, S>> scanRange(byte[] prefixWithoutScore, byte[] startKey, byte[] encodedEndScore,
+                                        long offset, int limit, byte[][] lastKey) {
+        List<Tuple<T, S>> members = new ArrayList<>(Math.min(Math.max(limit, 0), 1024));
+        if (limit <= 0)
+            return members;
+
+        try (var readOptions = new ReadOptions().setTotalOrderSeek(true);
+             var iterator = iterator(readOptions)) {
+            long skipped = 0;
+            for (iterator.seek(startKey); iterator.isValid() && members.size() < limit; iterator.next()) {
+                byte[] key = iterator.key();
+                if (!KeyBuilder.hasPrefix(key, prefixWithoutScore) || compareScore(key, prefixWithoutScore, encodedEndScore) > 0)
+                    break;
+
+                if (skipped < offset) {
+                    skipped++;
+                    continue;
+                }
+
+                members.add(getMemberAndScoreFromScoreCompositeSubKey(key, prefixWithoutScore));
+                if (lastKey != null)
+                    lastKey[0] = key;
+            }
+        }
+        return members;
+    }
+
+    public ValueIterator<Tuple<T, S>> membersWithScoresIterator(byte[] ns) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty()) {
+            return new EmptyIterator<>();
+        }
+        byte[] prefix = getMembersPrefix(getKeyPrefix(ns, metadata.get().getVersion()));
+        return new ZSetMembersIterator<>(iterator(), prefix);
+    }
+
+    public ValueIterator<Tuple<T, S>> membersInRangeIterator(byte[] ns, S beginningScore, S endScore) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty()) {
+            return new EmptyIterator<>();
+        }
+        byte[] prefixWithoutScore = getScoresPrefix(getKeyPrefix(ns, metadata.get().getVersion()));
+        return new ZSetRangeIterator(iterator(), prefixWithoutScore, beginningScore, endScore
+        );
+    }
+
+    public ReverseValueIterator<Tuple<T, S>> membersInRangeReverseIterator(byte[] ns, S startScore, S endScore) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty()) {
+            return new EmptyIterator<>();
+        }
+        byte[] prefixWithoutScore = getScoresPrefix(getKeyPrefix(ns, metadata.get().getVersion()));
+        return new ZSetReverseRangeIterator(iterator(), prefixWithoutScore, startScore, endScore
+        );
+    }
+
+    /**
+     * Members in [from, to] in lex order, up to limit members. Like ZRANGEBYLEX.
+     *
+     * @param from first member (inclusive) or null to start at the first member
+     * @param to   last member (inclusive) or null for no bound
+     */
+    @SneakyThrows
+    public List<T> membersByLex(byte[] ns, T from, T to, int limit) {
+        List<T> members = new ArrayList<>();
+        try (var iterator = membersByLexIterator(ns, from, to)) {
+            while (members.size() < limit && iterator.hasNext()) {
+                members.add(iterator.next());
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Members starting with prefix in lex order, up to limit members. For String members, e.g. for autocomplete.
+     */
+    @SneakyThrows
+    public List<T> membersByLexPrefix(byte[] ns, T prefix, int limit) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return Collections.emptyList();
+
+        //escaped prefix without terminator is a prefix of the lex keys of all members starting with prefix
+        byte[] encodedPrefix = OrderedBytes.encodeBytes(getLexBytes(prefix));
+        byte[] lexPrefix = getLexPrefix(getKeyPrefix(ns, metadata.get().getVersion()));
+        byte[] lexKeyPrefix = KeyBuilder.merge(lexPrefix, Arrays.copyOf(encodedPrefix, encodedPrefix.length - 2));
+
+        List<T> members = new ArrayList<>();
+        try (var iterator = new LexRangeIterator(lexPrefix, lexKeyPrefix, lexKeyPrefix, null)) {
+            while (members.size() < limit && iterator.hasNext()) {
+                members.add(iterator.next());
+            }
+        }
+        return members;
+    }
+
+    public ValueIterator<T> membersByLexIterator(byte[] ns, T from, T to) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty()) {
+            return new EmptyIterator<>();
+        }
+        byte[] lexPrefix = getLexPrefix(getKeyPrefix(ns, metadata.get().getVersion()));
+        byte[] startKey = from != null ? KeyBuilder.merge(lexPrefix, OrderedBytes.encodeBytes(getLexBytes(from))) : lexPrefix;
+        return new LexRangeIterator(lexPrefix, lexPrefix, startKey, to != null ? getLexUpperBound(lexPrefix, to) : null);
+    }
+
+    /**
+     * Members in [end, start] in reverse lex order, starting at start. Like ZREVRANGEBYLEX.
+     *
+     * @param start first member (inclusive) or null to start at the last member
+     * @param end   last member (inclusive) or null for no bound
+     */
+    public ReverseValueIterator<T> membersByLexReverseIterator(byte[] ns, T start, T end) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty()) {
+            return new EmptyIterator<>();
+        }
+        byte[] lexPrefix = getLexPrefix(getKeyPrefix(ns, metadata.get().getVersion()));
+        byte[] startBound = start != null ? getLexUpperBound(lexPrefix, start) : KeyBuilder.merge(lexPrefix, new byte[]{(byte) 0xFF});
+        byte[] endKey = end != null ? KeyBuilder.merge(lexPrefix, OrderedBytes.encodeBytes(getLexBytes(end))) : null;
+        return new LexReverseRangeIterator(lexPrefix, startBound, endKey);
+    }
+
+    /**
+     * Rebuild the lex index of a namespace from the members, e.g. for sorted sets written by older versions without
+     * a lex index.
+     */
+    public void rebuildLexIndex(byte[] ns) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return;
+
+        rebuildLexIndex(getKeyPrefix(ns, metadata.get().getVersion()));
+    }
+
+    @SneakyThrows
+    private void rebuildLexIndex(byte[] keyPrefix) {
+        byte[] lexPrefix = getLexPrefix(keyPrefix);
+        byte[] membersPrefix = getMembersPrefix(keyPrefix);
+        //adds commit under the rank lock, so no member is added between the range delete and the scan
+        var rankLock = getLock(RANK_LOCKS, keyPrefix);
+        rankLock.lock();
+        try (var readOptions = new ReadOptions().setTotalOrderSeek(true);
+             var iterator = iterator(readOptions);
+             var writeOption = new WriteOptions()) {
+            var writeBatch = new WriteBatch();
+            try {
+                deleteRangeBatch(writeBatch, lexPrefix, KeyBuilder.merge(lexPrefix, new byte[]{(byte) 0xFF}));
+                int batchSize = 0;
+                for (iterator.seek(membersPrefix); iterator.isValid(); iterator.next()) {
+                    byte[] key = iterator.key();
+                    if (!KeyBuilder.hasPrefix(key, membersPrefix))
+                        break;
+
+                    writeBatch(writeBatch, getLexKey(keyPrefix, KeyBuilder.getPartAfterPrefix(key, membersPrefix)), new byte[0]);
+                    if (++batchSize == SCAN_BATCH_SIZE) {
+                        db.write(writeOption, writeBatch);
+                        writeBatch.close();
+                        writeBatch = new WriteBatch();
+                        batchSize = 0;
+                    }
+                }
+                db.write(writeOption, writeBatch);
+            } finally {
+                writeBatch.close();
+            }
+        } finally {
+            rankLock.unlock();
+        }
+    }
+
+    /**
+     * No of members, read from the rank index
+     */
+    public long size(byte[] ns) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return 0;
+
+        return getRankCount(getTotalCountKey(getKeyPrefix(ns, metadata.get().getVersion())));
+    }
+
+    /**
+     * Rank of a member in ascending score order, starting at 0. Like ZRANK.
+     *
+     * @return rank or empty if the member doesn't exist
+     */
+    public Optional<Long> rank(byte[] ns, T member) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return Optional.empty();
+
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.get().getVersion());
+        byte[] memberBytes = valueSerializer.serialize(member);
+        var score = getScore(keyPrefix, memberBytes);
+        if (score.isEmpty())
+            return Optional.empty();
+
+        try (var readOptions = new ReadOptions().setTotalOrderSeek(true);
+             var iterator = iterator(readOptions)) {
+            return Optional.of(countBefore(iterator, keyPrefix, sortableScore(score.get()),
+                    getScoreSubKey(keyPrefix, memberBytes, score.get())));
+        }
+    }
+
+    /**
+     * Rank of a member in descending score order, starting at 0. Like ZREVRANK.
+     */
+    public Optional<Long> revRank(byte[] ns, T member) {
+        return rank(ns, member).map(rank -> size(ns) - 1 - rank);
+    }
+
+    /**
+     * No of members with a score in [minScore, maxScore]. Like ZCOUNT.
+     */
+    public long count(byte[] ns, S minScore, S maxScore) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty() || OrderedBytes.compare(scoreCodec.encode(minScore), scoreCodec.encode(maxScore)) > 0)
+            return 0;
+
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.get().getVersion());
+        try (var readOptions = new ReadOptions().setTotalOrderSeek(true);
+             var iterator = iterator(readOptions)) {
+            //0xFF sorts after the member length prefix of any key with max score
+            byte[] maxScoreBound = KeyBuilder.merge(getScoreSubKey(keyPrefix, maxScore), new byte[]{(byte) 0xFF});
+            return countBefore(iterator, keyPrefix, sortableScore(maxScore), maxScoreBound)
+                    - countBefore(iterator, keyPrefix, sortableScore(minScore), getScoreSubKey(keyPrefix, minScore));
+        }
+    }
+
+    /**
+     * Members with rank in [start, stop] in ascending score order. Negative ranks count from the highest score,
+     * -1 is the last member. Like ZRANGE.
+     */
+    public List<Tuple<T, S>> rangeByRank(byte[] ns, long start, long stop) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return Collections.emptyList();
+
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.get().getVersion());
+        long size = getRankCount(getTotalCountKey(keyPrefix));
+        if (start < 0)
+            start = Math.max(size + start, 0);
+        if (stop < 0)
+            stop = size + stop;
+        stop = Math.min(stop, size - 1);
+        if (start > stop)
+            return Collections.emptyList();
+
+        byte[] scoresPrefix = getScoresPrefix(keyPrefix);
+        List<Tuple<T, S>> members = new ArrayList<>((int) Math.min(stop - start + 1, 1024));
+        try (var readOptions = new ReadOptions().setTotalOrderSeek(true);
+             var iterator = iterator(readOptions)) {
+            seekToRank(iterator, keyPrefix, start);
+            for (long rank = start; rank <= stop && iterator.isValid(); rank++, iterator.next()) {
+                byte[] key = iterator.key();
+                if (!KeyBuilder.hasPrefix(key, scoresPrefix))
+                    break;
+
+                members.add(getMemberAndScoreFromScoreCompositeSubKey(key, scoresPrefix));
+            }
+        }
+        return members;
+    }
+
+    /**
+     * Members with rank in [start, stop] in descending score order. Like ZREVRANGE.
+     */
+    public List<Tuple<T, S>> revRangeByRank(byte[] ns, long start, long stop) {
+        long size = size(ns);
+        if (start < 0)
+            start = Math.max(size + start, 0);
+        if (stop < 0)
+            stop = size + stop;
+        stop = Math.min(stop, size - 1);
+        if (start > stop)
+            return Collections.emptyList();
+
+        var members = new ArrayList<>(rangeByRank(ns, size - 1 - stop, size - 1 - start));
+        Collections.reverse(members);
+        return members;
+    }
+
+    /**
+     * Rebuild the rank index of a namespace from the score index, e.g. for zsets written by older versions without
+     * a rank index. Holds the rank lock of the namespace from the scan until the new counts are written, so direct
+     * updates can't change the counts in between.
+     */
+    public void rebuildRankIndex(byte[] ns) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return;
+
+        rebuildRankIndex(getKeyPrefix(ns, metadata.get().getVersion()));
+    }
+
+    @SneakyThrows
+    private void rebuildRankIndex(byte[] keyPrefix) {
+        byte[] ranksPrefix = KeyBuilder.appendToKey(keyPrefix, RANKS_PART);
+        byte[] scoresPrefix = getScoresPrefix(keyPrefix);
+
+        var rankLock = getLock(RANK_LOCKS, keyPrefix);
+        rankLock.lock();
+        try {
+            //counts of all levels. Level n has at most 1/256^(n-1) of the buckets of level 1
+            Map<ByteBuffer, Long> counts = new HashMap<>();
+            try (var readOptions = new ReadOptions().setTotalOrderSeek(true);
+                 var iterator = iterator(readOptions)) {
+                for (iterator.seek(scoresPrefix); iterator.isValid(); iterator.next()) {
+                    byte[] key = iterator.key();
+                    if (!KeyBuilder.hasPrefix(key, scoresPrefix))
+                        break;
+
+                    addToRankCounts(counts, keyPrefix, getSortableScore(key, scoresPrefix), 1);
+                    counts.merge(ByteBuffer.wrap(getTotalCountKey(keyPrefix)), 1L, Long::sum);
+                }
+            }
+
+            try (var writeBatch = new WriteBatch();
+                 var writeOption = new WriteOptions()) {
+                deleteRangeBatch(writeBatch, ranksPrefix, KeyBuilder.merge(ranksPrefix, new byte[]{(byte) 0xFF}));
+                for (var count : counts.entrySet()) {
+                    writeBatch(writeBatch, count.getKey().array(), KeyBuilder.longToBytes(count.getValue()));
+                }
+                db.write(writeOption, writeBatch);
+            }
+        } finally {
+            rankLock.unlock();
+        }
+    }
+
+    /**
+     * Make the score index and the rank index of a namespace consistent with the members. Score keys which don't match
+     * the current score of their member, e.g. stale keys left by older versions when a member was re-added with a
+     * new score, are deleted. Members without a score key get one. The rank index and the lex index are rebuilt
+     * afterwards.
+     * <p>
+     * This is a full scan of the namespace. The rank lock of the namespace is held until the indexes are rebuilt, so
+     * direct updates wait for the repair, but batch updates of the namespace should not run at the same time.
+     *
+     * @return no of score keys deleted or added
+     */
+    @SneakyThrows
+    public long repair(byte[] ns) {
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty())
+            return 0;
+
+        byte[] keyPrefix = getKeyPrefix(ns, metadata.get().getVersion());
+        long repaired;
+        var rankLock = getLock(RANK_LOCKS, keyPrefix);
+        rankLock.lock();
+        try {
+            repaired = repairScoreKeys(keyPrefix) + repairMemberKeys(keyPrefix);
+            rebuildRankIndex(keyPrefix);
+            rebuildLexIndex(keyPrefix);
+        } finally {
+            rankLock.unlock();
+        }
+        return repaired;
+    }
+
+    /**
+     * Migrate a namespace written by older versions. The score index with raw two's complement scores is dropped
+     * and rewritten from the members in the current format, the rank index and the lex index are rebuilt, and the
+     * metadata is rewritten as {@link ZSetMetadata} in the binary format. The metadata is written last, so a
+     * migration which didn't complete is simply run again.
+     * <p>
+     * This is a full scan of the namespace and must not run concurrently with other updates of the namespace.
+     *
+     * @return true if the namespace was migrated, false if there is no namespace or it's already migrated
+     * @throws IllegalStateException if the scores are not longs. Older versions only wrote long scores
+     */
+    @Override
+    @SneakyThrows
+    public boolean migrateMetadata(byte[] ns) {
+        byte[] metadataKey = getMetadataKey(ns);
+        var metadata = readMetadata(metadataKey, TypeMetadata.class);
+        if (metadata.isEmpty() || isOrderedScoreFormat(metadata.get()))
+            return false;
+        if (scoreCodec.getScoreType() != Long.class)
+            throw new IllegalStateException("Only sorted sets with long scores can be migrated");
+
+        long version = metadata.get().getVersion();
+        byte[] keyPrefix = getKeyPrefix(ns, version);
+        byte[] scoresPrefix = getScoresPrefix(keyPrefix);
+        byte[] membersPrefix = getMembersPrefix(keyPrefix);
+        var rankLock = getLock(RANK_LOCKS, keyPrefix);
+        rankLock.lock();
+        try (var readOptions = new ReadOptions().setTotalOrderSeek(true);
+             var iterator = iterator(readOptions);
+             var writeOption = new WriteOptions()) {
+            var writeBatch = new WriteBatch();
+            try {
+                deleteRangeBatch(writeBatch, scoresPrefix, KeyBuilder.merge(scoresPrefix, new byte[]{(byte) 0xFF}));
+                int batchSize = 0;
+                for (iterator.seek(membersPrefix); iterator.isValid(); iterator.next()) {
+                    byte[] key = iterator.key();
+                    if (!KeyBuilder.hasPrefix(key, membersPrefix))
+                        break;
+
+                    byte[] memberBytes = KeyBuilder.getPartAfterPrefix(key, membersPrefix);
+                    writeBatch(writeBatch, getScoreSubKey(keyPrefix, memberBytes, deserializeScore(iterator.value())),
+                            new byte[0]);
+                    if (++batchSize == SCAN_BATCH_SIZE) {
+                        db.write(writeOption, writeBatch);
+                        writeBatch.close();
+                        writeBatch = new WriteBatch();
+                        batchSize = 0;
+                    }
+                }
+                db.write(writeOption, writeBatch);
+            } finally {
+                writeBatch.close();
+            }
+
+            //the metadata in the older format can't be read by getMetadata, so the indexes are rebuilt by key prefix
+            rebuildRankIndex(keyPrefix);
+            rebuildLexIndex(keyPrefix);
+
+            var newMetadata = new ZSetMetadata();
+            newMetadata.setVersion(version);
+            newMetadata.setScoreFormat(ZSetMetadata.SCORE_FORMAT_ORDERED);
+            writeMetadata(null, metadataKey, newMetadata);
+        } finally {
+            rankLock.unlock();
+        }
+        return true;
+    }
+
+    //Delete score keys whose member doesn't exist or has a different score
+    private long repairScoreKeys(byte[] keyPrefix) {
+        byte[] scoresPrefix = getScoresPrefix(keyPrefix);
+        long deleted = 0;
+        List<byte[]> scoreKeys = new ArrayList<>(SCAN_BATCH_SIZE);
+        try (var readOptions = new ReadOptions().setTotalOrderSeek(true);
+             var iterator = iterator(readOptions)) {
+            for (iterator.seek(scoresPrefix); iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+                if (!KeyBuilder.hasPrefix(key, scoresPrefix))
+                    break;
+
+                scoreKeys.add(key);
+                if (scoreKeys.size() == SCAN_BATCH_SIZE) {
+                    deleted += deleteOrphanScoreKeys(keyPrefix, scoresPrefix, scoreKeys);
+                    scoreKeys.clear();
+                }
+            }
+        }
+        return deleted + deleteOrphanScoreKeys(keyPrefix, scoresPrefix, scoreKeys);
+    }
+
+    @SneakyThrows
+    private long deleteOrphanScoreKeys(byte[] keyPrefix, byte[] scoresPrefix, List<byte[]> scoreKeys) {
+        if (scoreKeys.isEmpty())
+            return 0;
+
+        List<byte[]> memberKeys = new ArrayList<>(scoreKeys.size());
+        for (byte[] scoreKey : scoreKeys) {
+            byte[] memberBytes = KeyBuilder.getPartAt(scoreKey, scoresPrefix.length + Integer.BYTES + scoreCodec.getWidth());
+            memberKeys.add(getMemberSubKey(keyPrefix, memberBytes));
+        }
+
+        List<byte[]> scores = get(memberKeys);
+        long deleted = 0;
+        try (var writeBatch = new WriteBatch();
+             var writeOption = new WriteOptions()) {
+            for (int i = 0; i < scoreKeys.size(); i++) {
+                byte[] score = scores.get(i);
+                if (score == null || compareScore(scoreKeys.get(i), scoresPrefix, scoreCodec.encode(deserializeScore(score))) != 0) {
+                    deleteBatch(writeBatch, scoreKeys.get(i));
+                    deleted++;
+                }
+            }
+            if (deleted > 0)
+                db.write(writeOption, writeBatch);
+        }
+        return deleted;
+    }
+
+    //Add missing score keys of members
+    private long repairMemberKeys(byte[] keyPrefix) {
+        byte[] membersPrefix = getMembersPrefix(keyPrefix);
+        long added = 0;
+        List<Tuple<byte[], S>> members = new ArrayList<>(SCAN_BATCH_SIZE);
+        try (var readOptions = new ReadOptions().setTotalOrderSeek(true);
+             var iterator = iterator(readOptions)) {
+            for (iterator.seek(membersPrefix); iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+                if (!KeyBuilder.hasPrefix(key, membersPrefix))
+                    break;
+
+                members.add(new Tuple<>(KeyBuilder.getPartAfterPrefix(key, membersPrefix),
+                        deserializeScore(iterator.value())));
+                if (members.size() == SCAN_BATCH_SIZE) {
+                    added += addMissingScoreKeys(keyPrefix, members);
+                    members.clear();
+                }
+            }
+        }
+        return added + addMissingScoreKeys(keyPrefix, members);
+    }
+
+    @SneakyThrows
+    private long addMissingScoreKeys(byte[] keyPrefix, List<Tuple<byte[], S>> members) {
+        if (members.isEmpty())
+            return 0;
+
+        List<byte[]> scoreKeys = new ArrayList<>(members.size());
+        for (var member : members) {
+            scoreKeys.add(getScoreSubKey(keyPrefix, member._1, member._2));
+        }
+
+        //score keys have empty values, so check for null and not for empty values
+        List<byte[]> values = get(scoreKeys);
+        long added = 0;
+        try (var writeBatch = new WriteBatch();
+             var writeOption = new WriteOptions()) {
+            for (int i = 0; i < scoreKeys.size(); i++) {
+                if (values.get(i) == null) {
+                    writeBatch(writeBatch, scoreKeys.get(i), new byte[0]);
+                    added++;
+                }
+            }
+            if (added > 0)
+                db.write(writeOption, writeBatch);
+        }
+        return added;
+    }
+
+    /**
+     * No of score keys which sort before scoreKeyBound. The score keys are counted from the rank index down to the
+     * level 1 bucket of the score, and then by iterating over the score keys in that bucket, which is linear in the
+     * number of members with scores in that bucket.
+     */
+    private long countBefore(RocksIterator iterator, byte[] keyPrefix, long sortableScore, byte[] scoreKeyBound) {
+        long count = 0;
+        for (int level = RANK_LEVELS; level >= 1; level--) {
+            long bucket = getBucket(sortableScore, level);
+            long firstSibling = bucket & ~((1L << RANK_BUCKET_BITS) - 1);
+            byte[] levelPrefix = getRankLevelPrefix(keyPrefix, level);
+            for (iterator.seek(getRankCountKey(keyPrefix, level, firstSibling)); iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+                if (!KeyBuilder.hasPrefix(key, levelPrefix) || getBucketFromRankCountKey(key, levelPrefix) >= bucket)
+                    break;
+
+                count += KeyBuilder.bytesToLong(iterator.value());
+            }
+        }
+
+        //scores in the same level 1 bucket
+        byte[] scoresPrefix = getScoresPrefix(keyPrefix);
+        long bucketStart = getBucket(sortableScore, 1) << RANK_BUCKET_BITS;
+        for (iterator.seek(getScoreBucketKey(scoresPrefix, bucketStart)); iterator.isValid(); iterator.next()) {
+            byte[] key = iterator.key();
+            if (!KeyBuilder.hasPrefix(key, scoresPrefix) || Arrays.compareUnsigned(key, scoreKeyBound) >= 0)
+                break;
+
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Position the iterator at the score key with the given rank, descending the rank index from the top level.
+     * Within the level 1 bucket the iterator steps over the score keys one by one.
+     */
+    private void seekToRank(RocksIterator iterator, byte[] keyPrefix, long rank) {
+        long remaining = rank;
+        long bucket = 0;
+        for (int level = RANK_LEVELS; level >= 1; level--) {
+            long firstChild = bucket << RANK_BUCKET_BITS;
+            byte[] levelPrefix = getRankLevelPrefix(keyPrefix, level);
+            for (iterator.seek(getRankCountKey(keyPrefix, level, firstChild)); iterator.isValid(); iterator.next()) {
+                byte[] key = iterator.key();
+                if (!KeyBuilder.hasPrefix(key, levelPrefix))
+                    break;
+
+                bucket = getBucketFromRankCountKey(key, levelPrefix);
+                long count = KeyBuilder.bytesToLong(iterator.value());
+                if (remaining < count)
+                    break;
+                remaining -= count;
+            }
+        }
+
+        byte[] scoresPrefix = getScoresPrefix(keyPrefix);
+        iterator.seek(getScoreBucketKey(scoresPrefix, bucket << RANK_BUCKET_BITS));
+        for (long i = 0; i < remaining && iterator.isValid(); i++) {
+            iterator.next();
+        }
+    }
+
+    private static ReentrantLock[] createLocks() {
+        var locks = new ReentrantLock[LOCK_STRIPES];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        return locks;
+    }
+
+    private static ReentrantLock getLock(ReentrantLock[] locks, byte[]... keyParts) {
+        return locks[getLockIndex(keyParts)];
+    }
+
+    private static int getLockIndex(byte[]... keyParts) {
+        int hash = 1;
+        for (byte[] keyPart : keyParts) {
+            hash = 31 * hash + Arrays.hashCode(keyPart);
+        }
+        return Math.floorMod(hash, LOCK_STRIPES);
+    }
+
+    private long getRankCount(byte[] countKey) {
+        byte[] value = get(countKey);
+        return value != null ? KeyBuilder.bytesToLong(value) : 0;
+    }
+
+    private void addToRankCounts(Map<ByteBuffer, Long> counts, byte[] keyPrefix, long sortableScore, long delta) {
+        for (int level = 1; level <= RANK_LEVELS; level++) {
+            counts.merge(ByteBuffer.wrap(getRankCountKey(keyPrefix, level, getBucket(sortableScore, level))), delta, Long::sum);
+        }
+    }
+
+    //First 8 bytes of the encoded score as unsigned long
+    private long sortableScore(S score) {
+        return KeyBuilder.readLong(scoreCodec.encode(score), 0);
+    }
+
+    private static long getSortableScore(byte[] scoreKey, byte[] scoresPrefix) {
+        return KeyBuilder.readLong(scoreKey, scoresPrefix.length + Integer.BYTES);
+    }
+
+    //Smallest possible score key whose first 8 score bytes are sortableScore
+    private byte[] getScoreBucketKey(byte[] scoresPrefix, long sortableScore) {
+        return KeyBuilder.merge(scoresPrefix, KeyBuilder.intToBytes(scoreCodec.getWidth()), KeyBuilder.longToBytes(sortableScore));
+    }
+
+    private static long getBucket(long sortableScore, int level) {
+        return sortableScore >>> (level * RANK_BUCKET_BITS);
+    }
+
+    private byte[] getRankLevelPrefix(byte[] keyPrefix, int level) {
+        return KeyBuilder.appendToKey(keyPrefix, RANKS_PART, new byte[]{(byte) level});
+    }
+
+    private byte[] getRankCountKey(byte[] keyPrefix, int level, long bucket) {
+        return KeyBuilder.appendToKey(keyPrefix, RANKS_PART, new byte[]{(byte) level}, KeyBuilder.longToBytes(bucket));
+    }
+
+    private byte[] getTotalCountKey(byte[] keyPrefix) {
+        return getRankCountKey(keyPrefix, TOTAL_COUNT_LEVEL, 0);
+    }
+
+    private static long getBucketFromRankCountKey(byte[] key, byte[] levelPrefix) {
+        return KeyBuilder.readLong(key, levelPrefix.length + Integer.BYTES);
+    }
+
+    /**
+     * @throws IllegalStateException if the namespace was written by an older version and is not migrated yet
+     */
+    @SneakyThrows
+    protected Optional<ZSetMetadata> getMetadata(byte[] ns) {
+        //older versions wrote SetMetadata, read any type to tell them apart
+        var metadata = readMetadata(getMetadataKey(ns), TypeMetadata.class);
+        if (metadata.isEmpty())
+            return Optional.empty();
+
+        if (!isOrderedScoreFormat(metadata.get()))
+            throw new IllegalStateException("Score index of " + name + " was written by an older version. "
+                    + "Call migrateMetadata(ns) once to migrate it");
+        return Optional.of((ZSetMetadata) metadata.get());
+    }
+
+    private static boolean isOrderedScoreFormat(TypeMetadata metadata) {
+        return metadata instanceof ZSetMetadata zsetMetadata
+                && zsetMetadata.getScoreFormat() == ZSetMetadata.SCORE_FORMAT_ORDERED;
+    }
+
+    @Override
+    protected Optional<ZSetMetadata> createMetadata(byte[] ns) {
+        byte[] metadataKeyName = getMetadataKey(ns);
+        var metadata = getMetadata(ns);
+        if (metadata.isEmpty()) {
+            var newMetadata = new ZSetMetadata();
+            newMetadata.setVersion(System.currentTimeMillis());
+            newMetadata.setScoreFormat(ZSetMetadata.SCORE_FORMAT_ORDERED);
+            writeMetadata(null, metadataKeyName, newMetadata);
+            return Optional.of(newMetadata);
+        } else {
+            return metadata;
+        }
+    }
+
+    private byte[] getMemberSubKey(byte[] keyPrefix, byte[] memberBytes) {
+        return KeyBuilder.appendToKey(keyPrefix, MEMBERS_PART, memberBytes);
+    }
+
+    public byte[] getScoreSubKey(TypeMetadata metadata, byte[] ns, T member, S score) {
+        return getScoreSubKey(getKeyPrefix(ns, metadata.getVersion()), valueSerializer.serialize(member), score);
+    }
+
+    private byte[] getScoreSubKey(byte[] keyPrefix, byte[] memberBytes, S score) {
+        return KeyBuilder.appendToKey(keyPrefix, SCORES_PART, scoreCodec.encode(score), memberBytes);
+    }
+
+    //Smallest possible score key with the given score
+    private byte[] getScoreSubKey(byte[] keyPrefix, S score) {
+        return KeyBuilder.appendToKey(getScoresPrefix(keyPrefix), scoreCodec.encode(score));
+    }
+
+    private byte[] getLexPrefix(byte[] keyPrefix) {
+        return KeyBuilder.appendToKey(keyPrefix, LEX_PART);
+    }
+
+    //Lex key is the lex prefix, the escaped lex bytes and the serialized member, without length prefixes
+    private byte[] getLexKey(byte[] keyPrefix, byte[] memberBytes) {
+        return KeyBuilder.merge(getLexPrefix(keyPrefix), OrderedBytes.encodeBytes(getLexBytesOfSerialized(memberBytes)), memberBytes);
+    }
+
+    //Sorts after the lex keys of member and before the lex keys of all greater members. Replaces the terminator 0x00 0x01
+    private byte[] getLexUpperBound(byte[] lexPrefix, T member) {
+        byte[] bound = KeyBuilder.merge(lexPrefix, OrderedBytes.encodeBytes(getLexBytes(member)));
+        bound[bound.length - 1] = 0x02;
+        return bound;
+    }
+
+    private byte[] getLexBytes(T member) {
+        if (member instanceof String str)
+            return str.getBytes(StandardCharsets.UTF_8);
+        return valueSerializer.serialize(member);
+    }
+
+    private byte[] getLexBytesOfSerialized(byte[] memberBytes) {
+        if (valueType == String.class)
+            return valueSerializer.deserialize(memberBytes, String.class).getBytes(StandardCharsets.UTF_8);
+        return memberBytes;
+    }
+
+    private T getMemberFromLexKey(byte[] key, byte[] lexPrefix) {
+        int offset = lexPrefix.length + OrderedBytes.encodedBytesLength(key, lexPrefix.length);
+        return valueSerializer.deserialize(Arrays.copyOfRange(key, offset, key.length), valueType);
+    }
+
+    //Prefix of all member keys
+    private byte[] getMembersPrefix(byte[] keyPrefix) {
+        return KeyBuilder.appendToKey(keyPrefix, MEMBERS_PART);
+    }
+
+    //Prefix of all score keys. This is without score
+    private byte[] getScoresPrefix(byte[] keyPrefix) {
+        return KeyBuilder.appendToKey(keyPrefix, SCORES_PART);
+    }
+
+    private <T> T getMemberFromMemberCompositeSubKey(byte[] key, byte[] membersPrefix) {
+        return (T) valueSerializer.deserialize(KeyBuilder.getPartAfterPrefix(key, membersPrefix), valueType);
+    }
+
+    private Tuple<T, S> getMemberAndScoreFromScoreCompositeSubKey(byte[] key, byte[] prefixWithoutScore) {
+        S score = getScoreFromScoreSubKey(key, prefixWithoutScore);
+        byte[] memberBytes = KeyBuilder.getPartAt(key, prefixWithoutScore.length + Integer.BYTES + scoreCodec.getWidth());
+        T member = valueSerializer.deserialize(memberBytes, valueType);
+        return new Tuple<>(member, score);
+    }
+
+    //Read only the score from a score sub key. Score is the fixed width part right after the prefix
+    private S getScoreFromScoreSubKey(byte[] key, byte[] prefixWithoutScore) {
+        return scoreCodec.read(key, prefixWithoutScore.length + Integer.BYTES);
+    }
+
+    //Compare the encoded score of a score sub key with an encoded score, without decoding it
+    private int compareScore(byte[] key, byte[] prefixWithoutScore, byte[] encodedScore) {
+        int offset = prefixWithoutScore.length + Integer.BYTES;
+        return Arrays.compareUnsigned(key, offset, offset + encodedScore.length, encodedScore, 0, encodedScore.length);
+    }
+
+    private S deserializeScore(byte[] value) {
+        return valueSerializer.deserialize(value, scoreCodec.getScoreType());
+    }
+
+    /**
+     * Changes of one add / remove call. Scores read or written by the call are tracked, so a member changed twice in
+     * the same call sees its own change. Rank count deltas are summed up and written once by writeRankCounts.
+     */
+    private class ZSetUpdate {
+        private final byte[] keyPrefix;
+        private final Map<ByteBuffer, Optional<S>> scores = new HashMap<>();
+        private final Map<ByteBuffer, Long> rankCountDeltas = new HashMap<>();
+
+        ZSetUpdate(byte[] keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        /**
+         * Read the current scores of the members with one multiGet, so add / remove don't read them one by one
+         */
+        void prefetchScores(List<byte[]> membersBytes) {
+            List<byte[]> memberKeys = new ArrayList<>(membersBytes.size());
+            for (byte[] memberBytes : membersBytes) {
+                memberKeys.add(getMemberSubKey(keyPrefix, memberBytes));
+            }
+
+            List<byte[]> values = get(memberKeys);
+            for (int i = 0; i < membersBytes.size(); i++) {
+                byte[] value = values.get(i);
+                scores.putIfAbsent(ByteBuffer.wrap(membersBytes.get(i)),
+                        value != null ? Optional.of(deserializeScore(value)) : Optional.empty());
+            }
+        }
+
+        private Optional<S> getScore(byte[] memberBytes) {
+            var score = scores.get(ByteBuffer.wrap(memberBytes));
+            return score != null ? score : RocksMultiSortedSet.this.getScore(keyPrefix, memberBytes);
+        }
+
+        void add(WriteBatch writeBatch, byte[] memberBytes, S score) {
+            var oldScore = getScore(memberBytes);
+            if (oldScore.isPresent() && oldScore.get().equals(score))
+                return;
+
+            if (oldScore.isPresent()) {
+                //replace the old score key, so the member is found only under its current score
+                deleteBatch(writeBatch, getScoreSubKey(keyPrefix, memberBytes, oldScore.get()));
+                addToRankCounts(rankCountDeltas, keyPrefix, sortableScore(oldScore.get()), -1);
+            } else {
+                rankCountDeltas.merge(ByteBuffer.wrap(getTotalCountKey(keyPrefix)), 1L, Long::sum);
+                writeBatch(writeBatch, getLexKey(keyPrefix, memberBytes), new byte[0]);
+            }
+
+            writeBatch(writeBatch, getMemberSubKey(keyPrefix, memberBytes), valueSerializer.serialize(score));
+            writeBatch(writeBatch, getScoreSubKey(keyPrefix, memberBytes, score), new byte[0]);
+            addToRankCounts(rankCountDeltas, keyPrefix, sortableScore(score), 1);
+            scores.put(ByteBuffer.wrap(memberBytes), Optional.of(score));
+        }
+
+        void remove(WriteBatch writeBatch, byte[] memberBytes) {
+            var oldScore = getScore(memberBytes);
+            if (oldScore.isEmpty())
+                return;
+
+            deleteBatch(writeBatch, getMemberSubKey(keyPrefix, memberBytes));
+            deleteBatch(writeBatch, getScoreSubKey(keyPrefix, memberBytes, oldScore.get()));
+            deleteBatch(writeBatch, getLexKey(keyPrefix, memberBytes));
+            addToRankCounts(rankCountDeltas, keyPrefix, sortableScore(oldScore.get()), -1);
+            rankCountDeltas.merge(ByteBuffer.wrap(getTotalCountKey(keyPrefix)), -1L, Long::sum);
+            scores.put(ByteBuffer.wrap(memberBytes), Optional.empty());
+        }
+
+        /**
+         * Write the rank counts and the WriteBatch. The counts are shared by all members of the namespace, so they
+         * are read and written under the namespace's rank lock.
+         */
+        @SneakyThrows
+        void commit(WriteBatch writeBatch) {
+            var rankLock = getLock(RANK_LOCKS, keyPrefix);
+            rankLock.lock();
+            try (var writeOption = new WriteOptions()) {
+                writeRankCounts(writeBatch);
+                db.write(writeOption, writeBatch);
+            } finally {
+                rankLock.unlock();
+            }
+        }
+
+        /**
+         * Add the rank count deltas to the stored counts and write the new counts to the WriteBatch. The stored counts
+         * are read under the rank lock, so they include all committed direct updates. For a caller's WriteBatch, the
+         * counts are only correct if no other update of the namespace is written before the batch.
+         */
+        void writeRankCounts(WriteBatch writeBatch) {
+            rankCountDeltas.values().removeIf(delta -> delta == 0);
+            if (rankCountDeltas.isEmpty())
+                return;
+
+            List<byte[]> countKeys = new ArrayList<>(rankCountDeltas.size());
+            for (var countKey : rankCountDeltas.keySet()) {
+                countKeys.add(countKey.array());
+            }
+
+            var rankLock = getLock(RANK_LOCKS, keyPrefix);
+            rankLock.lock();
+            try {
+                List<byte[]> values = get(countKeys);
+                int i = 0;
+                for (long delta : rankCountDeltas.values()) {
+                    byte[] value = values.get(i);
+                    long count = (value != null ? KeyBuilder.bytesToLong(value) : 0) + delta;
+                    if (count <= 0)
+                        deleteBatch(writeBatch, countKeys.get(i));
+                    else
+                        writeBatch(writeBatch, countKeys.get(i), KeyBuilder.longToBytes(count));
+                    i++;
+                }
+            } finally {
+                rankLock.unlock();
+            }
+        }
+    }
+
+    private class LexRangeIterator implements ValueIterator<T> {
+        private final ReadOptions readOptions;
+        private final RocksIterator iterator;
+        private final byte[] lexPrefix;
+        private final byte[] keyPrefix;
+        private final byte[] upperBound;
+
+        /**
+         * @param lexPrefix  prefix of the lex keys of the namespace
+         * @param keyPrefix  prefix of all returned keys, lexPrefix or longer
+         * @param startKey   key to start at
+         * @param upperBound exclusive upper bound or null
+         */
+        public LexRangeIterator(@NonNull byte[] lexPrefix,
+                                @NonNull byte[] keyPrefix,
+                                @NonNull byte[] startKey,
+                                byte[] upperBound) {
+            //Lex keys can span prefix extractor domains, so seek in total order
+            this.readOptions = new ReadOptions().setTotalOrderSeek(true);
+            this.iterator = RocksMultiSortedSet.this.iterator(readOptions);
+            this.lexPrefix = lexPrefix;
+            this.keyPrefix = keyPrefix;
+            this.upperBound = upperBound;
+            this.iterator.seek(startKey);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.isValid() && KeyBuilder.hasPrefix(iterator.key(), keyPrefix)
+                    && (upperBound == null || Arrays.compareUnsigned(iterator.key(), upperBound) < 0);
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            byte[] key = iterator.key();
+            iterator.next();
+
+            return getMemberFromLexKey(key, lexPrefix);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Remove not supported");
+        }
+
+        @Override
+        public void close() {
+            iterator.close();
+            readOptions.close();
+        }
+    }
+
+    private class LexReverseRangeIterator implements ReverseValueIterator<T> {
+        private final ReadOptions readOptions;
+        private final RocksIterator iterator;
+        private final byte[] lexPrefix;
+        private final byte[] lowerBound;
+
+        /**
+         * @param startBound iteration starts at the last key at or before this bound
+         * @param lowerBound inclusive lower bound or null
+         */
+        public LexReverseRangeIterator(@NonNull byte[] lexPrefix,
+                                       @NonNull byte[] startBound,
+                                       byte[] lowerBound) {
+            this.readOptions = new ReadOptions().setTotalOrderSeek(true);
+            this.iterator = RocksMultiSortedSet.this.iterator(readOptions);
+            this.lexPrefix = lexPrefix;
+            this.lowerBound = lowerBound;
+            this.iterator.seekForPrev(startBound);
+        }
+
+        @Override
+        public boolean hasPrev() {
+            return iterator.isValid() && KeyBuilder.hasPrefix(iterator.key(), lexPrefix)
+                    && (lowerBound == null || Arrays.compareUnsigned(iterator.key(), lowerBound) >= 0);
+        }
+
+        @Override
+        public T prev() {
+            if (!hasPrev()) {
+                throw new NoSuchElementException();
+            }
+            byte[] key = iterator.key();
+            iterator.prev();
+
+            return getMemberFromLexKey(key, lexPrefix);
+        }
+
+        @Override
+        public void close() {
+            iterator.close();
+            readOptions.close();
+        }
+    }
+
+    private class ZSetRangeIterator<T> implements ValueIterator<Tuple<T, S>> {
+        private final RocksIterator iterator;
+        private final byte[] prefixWithoutScore;
+        private final byte[] encodedEndScore;
+
+        public ZSetRangeIterator(@NonNull RocksIterator iterator,
+                                 @NonNull byte[] prefixWithoutScore,
+                                 S beginningScore,
+                                 S endScore) {
+            this.iterator = iterator;
+            this.prefixWithoutScore = prefixWithoutScore;
+            this.encodedEndScore = scoreCodec.encode(endScore);
+            byte[] prefix = KeyBuilder.appendToKey(prefixWithoutScore, scoreCodec.encode(beginningScore));
+            this.iterator.seek(prefix);
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!iterator.isValid() || !KeyBuilder.hasPrefix(iterator.key(), prefixWithoutScore)) {
+                return false;
+            }
+
+            return compareScore(iterator.key(), prefixWithoutScore, encodedEndScore) <= 0;
+        }
+
+        //skip without deserializing the skipped members
+        @Override
+        public void skip(int count) {
+            for (int i = 0; i < count && hasNext(); i++) {
+                iterator.next();
+            }
+        }
+
+        @Override
+        public Tuple<T, S> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            byte[] key = iterator.key();
+            iterator.next();
+
+            Tuple<T, S> memberAndScore = (Tuple<T, S>) getMemberAndScoreFromScoreCompositeSubKey(key, prefixWithoutScore);
+            return memberAndScore;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Remove not supported");
+        }
+
+        @Override
+        public void close() {
+            iterator.close();
+        }
+    }
+
+    private class ZSetMembersIterator<T> implements ValueIterator<Tuple<T, S>> {
+        private final RocksIterator iterator;
+        private final byte[] prefix;
+
+        public ZSetMembersIterator(@NonNull RocksIterator rocksIterator,
+                                   @NonNull byte[] prefix) {
+            this.iterator = rocksIterator;
+            this.prefix = prefix;
+            this.iterator.seek(prefix);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return iterator.isValid() && KeyBuilder.hasPrefix(iterator.key(), prefix);
+        }
+
+        @Override
+        public void skip(int count) {
+            for (int i = 0; i < count && hasNext(); i++) {
+                iterator.next();
+            }
+        }
+
+        @Override
+        public Tuple<T, S> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            byte[] key = iterator.key();
+            byte[] value = iterator.value();
+            iterator.next();
+
+            T member = getMemberFromMemberCompositeSubKey(key, prefix);
+            S score = deserializeScore(value);
+
+            return new Tuple<>(member, score);
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException("Remove not supported");
+        }
+
+        @Override
+        public void close() {
+            iterator.close();
+        }
+    }
+
+    private class ZSetReverseRangeIterator<T> implements ReverseValueIterator<Tuple<T, S>> {
+        private final RocksIterator iterator;
+        private final byte[] prefixWithoutScore;
+        private final byte[] encodedStartScore; // Score to start iterating from, in reverse
+        private final byte[] encodedEndScore;
+
+        public ZSetReverseRangeIterator(@NonNull RocksIterator iterator,
+                                        @NonNull byte[] prefixWithoutScore,
+                                        S startScore, // Score to start iterating from, in reverse
+                                        S endScore) {
+            this.iterator = iterator;
+            this.prefixWithoutScore = prefixWithoutScore;
+            this.encodedStartScore = scoreCodec.encode(startScore);
+            this.encodedEndScore = scoreCodec.encode(endScore);
+
+            // Seek to the starting position for reverse iteration
+            //to include start score in the result. 0xFF sorts after the member length prefix of any key with start score
+            byte[] startPrefix = KeyBuilder.merge(
+                    KeyBuilder.appendToKey(prefixWithoutScore, encodedStartScore), new byte[]{(byte) 0xFF});
+            this.iterator.seekForPrev(startPrefix);
+        }
+
+        @Override
+        public boolean hasPrev() {
+            if (!iterator.isValid() || !KeyBuilder.hasPrefix(iterator.key(), prefixWithoutScore)) {
+                return false;
+            }
+
+            return compareScore(iterator.key(), prefixWithoutScore, encodedStartScore) <= 0
+                    && compareScore(iterator.key(), prefixWithoutScore, encodedEndScore) >= 0;
+        }
+
+        @Override
+        public Tuple<T, S> prev() {
+            if (!hasPrev()) {
+                throw new NoSuchElementException();
+            }
+            byte[] key = iterator.key();
+            iterator.prev(); // Move to the previous item
+
+            Tuple<T, S> memberAndScore = (Tuple<T, S>) getMemberAndScoreFromScoreCompositeSubKey(key, prefixWithoutScore);
+
+            return memberAndScore;
+        }
+
+        @Override
+        public void close() {
+            iterator.close();
+        }
+    }
+
+}
+
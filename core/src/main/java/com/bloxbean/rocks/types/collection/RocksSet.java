@@ -48,5 +48,13 @@ public class RocksSet<T> extends RocksMultiSet<T> {
         return membersIterator(null);
     }
 
+    public long size() {
+        return super.size(null);
+    }
+
+    public long approximateSize() {
+        return super.approximateSize(null);
+    }
+
 }
 
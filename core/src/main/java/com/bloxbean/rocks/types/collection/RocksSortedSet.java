@@ -0,0 +1,170 @@
+package com.bloxbean.rocks.types.collection;
+
+import com.bloxbean.rocks.types.collection.util.ReverseValueIterator;
+import com.bloxbean.rocks.types.collection.util.ValueIterator;
+import com.bloxbean.rocks.types.common.Page;
+import com.bloxbean.rocks.types.common.ScoreCodec;
+import com.bloxbean.rocks.types.common.Tuple;
+import com.bloxbean.rocks.types.config.RocksDBConfig;
+import lombok.NonNull;
+import org.rocksdb.WriteBatch;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Provides sorted set functionality on top of RocksDB with scores of any {@link ScoreCodec}.
+ * RocksSortedSet is a wrapper class for RocksMultiSortedSet with default namespace
+ *
+ * @param <T> member type
+ * @param <S> score type
+ */
+public class RocksSortedSet<T, S> extends RocksMultiSortedSet<T, S> {
+
+    public RocksSortedSet(@NonNull RocksDBConfig rocksDBConfig, @NonNull String name, Class<T> memberType,
+                          @NonNull ScoreCodec<S> scoreCodec) {
+        super(rocksDBConfig, name, memberType, scoreCodec);
+    }
+
+    public RocksSortedSet(@NonNull RocksDBConfig rocksDBConfig, String columnFamily, @NonNull String name,
+                          Class<T> memberType, @NonNull ScoreCodec<S> scoreCodec) {
+        super(rocksDBConfig, columnFamily, name, memberType, scoreCodec);
+    }
+
+    public void add(T member, S score) {
+        add(null, member, score);
+    }
+
+    public S incrementBy(T member, S delta) {
+        return incrementBy(null, member, delta);
+    }
+
+    public void addBatch(WriteBatch writeBatch, Tuple<T, S>... membersWithScores) {
+        addBatch(null, writeBatch, membersWithScores);
+    }
+
+    public Optional<S> getScore(T member) {
+        return getScore(null, member);
+    }
+
+    public List<S> multiGetScore(List<T> members) {
+        return multiGetScore(null, members);
+    }
+
+    public boolean contains(T member) {
+        return contains(null, member);
+    }
+
+    public List<Boolean> multiContains(List<T> members) {
+        return multiContains(null, members);
+    }
+
+    public void remove(T member) {
+        remove(null, member);
+    }
+
+    public void removeBatch(WriteBatch writeBatch, T... members) {
+        removeBatch(null, writeBatch, members);
+    }
+
+    public Set<T> members() {
+        return members(null);
+    }
+
+    public Set<Tuple<T, S>> membersWithScores() {
+        return membersWithScores(null);
+    }
+
+    public List<Tuple<T, S>> membersInRange(S beginningScore, S endScore) {
+        return membersInRange(null, beginningScore, endScore);
+    }
+
+    public ValueIterator<Tuple<T, S>> membersWithScoresIterator() {
+        return super.membersWithScoresIterator(null);
+    }
+
+    public ValueIterator<Tuple<T, S>> membersInRangeIterator(S beginningScore, S endScore) {
+        return super.membersInRangeIterator(null, beginningScore, endScore);
+    }
+
+    public ReverseValueIterator<Tuple<T, S>> membersInRangeReverseIterator(S startScore, S endScore) {
+        return super.membersInRangeReverseIterator(null, startScore, endScore);
+    }
+
+    public List<Tuple<T, S>> popMin(int count) {
+        return super.popMin(null, count);
+    }
+
+    public List<Tuple<T, S>> popMax(int count) {
+        return super.popMax(null, count);
+    }
+
+    public long trimToSize(long maxSize) {
+        return super.trimToSize(null, maxSize);
+    }
+
+    public long trimByScore(S minScore, S maxScore) {
+        return super.trimByScore(null, minScore, maxScore);
+    }
+
+    public List<T> membersByLex(T from, T to, int limit) {
+        return super.membersByLex(null, from, to, limit);
+    }
+
+    public List<T> membersByLexPrefix(T prefix, int limit) {
+        return super.membersByLexPrefix(null, prefix, limit);
+    }
+
+    public ValueIterator<T> membersByLexIterator(T from, T to) {
+        return super.membersByLexIterator(null, from, to);
+    }
+
+    public ReverseValueIterator<T> membersByLexReverseIterator(T start, T end) {
+        return super.membersByLexReverseIterator(null, start, end);
+    }
+
+    public void rebuildLexIndex() {
+        super.rebuildLexIndex(null);
+    }
+
+    public List<Tuple<T, S>> membersInRange(S beginningScore, S endScore, long offset, int limit) {
+        return super.membersInRange(null, beginningScore, endScore, offset, limit);
+    }
+
+    public Page<Tuple<T, S>> membersInRangePage(S beginningScore, S endScore, String continuationToken, int limit) {
+        return super.membersInRangePage(null, beginningScore, endScore, continuationToken, limit);
+    }
+
+    public long size() {
+        return super.size(null);
+    }
+
+    public Optional<Long> rank(T member) {
+        return super.rank(null, member);
+    }
+
+    public Optional<Long> revRank(T member) {
+        return super.revRank(null, member);
+    }
+
+    public long count(S minScore, S maxScore) {
+        return super.count(null, minScore, maxScore);
+    }
+
+    public List<Tuple<T, S>> rangeByRank(long start, long stop) {
+        return super.rangeByRank(null, start, stop);
+    }
+
+    public List<Tuple<T, S>> revRangeByRank(long start, long stop) {
+        return super.revRangeByRank(null, start, stop);
+    }
+
+    public void rebuildRankIndex() {
+        super.rebuildRankIndex(null);
+    }
+
+    public long repair() {
+        return repair(null);
+    }
+}
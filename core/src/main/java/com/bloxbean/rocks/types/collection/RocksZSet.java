@@ -2,6 +2,7 @@ package com.bloxbean.rocks.types.collection;
 
 import com.bloxbean.rocks.types.collection.util.ReverseValueIterator;
 import com.bloxbean.rocks.types.collection.util.ValueIterator;
+import com.bloxbean.rocks.types.common.Page;
 import com.bloxbean.rocks.types.common.Tuple;
 import com.bloxbean.rocks.types.config.RocksDBConfig;
 import lombok.NonNull;
@@ -30,6 +31,10 @@ public class RocksZSet<T> extends RocksMultiZSet<T> {
         add(null, member, score);
     }
 
+    public long incrementBy(T member, long delta) {
+        return incrementBy(null, member, delta);
+    }
+
     public void addBatch(WriteBatch writeBatch, Tuple<T, Long>... membersWithScores) {
        addBatch(null, writeBatch, membersWithScores);
     }
@@ -38,6 +43,14 @@ public class RocksZSet<T> extends RocksMultiZSet<T> {
         return getScore(null, member);
     }
 
+    public List<Long> multiGetScore(List<T> members) {
+        return multiGetScore(null, members);
+    }
+
+    public List<Boolean> multiContains(List<T> members) {
+        return multiContains(null, members);
+    }
+
     @SneakyThrows
     public boolean contains(T member) {
        return contains(null, member);
@@ -79,6 +92,82 @@ public class RocksZSet<T> extends RocksMultiZSet<T> {
         return super.membersInRangeReverseIterator(null, startScore, endScore);
     }
 
+    public long repair() {
+        return repair(null);
+    }
+
+    public List<Tuple<T, Long>> popMin(int count) {
+        return super.popMin(null, count);
+    }
+
+    public List<Tuple<T, Long>> popMax(int count) {
+        return super.popMax(null, count);
+    }
+
+    public long trimToSize(long maxSize) {
+        return super.trimToSize(null, maxSize);
+    }
+
+    public long trimByScore(long minScore, long maxScore) {
+        return super.trimByScore(null, minScore, maxScore);
+    }
+
+    public List<T> membersByLex(T from, T to, int limit) {
+        return super.membersByLex(null, from, to, limit);
+    }
+
+    public List<T> membersByLexPrefix(T prefix, int limit) {
+        return super.membersByLexPrefix(null, prefix, limit);
+    }
+
+    public ValueIterator<T> membersByLexIterator(T from, T to) {
+        return super.membersByLexIterator(null, from, to);
+    }
+
+    public ReverseValueIterator<T> membersByLexReverseIterator(T start, T end) {
+        return super.membersByLexReverseIterator(null, start, end);
+    }
+
+    public void rebuildLexIndex() {
+        super.rebuildLexIndex(null);
+    }
+
+    public List<Tuple<T, Long>> membersInRange(long beginningScore, long endScore, long offset, int limit) {
+        return super.membersInRange(null, beginningScore, endScore, offset, limit);
+    }
+
+    public Page<Tuple<T, Long>> membersInRangePage(long beginningScore, long endScore, String continuationToken, int limit) {
+        return super.membersInRangePage(null, beginningScore, endScore, continuationToken, limit);
+    }
+
+    public long size() {
+        return super.size(null);
+    }
+
+    public Optional<Long> rank(T member) {
+        return super.rank(null, member);
+    }
+
+    public Optional<Long> revRank(T member) {
+        return super.revRank(null, member);
+    }
+
+    public long count(long minScore, long maxScore) {
+        return super.count(null, minScore, maxScore);
+    }
+
+    public List<Tuple<T, Long>> rangeByRank(long start, long stop) {
+        return super.rangeByRank(null, start, stop);
+    }
+
+    public List<Tuple<T, Long>> revRangeByRank(long start, long stop) {
+        return super.revRangeByRank(null, start, stop);
+    }
+
+    public void rebuildRankIndex() {
+        super.rebuildRankIndex(null);
+    }
+
     //TODO-- membersAfter
     //TODO-- membersAfterIterator
 }
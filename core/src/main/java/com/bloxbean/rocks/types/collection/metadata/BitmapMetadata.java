@@ -5,6 +5,10 @@ import lombok.Data;
 @Data
 public class BitmapMetadata extends TypeMetadata {
     private long maxFragmentIndex;
+    //No of bits set. -1 if unknown, e.g. after merge writes or for bitmaps written by older versions
+    private long cardinality = -1;
+    //Bits per fragment. 0 if not recorded by older versions
+    private int fragmentSize;
     @Override
     public DataType getType() {
         return DataType.BITMAP;
@@ -15,4 +15,12 @@ public enum DataType {
     public short getValue() {
         return value;
     }
+
+    public static DataType fromValue(short value) {
+        for (DataType dataType : values()) {
+            if (dataType.value == value)
+                return dataType;
+        }
+        throw new IllegalArgumentException("Unknown data type: " + value);
+    }
 }
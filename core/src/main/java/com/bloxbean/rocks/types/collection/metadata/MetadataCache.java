@@ -0,0 +1,121 @@
+package com.bloxbean.rocks.types.collection.metadata;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded LRU cache of collection metadata, keyed by the metadata key of a namespace.
+ * A cache with max size 0 is disabled and never stores anything.
+ * <p>
+ * Metadata is stored in the {@link MetadataCodec} format and every {@link #get(byte[], Class)} returns a new
+ * instance, so callers can update the returned metadata without changing the cached entry.
+ * <p>
+ * Metadata read from RocksDB is added with {@link #putIfAbsent(byte[], TypeMetadata)}, so a reader which read the
+ * metadata before a concurrent write can't replace the metadata cached by the writer. Writers use
+ * {@link #put(byte[], TypeMetadata)}.
+ * <p>
+ * Metadata written to a WriteBatch is only visible after the caller commits the batch, which may happen any time
+ * later. {@link #markUncacheable(byte[])} replaces the entry of such a key with a marker, so later reads go to
+ * RocksDB and don't cache the metadata from before the commit. The marker stays until the next direct write of the
+ * metadata replaces it, it is evicted or the cache is cleared.
+ */
+public class MetadataCache {
+    private static final byte[] UNCACHEABLE = new byte[0];
+
+    private final int maxSize;
+    private final Map<ByteBuffer, byte[]> cache;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public MetadataCache(int maxSize) {
+        this.maxSize = Math.max(maxSize, 0);
+        this.cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, byte[]> eldest) {
+                return size() > MetadataCache.this.maxSize;
+            }
+        });
+    }
+
+    public <M extends TypeMetadata> M get(byte[] metadataKey, Class<M> type) {
+        if (maxSize == 0) {
+            misses.increment();
+            return null;
+        }
+
+        byte[] bytes = cache.get(ByteBuffer.wrap(metadataKey));
+        TypeMetadata metadata = bytes != null && bytes != UNCACHEABLE ? MetadataCodec.decode(bytes) : null;
+        if (type.isInstance(metadata)) {
+            hits.increment();
+            return type.cast(metadata);
+        } else {
+            misses.increment();
+            return null;
+        }
+    }
+
+    /**
+     * Cache metadata written directly to RocksDB. Replaces any cached metadata and an uncacheable marker, as the
+     * written metadata is the stored one.
+     */
+    public void put(byte[] metadataKey, TypeMetadata metadata) {
+        if (maxSize == 0 || metadata == null)
+            return;
+
+        cache.put(ByteBuffer.wrap(metadataKey), MetadataCodec.encode(metadata));
+    }
+
+    /**
+     * Cache metadata read from RocksDB, unless the key is cached or marked uncacheable already.
+     */
+    public void putIfAbsent(byte[] metadataKey, TypeMetadata metadata) {
+        if (maxSize == 0 || metadata == null)
+            return;
+
+        cache.putIfAbsent(ByteBuffer.wrap(metadataKey), MetadataCodec.encode(metadata));
+    }
+
+    /**
+     * Remove the cached metadata of a key. A marker set by {@link #markUncacheable(byte[])} is kept.
+     */
+    public void invalidate(byte[] metadataKey) {
+        if (maxSize == 0)
+            return;
+
+        cache.computeIfPresent(ByteBuffer.wrap(metadataKey), (key, current) -> current == UNCACHEABLE ? current : null);
+    }
+
+    /**
+     * Stop caching the metadata of a key, e.g. because it was written to a WriteBatch which is not committed yet.
+     */
+    public void markUncacheable(byte[] metadataKey) {
+        if (maxSize == 0)
+            return;
+
+        cache.put(ByteBuffer.wrap(metadataKey), UNCACHEABLE);
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+}
@@ -0,0 +1,216 @@
+package com.bloxbean.rocks.types.collection.metadata;
+
+/**
+ * Binary codec for {@link TypeMetadata}. The layout is independent of the value serializer configured in
+ * {@link com.bloxbean.rocks.types.config.RocksDBConfig}.
+ * <p>
+ * Layout (big-endian):
+ * <pre>
+ * marker (1) | codec version (1) | type (2) | version (8) | type specific fields
+ *
+ * LIST   : size (8) | head length (4) | head | tail length (4) | tail    (length -1 for null)
+ * BITMAP : maxFragmentIndex (8) | cardinality (8) | fragmentSize (4)
+ * MAP    : size (8)
+ * SET    : size (8)
+ * ZSET   : scoreFormat (4)
+ * others : no additional fields
+ * </pre>
+ * Fields added to a type later are appended at the end and are optional when decoding. Missing fields get the
+ * default of the metadata class.
+ * <p>
+ * The marker byte 0xC1 is never used by MessagePack and is not a valid start of a JSON document, so metadata
+ * written by the older serializer based format can be told apart by {@link #isEncoded(byte[])}.
+ */
+public final class MetadataCodec {
+    public static final byte MARKER = (byte) 0xC1;
+    public static final byte CODEC_VERSION = 1;
+
+    private static final int HEADER_SIZE = 1 + 1 + Short.BYTES + Long.BYTES;
+
+    private MetadataCodec() {
+
+    }
+
+    /**
+     * Check if the bytes were written by this codec
+     * @param bytes metadata bytes
+     * @return true if bytes are in binary metadata format
+     */
+    public static boolean isEncoded(byte[] bytes) {
+        return bytes != null && bytes.length >= HEADER_SIZE && bytes[0] == MARKER;
+    }
+
+    public static byte[] encode(TypeMetadata metadata) {
+        DataType type = metadata.getType();
+        int size = HEADER_SIZE;
+        if (metadata instanceof ListMetadata listMetadata) {
+            size += Long.BYTES + lengthOf(listMetadata.getHead()) + lengthOf(listMetadata.getTail());
+        } else if (metadata instanceof BitmapMetadata) {
+            size += Long.BYTES + Long.BYTES + Integer.BYTES;
+        } else if (metadata instanceof MapMetadata || metadata instanceof SetMetadata) {
+            size += Long.BYTES;
+        } else if (metadata instanceof ZSetMetadata) {
+            size += Integer.BYTES;
+        }
+
+        byte[] bytes = new byte[size];
+        bytes[0] = MARKER;
+        bytes[1] = CODEC_VERSION;
+        int offset = putShort(bytes, 2, type.getValue());
+        offset = putLong(bytes, offset, metadata.getVersion());
+
+        if (metadata instanceof ListMetadata listMetadata) {
+            offset = putLong(bytes, offset, listMetadata.getSize());
+            offset = putBytes(bytes, offset, listMetadata.getHead());
+            putBytes(bytes, offset, listMetadata.getTail());
+        } else if (metadata instanceof BitmapMetadata bitmapMetadata) {
+            offset = putLong(bytes, offset, bitmapMetadata.getMaxFragmentIndex());
+            offset = putLong(bytes, offset, bitmapMetadata.getCardinality());
+            putInt(bytes, offset, bitmapMetadata.getFragmentSize());
+        } else if (metadata instanceof MapMetadata mapMetadata) {
+            putLong(bytes, offset, mapMetadata.getSize());
+        } else if (metadata instanceof SetMetadata setMetadata) {
+            putLong(bytes, offset, setMetadata.getSize());
+        } else if (metadata instanceof ZSetMetadata zsetMetadata) {
+            putInt(bytes, offset, zsetMetadata.getScoreFormat());
+        }
+
+        return bytes;
+    }
+
+    public static <M extends TypeMetadata> M decode(byte[] bytes, Class<M> metadataType) {
+        TypeMetadata metadata = decode(bytes);
+        if (!metadataType.isInstance(metadata))
+            throw new IllegalArgumentException("Metadata type mismatch. Expected: " + metadataType.getSimpleName()
+                    + ", found: " + metadata.getType());
+
+        return metadataType.cast(metadata);
+    }
+
+    public static TypeMetadata decode(byte[] bytes) {
+        if (!isEncoded(bytes))
+            throw new IllegalArgumentException("Not a binary encoded metadata");
+        if (bytes[1] != CODEC_VERSION)
+            throw new IllegalArgumentException("Unsupported metadata codec version: " + bytes[1]);
+
+        DataType type = DataType.fromValue(getShort(bytes, 2));
+        long version = getLong(bytes, 4);
+        int offset = HEADER_SIZE;
+
+        TypeMetadata metadata;
+        switch (type) {
+            case LIST -> {
+                var listMetadata = new ListMetadata();
+                listMetadata.setSize(getLong(bytes, offset));
+                offset += Long.BYTES;
+                byte[] head = getBytes(bytes, offset);
+                offset += lengthOf(head);
+                listMetadata.setHead(head);
+                listMetadata.setTail(getBytes(bytes, offset));
+                metadata = listMetadata;
+            }
+            case BITMAP -> {
+                var bitmapMetadata = new BitmapMetadata();
+                bitmapMetadata.setMaxFragmentIndex(getLong(bytes, offset));
+                offset += Long.BYTES;
+                if (hasField(bytes, offset, Long.BYTES))
+                    bitmapMetadata.setCardinality(getLong(bytes, offset));
+                offset += Long.BYTES;
+                if (hasField(bytes, offset, Integer.BYTES))
+                    bitmapMetadata.setFragmentSize(getInt(bytes, offset));
+                metadata = bitmapMetadata;
+            }
+            case SET -> {
+                var setMetadata = new SetMetadata();
+                if (hasField(bytes, offset, Long.BYTES))
+                    setMetadata.setSize(getLong(bytes, offset));
+                metadata = setMetadata;
+            }
+            case MAP -> {
+                var mapMetadata = new MapMetadata();
+                if (hasField(bytes, offset, Long.BYTES))
+                    mapMetadata.setSize(getLong(bytes, offset));
+                metadata = mapMetadata;
+            }
+            case ZSET -> {
+                var zsetMetadata = new ZSetMetadata();
+                if (hasField(bytes, offset, Integer.BYTES))
+                    zsetMetadata.setScoreFormat(getInt(bytes, offset));
+                metadata = zsetMetadata;
+            }
+            default -> throw new IllegalArgumentException("Unsupported data type: " + type);
+        }
+        metadata.setType(type);
+        metadata.setVersion(version);
+        return metadata;
+    }
+
+    private static boolean hasField(byte[] bytes, int offset, int length) {
+        return bytes.length >= offset + length;
+    }
+
+    private static int lengthOf(byte[] value) {
+        return Integer.BYTES + (value != null ? value.length : 0);
+    }
+
+    private static int putShort(byte[] bytes, int offset, short value) {
+        bytes[offset] = (byte) (value >>> 8);
+        bytes[offset + 1] = (byte) value;
+        return offset + Short.BYTES;
+    }
+
+    private static int putInt(byte[] bytes, int offset, int value) {
+        for (int i = Integer.BYTES - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+        return offset + Integer.BYTES;
+    }
+
+    private static int putLong(byte[] bytes, int offset, long value) {
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+        return offset + Long.BYTES;
+    }
+
+    private static int putBytes(byte[] bytes, int offset, byte[] value) {
+        if (value == null)
+            return putInt(bytes, offset, -1);
+
+        offset = putInt(bytes, offset, value.length);
+        System.arraycopy(value, 0, bytes, offset, value.length);
+        return offset + value.length;
+    }
+
+    private static short getShort(byte[] bytes, int offset) {
+        return (short) (((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF));
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        int value = 0;
+        for (int i = 0; i < Integer.BYTES; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static byte[] getBytes(byte[] bytes, int offset) {
+        int length = getInt(bytes, offset);
+        if (length < 0)
+            return null;
+
+        byte[] value = new byte[length];
+        System.arraycopy(bytes, offset + Integer.BYTES, value, 0, length);
+        return value;
+    }
+}
@@ -4,6 +4,9 @@ import lombok.Data;
 
 @Data
 public class SetMetadata extends TypeMetadata {
+    //No of entries. -1 if not tracked, e.g. for namespaces created without size tracking or by older versions
+    private long size = -1;
+
     @Override
     public DataType getType() {
         return DataType.SET;
@@ -4,6 +4,13 @@ import lombok.Data;
 
 @Data
 public class ZSetMetadata extends TypeMetadata {
+    //Scores in the score index are raw two's complement longs. Written by older versions
+    public static final int SCORE_FORMAT_RAW = 0;
+    //Scores in the score index are encoded by a ScoreCodec
+    public static final int SCORE_FORMAT_ORDERED = 1;
+
+    private int scoreFormat = SCORE_FORMAT_RAW;
+
     @Override
     public DataType getType() {
         return DataType.ZSET;
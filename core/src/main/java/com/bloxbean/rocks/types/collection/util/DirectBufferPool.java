@@ -0,0 +1,47 @@
+package com.bloxbean.rocks.types.collection.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Per thread pool of reusable direct {@link ByteBuffer}s. Each thread owns one buffer which grows on demand.
+ * A buffer returned by {@link #acquire(int)} is only valid until the next call to acquire on the same thread.
+ */
+public class DirectBufferPool {
+    private final int initialCapacity;
+    private final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<>();
+
+    public DirectBufferPool(int initialCapacity) {
+        this.initialCapacity = initialCapacity;
+    }
+
+    /**
+     * Get the current thread's buffer, cleared and with at least the given capacity
+     *
+     * @param minCapacity min capacity
+     * @return direct buffer
+     */
+    public ByteBuffer acquire(int minCapacity) {
+        ByteBuffer buffer = buffers.get();
+        if (buffer == null || buffer.capacity() < minCapacity) {
+            int capacity = Math.max(minCapacity, buffer == null ? initialCapacity : buffer.capacity() * 2);
+            buffer = ByteBuffer.allocateDirect(capacity);
+            buffers.set(buffer);
+        }
+
+        buffer.clear();
+        return buffer;
+    }
+
+    /**
+     * Wrap bytes in the current thread's buffer, ready to be read
+     *
+     * @param bytes bytes
+     * @return direct buffer containing bytes
+     */
+    public ByteBuffer wrap(byte[] bytes) {
+        ByteBuffer buffer = acquire(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+}
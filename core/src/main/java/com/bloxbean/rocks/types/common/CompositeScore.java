@@ -0,0 +1,17 @@
+package com.bloxbean.rocks.types.common;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Score of a primary double score and a long tiebreak, e.g. a timestamp. Scores are ordered by primary and then by
+ * tiebreak.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class CompositeScore {
+    private double primary;
+    private long tiebreak;
+}
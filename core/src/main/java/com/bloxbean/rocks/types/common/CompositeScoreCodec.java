@@ -0,0 +1,28 @@
+package com.bloxbean.rocks.types.common;
+
+/**
+ * {@link CompositeScore} scores, encoded as the ordered double primary followed by the ordered long tiebreak
+ */
+public class CompositeScoreCodec implements ScoreCodec<CompositeScore> {
+
+    @Override
+    public Class<CompositeScore> getScoreType() {
+        return CompositeScore.class;
+    }
+
+    @Override
+    public int getWidth() {
+        return Long.BYTES * 2;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, CompositeScore score) {
+        OrderedBytes.writeDouble(bytes, offset, score.getPrimary());
+        OrderedBytes.writeLong(bytes, offset + Long.BYTES, score.getTiebreak());
+    }
+
+    @Override
+    public CompositeScore read(byte[] bytes, int offset) {
+        return new CompositeScore(OrderedBytes.decodeDouble(bytes, offset), OrderedBytes.decodeLong(bytes, offset + Long.BYTES));
+    }
+}
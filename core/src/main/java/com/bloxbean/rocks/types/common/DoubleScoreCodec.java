@@ -0,0 +1,32 @@
+package com.bloxbean.rocks.types.common;
+
+/**
+ * Double scores, encoded with {@link OrderedBytes#encodeDouble(double)}. -0.0 is stored as 0.0 in the score index.
+ */
+public class DoubleScoreCodec implements ScoreCodec<Double> {
+
+    @Override
+    public Class<Double> getScoreType() {
+        return Double.class;
+    }
+
+    @Override
+    public int getWidth() {
+        return Long.BYTES;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, Double score) {
+        OrderedBytes.writeDouble(bytes, offset, score);
+    }
+
+    @Override
+    public Double read(byte[] bytes, int offset) {
+        return OrderedBytes.decodeDouble(bytes, offset);
+    }
+
+    @Override
+    public Double add(Double score, Double delta) {
+        return score + delta;
+    }
+}
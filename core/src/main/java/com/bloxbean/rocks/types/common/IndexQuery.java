@@ -0,0 +1,23 @@
+package com.bloxbean.rocks.types.common;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Lookup in a secondary index registered with an {@link IndexDef}. A null secondaryKey matches all secondary keys
+ * under the partKey.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class IndexQuery {
+    private String indexName;
+    private String partKey;
+    private String secondaryKey;
+
+    public IndexQuery(String indexName, String partKey) {
+        this.indexName = indexName;
+        this.partKey = partKey;
+    }
+}
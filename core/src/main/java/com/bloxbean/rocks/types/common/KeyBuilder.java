@@ -10,45 +10,72 @@ import java.util.List;
 import java.util.stream.Stream;
 
 public class KeyBuilder {
-    private List<byte[]> parts = new ArrayList<>();
+    private static final int DEFAULT_CAPACITY = 64;
+
+    //Parts are written as [length][bytes] directly into this buffer
+    private byte[] buffer;
+    private int length;
+
+    private KeyBuilder(int capacity) {
+        this.buffer = new byte[capacity];
+    }
 
     public KeyBuilder(@NonNull String name) {
+        this(DEFAULT_CAPACITY);
         addPart(name.getBytes(StandardCharsets.UTF_8));
     }
 
     public KeyBuilder(@NonNull byte[] name) {
+        this(Integer.BYTES + name.length + DEFAULT_CAPACITY);
         addPart(name);
     }
 
     public KeyBuilder(@NonNull String name, @NonNull String ns) {
+        this(DEFAULT_CAPACITY);
         addPart(name.getBytes(StandardCharsets.UTF_8));
         addPart(ns.getBytes(StandardCharsets.UTF_8));
     }
 
     public KeyBuilder(@NonNull String name, @NonNull byte[] ns) {
+        this(2 * Integer.BYTES + name.length() + ns.length + DEFAULT_CAPACITY);
         addPart(name.getBytes(StandardCharsets.UTF_8));
         addPart(ns);
     }
 
     public KeyBuilder(@NonNull byte[] name, @NonNull byte[] ns) {
+        this(2 * Integer.BYTES + name.length + ns.length + DEFAULT_CAPACITY);
         addPart(name);
         addPart(ns);
     }
 
-    public byte[] build() {
-        int totalLength = parts.stream().mapToInt(a -> Integer.BYTES + a.length).sum();
-        ByteBuffer buffer = ByteBuffer.allocate(totalLength);
+    /**
+     * Create a builder which continues an already built key, e.g. a precomputed key prefix.
+     *
+     * @param key key built by a KeyBuilder
+     * @return KeyBuilder
+     */
+    public static KeyBuilder fromKey(@NonNull byte[] key) {
+        KeyBuilder keyBuilder = new KeyBuilder(key.length + DEFAULT_CAPACITY);
+        System.arraycopy(key, 0, keyBuilder.buffer, 0, key.length);
+        keyBuilder.length = key.length;
+        return keyBuilder;
+    }
 
-        for (byte[] part : parts) {
-            buffer.putInt(part.length);
-            buffer.put(part);
-        }
+    public byte[] build() {
+        return Arrays.copyOf(buffer, length);
+    }
 
-        return buffer.array();
+    private void ensureCapacity(int additional) {
+        int required = length + additional;
+        if (required > buffer.length)
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
     }
 
     private void addPart(byte[] part) {
-        parts.add(part);
+        ensureCapacity(Integer.BYTES + part.length);
+        writeInt(buffer, length, part.length);
+        System.arraycopy(part, 0, buffer, length + Integer.BYTES, part.length);
+        length += Integer.BYTES + part.length;
     }
 
     public KeyBuilder append(String str) {
@@ -66,23 +93,51 @@ public class KeyBuilder {
     }
 
     public KeyBuilder append(int value) {
-        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
-        buffer.putInt(value);
-        addPart(buffer.array());
+        ensureCapacity(Integer.BYTES + Integer.BYTES);
+        writeInt(buffer, length, Integer.BYTES);
+        writeInt(buffer, length + Integer.BYTES, value);
+        length += Integer.BYTES + Integer.BYTES;
         return this;
     }
 
     public KeyBuilder append(long value) {
-        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
-        buffer.putLong(value);
-        addPart(buffer.array());
+        ensureCapacity(Integer.BYTES + Long.BYTES);
+        writeInt(buffer, length, Long.BYTES);
+        writeLong(buffer, length + Integer.BYTES, value);
+        length += Integer.BYTES + Long.BYTES;
         return this;
     }
 
     public KeyBuilder append(short value) {
-        ByteBuffer buffer = ByteBuffer.allocate(Short.BYTES);
-        buffer.putShort(value);
-        addPart(buffer.array());
+        ensureCapacity(Integer.BYTES + Short.BYTES);
+        writeInt(buffer, length, Short.BYTES);
+        buffer[length + Integer.BYTES] = (byte) (value >>> 8);
+        buffer[length + Integer.BYTES + 1] = (byte) value;
+        length += Integer.BYTES + Short.BYTES;
+        return this;
+    }
+
+    /**
+     * Append an int in order preserving encoding. See {@link OrderedBytes}
+     */
+    public KeyBuilder appendOrdered(int value) {
+        addPart(OrderedBytes.encodeInt(value));
+        return this;
+    }
+
+    /**
+     * Append a long in order preserving encoding, so negative values sort before positive values. See {@link OrderedBytes}
+     */
+    public KeyBuilder appendOrdered(long value) {
+        addPart(OrderedBytes.encodeLong(value));
+        return this;
+    }
+
+    /**
+     * Append a double in order preserving encoding. See {@link OrderedBytes}
+     */
+    public KeyBuilder appendOrdered(double value) {
+        addPart(OrderedBytes.encodeDouble(value));
         return this;
     }
 
@@ -105,38 +160,39 @@ public class KeyBuilder {
     public static byte[] appendToKey(byte[] key, byte[]... parts) {
         // Calculate the total length needed for the buffer
         // Include the key and all parts, each prefixed with its length
-        int totalLength = key.length + Arrays.stream(parts).mapToInt(a -> Integer.BYTES + a.length).sum();
-        ByteBuffer buffer = ByteBuffer.allocate(totalLength);
+        int totalLength = key.length;
+        for (byte[] part : parts) {
+            totalLength += Integer.BYTES + part.length;
+        }
 
         // Copy the key to the buffer
-        buffer.put(key);
+        byte[] buffer = Arrays.copyOf(key, totalLength);
+        int offset = key.length;
 
         // Loop through parts and add each with its length prefix
         for (byte[] part : parts) {
-            buffer.putInt(part.length); // Prefix with length
-            buffer.put(part);           // Add the part
+            writeInt(buffer, offset, part.length); // Prefix with length
+            System.arraycopy(part, 0, buffer, offset + Integer.BYTES, part.length); // Add the part
+            offset += Integer.BYTES + part.length;
         }
 
-        return buffer.array();
+        return buffer;
     }
 
-
     public static byte[] intToBytes(final int i) {
-        ByteBuffer bb = ByteBuffer.allocate(4);
-        bb.putInt(i);
-        return bb.array();
+        byte[] bytes = new byte[Integer.BYTES];
+        writeInt(bytes, 0, i);
+        return bytes;
     }
 
     public static byte[] longToBytes(final long i) {
-        ByteBuffer bb = ByteBuffer.allocate(8);
-        bb.putLong(i);
-        return bb.array();
+        byte[] bytes = new byte[Long.BYTES];
+        writeLong(bytes, 0, i);
+        return bytes;
     }
 
     public static byte[] shortToBytes(final short i) {
-        ByteBuffer bb = ByteBuffer.allocate(2);
-        bb.putShort(i);
-        return bb.array();
+        return new byte[]{(byte) (i >>> 8), (byte) i};
     }
 
     public static byte[] strToBytes(final String str) {
@@ -148,24 +204,45 @@ public class KeyBuilder {
     }
 
     public static long bytesToLong(final byte[] bytes) {
-        ByteBuffer bb = ByteBuffer.allocate(8);
-        bb.put(bytes);
-        bb.flip();
-        return bb.getLong();
+        return readLong(bytes, 0);
     }
 
     public static int bytesToInt(final byte[] bytes) {
-        ByteBuffer bb = ByteBuffer.allocate(4);
-        bb.put(bytes);
-        bb.flip();
-        return bb.getInt();
+        return readInt(bytes, 0);
     }
 
     public static short bytesToShort(final byte[] bytes) {
-        ByteBuffer bb = ByteBuffer.allocate(2);
-        bb.put(bytes);
-        bb.flip();
-        return bb.getShort();
+        return (short) (((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF));
+    }
+
+    public static long readLong(final byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    public static int readInt(final byte[] bytes, int offset) {
+        int value = 0;
+        for (int i = 0; i < Integer.BYTES; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        for (int i = Integer.BYTES - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
     }
 
     public static List<byte[]> decodeCompositeKey(byte[] compositeKey) {
@@ -182,6 +259,70 @@ public class KeyBuilder {
         return parts;
     }
 
+    /**
+     * Find the offset of a part's data in a composite key without copying any part.
+     * Negative index counts from the end, -1 is the last part.
+     *
+     * @param compositeKey composite key
+     * @param index        part index
+     * @return offset of the part's data. The part's length is stored in the 4 bytes before the offset.
+     */
+    public static int partOffset(byte[] compositeKey, int index) {
+        if (index < 0) {
+            int count = 0;
+            for (int offset = 0; offset < compositeKey.length; offset += Integer.BYTES + readInt(compositeKey, offset))
+                count++;
+            index = count + index;
+        }
+
+        int offset = 0;
+        for (int i = 0; i < index; i++) {
+            offset += Integer.BYTES + readInt(compositeKey, offset);
+        }
+
+        if (index < 0 || offset >= compositeKey.length)
+            throw new IndexOutOfBoundsException("Part index out of range");
+
+        return offset + Integer.BYTES;
+    }
+
+    /**
+     * Copy a single part of a composite key. Negative index counts from the end, -1 is the last part.
+     *
+     * @param compositeKey composite key
+     * @param index        part index
+     * @return part bytes
+     */
+    public static byte[] getPart(byte[] compositeKey, int index) {
+        int offset = partOffset(compositeKey, index);
+        int length = readInt(compositeKey, offset - Integer.BYTES);
+        return Arrays.copyOfRange(compositeKey, offset, offset + length);
+    }
+
+    /**
+     * Copy the part of a composite key which starts right after the given prefix
+     *
+     * @param compositeKey composite key
+     * @param prefix       prefix built by a KeyBuilder, which ends at a part boundary
+     * @return part bytes
+     */
+    public static byte[] getPartAfterPrefix(byte[] compositeKey, byte[] prefix) {
+        return getPartAt(compositeKey, prefix.length);
+    }
+
+    /**
+     * Copy the part of a composite key whose length prefix starts at the given offset
+     *
+     * @param compositeKey composite key
+     * @param offset       offset of the part's length prefix
+     * @return part bytes
+     */
+    public static byte[] getPartAt(byte[] compositeKey, int offset) {
+        int length = readInt(compositeKey, offset);
+        int dataOffset = offset + Integer.BYTES;
+        return Arrays.copyOfRange(compositeKey, dataOffset, dataOffset + length);
+    }
+
     /**
     public static byte[] removePrefix(byte[] key, byte[] prefix) {
         if (key == null || prefix == null) {
@@ -0,0 +1,35 @@
+package com.bloxbean.rocks.types.common;
+
+/**
+ * Long scores, encoded with {@link OrderedBytes#encodeLong(long)}
+ */
+public class LongScoreCodec implements ScoreCodec<Long> {
+
+    @Override
+    public Class<Long> getScoreType() {
+        return Long.class;
+    }
+
+    @Override
+    public int getWidth() {
+        return Long.BYTES;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, Long score) {
+        OrderedBytes.writeLong(bytes, offset, score);
+    }
+
+    @Override
+    public Long read(byte[] bytes, int offset) {
+        return OrderedBytes.decodeLong(bytes, offset);
+    }
+
+    /**
+     * @throws ArithmeticException if the result overflows a long
+     */
+    @Override
+    public Long add(Long score, Long delta) {
+        return Math.addExact(score, delta);
+    }
+}
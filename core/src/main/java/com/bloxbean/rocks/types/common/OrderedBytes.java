@@ -0,0 +1,192 @@
+package com.bloxbean.rocks.types.common;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Order preserving encoding for key components. Encoded values compare with RocksDB's default bytewise comparator
+ * (unsigned, lexicographic) in the same order as the original values.
+ * <ul>
+ *     <li>int / long : big-endian with the sign bit flipped, so negative values sort before positive values</li>
+ *     <li>double : IEEE-754 bits, sign bit flipped for positive values and all bits flipped for negative values</li>
+ *     <li>byte[] / String : 0x00 escaped as 0x00 0xFF and terminated with 0x00 0x01</li>
+ * </ul>
+ * Fixed width values (int, long, double) keep their order when appended through {@link KeyBuilder}. Escaped byte
+ * strings are self-delimiting and must be concatenated without {@link KeyBuilder}'s length prefix to keep their order.
+ */
+public final class OrderedBytes {
+    private static final byte ESCAPE = 0x00;
+    private static final byte ESCAPED_NULL = (byte) 0xFF;
+    private static final byte TERMINATOR = 0x01;
+
+    private OrderedBytes() {
+
+    }
+
+    public static byte[] encodeInt(int value) {
+        byte[] bytes = new byte[Integer.BYTES];
+        writeInt(bytes, 0, value);
+        return bytes;
+    }
+
+    public static void writeInt(byte[] bytes, int offset, int value) {
+        int flipped = value ^ Integer.MIN_VALUE;
+        for (int i = Integer.BYTES - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) flipped;
+            flipped >>>= 8;
+        }
+    }
+
+    public static int decodeInt(byte[] bytes) {
+        return decodeInt(bytes, 0);
+    }
+
+    public static int decodeInt(byte[] bytes, int offset) {
+        int value = 0;
+        for (int i = 0; i < Integer.BYTES; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value ^ Integer.MIN_VALUE;
+    }
+
+    public static byte[] encodeLong(long value) {
+        byte[] bytes = new byte[Long.BYTES];
+        writeLong(bytes, 0, value);
+        return bytes;
+    }
+
+    public static void writeLong(byte[] bytes, int offset, long value) {
+        long flipped = value ^ Long.MIN_VALUE;
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) flipped;
+            flipped >>>= 8;
+        }
+    }
+
+    public static long decodeLong(byte[] bytes) {
+        return decodeLong(bytes, 0);
+    }
+
+    public static long decodeLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value ^ Long.MIN_VALUE;
+    }
+
+    /**
+     * Encode a double. -0.0 is normalized to 0.0 and all NaNs to the canonical NaN, which sorts after +Infinity.
+     */
+    public static byte[] encodeDouble(double value) {
+        byte[] bytes = new byte[Long.BYTES];
+        writeDouble(bytes, 0, value);
+        return bytes;
+    }
+
+    public static void writeDouble(byte[] bytes, int offset, double value) {
+        if (value == 0.0d)
+            value = 0.0d; //normalize -0.0
+        long bits = Double.doubleToLongBits(value);
+        bits = bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+        for (int i = Long.BYTES - 1; i >= 0; i--) {
+            bytes[offset + i] = (byte) bits;
+            bits >>>= 8;
+        }
+    }
+
+    public static double decodeDouble(byte[] bytes) {
+        return decodeDouble(bytes, 0);
+    }
+
+    public static double decodeDouble(byte[] bytes, int offset) {
+        long bits = 0;
+        for (int i = 0; i < Long.BYTES; i++) {
+            bits = (bits << 8) | (bytes[offset + i] & 0xFF);
+        }
+        bits = bits < 0 ? bits ^ Long.MIN_VALUE : ~bits;
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * Encode a byte string as an escaped, terminated byte string.
+     */
+    public static byte[] encodeBytes(byte[] value) {
+        int nulls = 0;
+        for (byte b : value) {
+            if (b == ESCAPE)
+                nulls++;
+        }
+
+        byte[] bytes = new byte[value.length + nulls + 2];
+        int pos = 0;
+        for (byte b : value) {
+            bytes[pos++] = b;
+            if (b == ESCAPE)
+                bytes[pos++] = ESCAPED_NULL;
+        }
+        bytes[pos++] = ESCAPE;
+        bytes[pos] = TERMINATOR;
+        return bytes;
+    }
+
+    /**
+     * Decode an escaped, terminated byte string starting at offset
+     *
+     * @param bytes  encoded bytes
+     * @param offset offset of the encoded byte string
+     * @return decoded bytes
+     */
+    public static byte[] decodeBytes(byte[] bytes, int offset) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length - offset);
+        int pos = offset;
+        while (pos < bytes.length - 1) {
+            byte b = bytes[pos];
+            if (b == ESCAPE) {
+                byte next = bytes[pos + 1];
+                if (next == TERMINATOR)
+                    return out.toByteArray();
+                else if (next != ESCAPED_NULL)
+                    throw new IllegalArgumentException("Invalid escape sequence at " + pos);
+                out.write(ESCAPE);
+                pos += 2;
+            } else {
+                out.write(b);
+                pos++;
+            }
+        }
+
+        throw new IllegalArgumentException("Missing terminator in encoded bytes");
+    }
+
+    /**
+     * Length of an escaped, terminated byte string starting at offset, including the terminator
+     */
+    public static int encodedBytesLength(byte[] bytes, int offset) {
+        for (int pos = offset; pos < bytes.length - 1; pos++) {
+            if (bytes[pos] == ESCAPE) {
+                if (bytes[pos + 1] == TERMINATOR)
+                    return pos + 2 - offset;
+                pos++; //skip escaped null
+            }
+        }
+
+        throw new IllegalArgumentException("Missing terminator in encoded bytes");
+    }
+
+    public static byte[] encodeString(String value) {
+        return encodeBytes(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static String decodeString(byte[] bytes, int offset) {
+        return new String(decodeBytes(bytes, offset), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Compare two byte arrays the same way as RocksDB's default bytewise comparator
+     */
+    public static int compare(byte[] a, byte[] b) {
+        return Arrays.compareUnsigned(a, b);
+    }
+}
@@ -0,0 +1,19 @@
+package com.bloxbean.rocks.types.common;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * One page of a paged range query. Pass the continuation token to the next call to read the next page with a single
+ * seek. The token is null after the last page.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Page<E> {
+    private List<E> items;
+    private String continuationToken;
+}
@@ -0,0 +1,40 @@
+package com.bloxbean.rocks.types.common;
+
+/**
+ * Score type of a {@link com.bloxbean.rocks.types.collection.RocksMultiSortedSet}. Scores are encoded into a fixed
+ * width, order preserving byte form (see {@link OrderedBytes}), so score ranges are plain seeks over the score index.
+ * The rank index of the sorted set buckets scores by the first 8 bytes of the encoded score.
+ *
+ * @param <S> score type
+ */
+public interface ScoreCodec<S> {
+    ScoreCodec<Long> LONG = new LongScoreCodec();
+    ScoreCodec<Double> DOUBLE = new DoubleScoreCodec();
+    ScoreCodec<CompositeScore> COMPOSITE = new CompositeScoreCodec();
+
+    Class<S> getScoreType();
+
+    /**
+     * Width of the encoded score in bytes. Must be at least 8.
+     */
+    int getWidth();
+
+    void write(byte[] bytes, int offset, S score);
+
+    S read(byte[] bytes, int offset);
+
+    default byte[] encode(S score) {
+        byte[] bytes = new byte[getWidth()];
+        write(bytes, 0, score);
+        return bytes;
+    }
+
+    /**
+     * Add delta to a score. Used by incrementBy.
+     *
+     * @throws UnsupportedOperationException if the score type has no addition
+     */
+    default S add(S score, S delta) {
+        throw new UnsupportedOperationException("Increment is not supported for " + getScoreType().getSimpleName() + " scores");
+    }
+}
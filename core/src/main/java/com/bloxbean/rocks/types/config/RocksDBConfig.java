@@ -11,14 +11,19 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
 
 @Slf4j
 public class RocksDBConfig {
     private final RocksDBProperties rocksDBProperties;
 
     private final static String FILE_NAME = "db";
+    private final static String DEFAULT_COLUMN_FAMILY = "default";
+    private final static int DEFAULT_METADATA_CACHE_SIZE = 10000;
 
     private RocksDB db;
     private Map<String, ColumnFamilyHandle> columnFamilyHandles = new HashMap<>();
@@ -28,6 +33,18 @@ public class RocksDBConfig {
     private Serializer keySerializer;
     private Serializer valueSerializer;
 
+    private int metadataCacheSize = DEFAULT_METADATA_CACHE_SIZE;
+    private boolean directBufferIO;
+    private boolean bitmapMergeWrites;
+    private Executor bitmapOperationExecutor;
+    private boolean bitmapFragmentSummaries;
+    private boolean sizeTracking;
+
+    //Concatenates merge operands. Used by bitmaps to append bit changes to a fragment without reading it.
+    //Only installed on the column families in RocksDBProperties#getMergeColumnFamilyNames
+    private MergeOperator mergeOperator;
+    private final Set<String> mergeColumnFamilies = new HashSet<>();
+
     public RocksDBConfig(RocksDBProperties rocksDBProperties) {
         this.rocksDBProperties = rocksDBProperties;
         initDB();
@@ -40,8 +57,15 @@ public class RocksDBConfig {
             List<ColumnFamilyDescriptor> cfDescriptors = new ArrayList<>();
             List<ColumnFamilyHandle> cfHandles = new ArrayList<>();
 
+            mergeColumnFamilies.addAll(rocksDBProperties.getMergeColumnFamilyNames());
+            if (!mergeColumnFamilies.isEmpty())
+                mergeOperator = new StringAppendOperator("");
+
             // Default column family
-            cfDescriptors.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY));
+            var defaultCfOptions = new ColumnFamilyOptions();
+            if (mergeColumnFamilies.contains(DEFAULT_COLUMN_FAMILY))
+                defaultCfOptions.setMergeOperator(mergeOperator);
+            cfDescriptors.add(new ColumnFamilyDescriptor(RocksDB.DEFAULT_COLUMN_FAMILY, defaultCfOptions));
 
             BlockBasedTableConfig tableConfig = new BlockBasedTableConfig();
             tableConfig.setFilterPolicy(new BloomFilter(10, false));
@@ -50,6 +74,8 @@ public class RocksDBConfig {
             for (String cfName : rocksDBProperties.getColumnFamilyNames()) {
                 var cfDescriptor = new ColumnFamilyDescriptor(cfName.getBytes(StandardCharsets.UTF_8));
                 cfDescriptor.getOptions().useCappedPrefixExtractor(56);
+                if (mergeColumnFamilies.contains(cfName))
+                    cfDescriptor.getOptions().setMergeOperator(mergeOperator);
                 cfDescriptors.add(cfDescriptor);
                 cfDescriptor.getOptions().setTableFormatConfig(tableConfig);
             }
@@ -85,6 +111,9 @@ public class RocksDBConfig {
         if (db != null) {
             db.close();
         }
+
+        if (mergeOperator != null)
+            mergeOperator.close();
     }
 
     public RocksDB getRocksDB() {
@@ -95,6 +124,15 @@ public class RocksDBConfig {
         return columnFamilyHandles.get(name);
     }
 
+    /**
+     * Check if the merge operator for bitmap merge writes is installed on a column family
+     *
+     * @param columnFamily column family name or null for the default column family
+     */
+    public boolean hasMergeOperator(String columnFamily) {
+        return mergeColumnFamilies.contains(columnFamily != null ? columnFamily : DEFAULT_COLUMN_FAMILY);
+    }
+
     public void setKeySerializer(Serializer serializer) {
         if (keySerializer != null)
             throw new IllegalStateException("Key serializer is already set");
@@ -120,4 +158,111 @@ public class RocksDBConfig {
             return new MessagePackSerializer();
         return valueSerializer;
     }
+
+    /**
+     * Set the max number of namespace metadata entries cached by each collection instance.
+     * Set to 0 to disable the metadata cache.
+     *
+     * @param metadataCacheSize max no of cached metadata entries per collection instance
+     */
+    public void setMetadataCacheSize(int metadataCacheSize) {
+        if (metadataCacheSize < 0)
+            throw new IllegalArgumentException("Metadata cache size can't be negative");
+
+        this.metadataCacheSize = metadataCacheSize;
+    }
+
+    public int getMetadataCacheSize() {
+        return metadataCacheSize;
+    }
+
+    /**
+     * Read and write collection values through pooled direct ByteBuffers instead of on-heap byte arrays.
+     * This avoids a copy across JNI and the garbage of short lived value arrays, which helps with large values.
+     *
+     * @param directBufferIO true to enable direct buffer I/O
+     */
+    public void setDirectBufferIO(boolean directBufferIO) {
+        this.directBufferIO = directBufferIO;
+    }
+
+    public boolean isDirectBufferIO() {
+        return directBufferIO;
+    }
+
+    /**
+     * Write bitmap bit changes as merge operands appended to the fragment instead of reading, updating and rewriting
+     * the whole fragment. Bit changes become blind writes, which are much cheaper, and concurrent direct setBit /
+     * clearBit calls don't lose updates. Pending changes are applied when a fragment is read and can be folded into
+     * the fragment with {@link com.bloxbean.rocks.types.collection.RocksMultiBitmap#compact(byte[])}.
+     * <p>
+     * The column families of the bitmaps must be listed in {@link RocksDBProperties#setMergeColumnFamilies(String)},
+     * as the merge operator is installed when the database is opened.
+     * <p>
+     * Takes effect for bitmaps created after this is set.
+     *
+     * @param bitmapMergeWrites true to enable merge writes for bitmaps
+     */
+    public void setBitmapMergeWrites(boolean bitmapMergeWrites) {
+        this.bitmapMergeWrites = bitmapMergeWrites;
+    }
+
+    public boolean isBitmapMergeWrites() {
+        return bitmapMergeWrites;
+    }
+
+    /**
+     * Executor to combine bitmap fragments in parallel in and / or / xor / andNot of
+     * {@link com.bloxbean.rocks.types.collection.RocksMultiBitmap}. Tasks read and write RocksDB, so use an executor
+     * sized for blocking I/O. Without an executor, bitmaps are combined in the calling thread.
+     * <p>
+     * Takes effect for bitmaps created after this is set.
+     *
+     * @param bitmapOperationExecutor executor or null to combine in the calling thread
+     */
+    public void setBitmapOperationExecutor(Executor bitmapOperationExecutor) {
+        this.bitmapOperationExecutor = bitmapOperationExecutor;
+    }
+
+    public Executor getBitmapOperationExecutor() {
+        return bitmapOperationExecutor;
+    }
+
+    /**
+     * Keep an in-memory summary of the non-empty fragments of recently navigated bitmaps in each
+     * {@link com.bloxbean.rocks.types.collection.RocksMultiBitmap} instance, so nextSetBit / previousSetBit skip empty
+     * fragments without seeking over the fragment keys. The number of summaries is bounded by the metadata cache size.
+     * <p>
+     * A summary is only updated by writes through the same instance. Enable this only if all writes to the bitmaps
+     * go through one instance, or call clearFragmentSummaries() after writes through other instances or processes.
+     * Otherwise navigation can miss bits in fragments created elsewhere.
+     * <p>
+     * Takes effect for bitmaps created after this is set.
+     *
+     * @param bitmapFragmentSummaries true to enable fragment summaries for bitmaps
+     */
+    public void setBitmapFragmentSummaries(boolean bitmapFragmentSummaries) {
+        this.bitmapFragmentSummaries = bitmapFragmentSummaries;
+    }
+
+    public boolean isBitmapFragmentSummaries() {
+        return bitmapFragmentSummaries;
+    }
+
+    /**
+     * Track the number of entries of maps and sets in their metadata, so size() doesn't need to scan the collection.
+     * Every put, add and remove checks if the key exists and rewrites the metadata in the same WriteBatch, which
+     * adds a key lookup to each write.
+     * <p>
+     * Takes effect for maps and sets created after this is set. Namespaces created before are still counted by a scan.
+     *
+     * @param sizeTracking true to track sizes of maps and sets
+     */
+    public void setSizeTracking(boolean sizeTracking) {
+        this.sizeTracking = sizeTracking;
+    }
+
+    public boolean isSizeTracking() {
+        return sizeTracking;
+    }
 }
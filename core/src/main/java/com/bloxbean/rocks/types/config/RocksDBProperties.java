@@ -3,17 +3,27 @@ package com.bloxbean.rocks.types.config;
 import lombok.Data;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 @Data
 public class RocksDBProperties {
     private String columnFamilies;
     private String rocksDBBaseDir;
+    //Comma separated column families which get the merge operator needed by bitmap merge writes. "default" is the
+    //default column family
+    private String mergeColumnFamilies;
 
     public List<String> getColumnFamilyNames() {
         return Arrays.asList(columnFamilies.split(","));
     }
 
+    public List<String> getMergeColumnFamilyNames() {
+        if (mergeColumnFamilies == null || mergeColumnFamilies.isBlank())
+            return Collections.emptyList();
+        return Arrays.asList(mergeColumnFamilies.split(","));
+    }
+
     public String getRocksDBBaseDir() {
         return rocksDBBaseDir;
     }
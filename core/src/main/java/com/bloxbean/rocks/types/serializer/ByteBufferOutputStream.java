@@ -0,0 +1,40 @@
+package com.bloxbean.rocks.types.serializer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * OutputStream writing into a {@link ByteBuffer}. Fails with an IOException and marks overflow instead of growing
+ * when the buffer is full.
+ */
+class ByteBufferOutputStream extends OutputStream {
+    private final ByteBuffer buffer;
+    private boolean overflow;
+
+    ByteBufferOutputStream(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!buffer.hasRemaining()) {
+            overflow = true;
+            throw new IOException("Buffer overflow");
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        if (buffer.remaining() < length) {
+            overflow = true;
+            throw new IOException("Buffer overflow");
+        }
+        buffer.put(bytes, offset, length);
+    }
+
+    boolean isOverflow() {
+        return overflow;
+    }
+}
@@ -4,6 +4,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.SneakyThrows;
 import org.msgpack.jackson.dataformat.MessagePackMapper;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 public class MessagePackSerializer implements Serializer {
@@ -32,4 +33,39 @@ public class MessagePackSerializer implements Serializer {
             return objectMapper.readValue(bytes, clazz);
         }
     }
+
+    @SneakyThrows
+    @Override
+    public boolean serialize(Object obj, ByteBuffer buffer) {
+        if (obj instanceof String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > buffer.remaining())
+                return false;
+            buffer.put(bytes);
+            return true;
+        }
+
+        int start = buffer.position();
+        var outputStream = new ByteBufferOutputStream(buffer);
+        try {
+            objectMapper.writeValue(outputStream, obj);
+            return true;
+        } catch (Exception e) {
+            if (outputStream.isOverflow()) {
+                buffer.position(start);
+                return false;
+            }
+            throw e;
+        }
+    }
+
+    @SneakyThrows
+    @Override
+    public <T> T deserialize(ByteBuffer buffer, Class<T> clazz) {
+        if (clazz == String.class) {
+            return (T) StandardCharsets.UTF_8.decode(buffer).toString();
+        } else {
+            return objectMapper.readValue(new ByteBufferInputStream(buffer), clazz);
+        }
+    }
 }
@@ -1,6 +1,38 @@
 package com.bloxbean.rocks.types.serializer;
 
+import java.nio.ByteBuffer;
+
 public interface Serializer {
     byte[] serialize(Object obj);
     <T> T deserialize(byte[] bytes, Class<T> clazz  );
+
+    /**
+     * Serialize into the buffer starting at its position. Used by the direct buffer I/O mode.
+     *
+     * @param obj    object to serialize
+     * @param buffer target buffer
+     * @return true if the object was written, false if the buffer doesn't have enough space.
+     * The buffer's position is not changed in that case.
+     */
+    default boolean serialize(Object obj, ByteBuffer buffer) {
+        byte[] bytes = serialize(obj);
+        if (bytes.length > buffer.remaining())
+            return false;
+
+        buffer.put(bytes);
+        return true;
+    }
+
+    /**
+     * Deserialize the remaining bytes of the buffer. Used by the direct buffer I/O mode.
+     *
+     * @param buffer source buffer
+     * @param clazz  target type
+     * @return deserialized object
+     */
+    default <T> T deserialize(ByteBuffer buffer, Class<T> clazz) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return deserialize(bytes, clazz);
+    }
 }
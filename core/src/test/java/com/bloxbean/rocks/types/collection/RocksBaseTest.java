@@ -18,6 +18,7 @@ public class RocksBaseTest {
         rocksDBProperties = new RocksDBProperties();
         rocksDBProperties.setRocksDBBaseDir(getDbDir());
         rocksDBProperties.setColumnFamilies(getColumnFamilies());
+        rocksDBProperties.setMergeColumnFamilies(getMergeColumnFamilies());
 
         rocksDBConfig = new RocksDBConfig(rocksDBProperties);
     }
@@ -39,6 +40,10 @@ public class RocksBaseTest {
         return "test1,test2";
     }
 
+    public String getMergeColumnFamilies() {
+        return null;
+    }
+
     public boolean deleteDirectory(File directoryToBeDeleted) {
         File[] allContents = directoryToBeDeleted.listFiles();
         if (allContents != null) {
@@ -0,0 +1,136 @@
+package com.bloxbean.rocks.types.collection;
+
+import org.junit.jupiter.api.Test;
+import org.roaringbitmap.longlong.Roaring64NavigableMap;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RocksMultiBitmap64Test extends RocksBaseTest {
+
+    private byte[] ns = "ns1".getBytes();
+    private byte[] ns2 = "ns2".getBytes();
+
+    private static final long BIG = 1L << 40;
+
+    @Test
+    void setBit_getBit_clearBit() {
+        var bitmap = new RocksMultiBitmap64(rocksDBConfig, "test-bitmap64");
+        bitmap.setBit(ns, 1);
+        bitmap.setBit(ns, 70000);
+        bitmap.setBit(ns, BIG);
+        bitmap.setBit(ns, Long.MAX_VALUE);
+        bitmap.setBit(ns2, 5);
+
+        assertThat(bitmap.getBit(ns, 1)).isTrue();
+        assertThat(bitmap.getBit(ns, 70000)).isTrue();
+        assertThat(bitmap.getBit(ns, BIG)).isTrue();
+        assertThat(bitmap.getBit(ns, Long.MAX_VALUE)).isTrue();
+        assertThat(bitmap.getBit(ns, BIG + 1)).isFalse();
+        assertThat(bitmap.getBit(ns, 5)).isFalse();
+        assertThat(bitmap.getBit(ns2, 5)).isTrue();
+        assertThat(bitmap.cardinality(ns)).isEqualTo(4);
+
+        bitmap.clearBit(ns, BIG);
+        bitmap.clearBit(ns, BIG + 1);
+        assertThat(bitmap.getBit(ns, BIG)).isFalse();
+        assertThat(bitmap.cardinality(ns)).isEqualTo(3);
+        assertThat(bitmap.getAllBits(ns)).isEqualTo(Roaring64NavigableMap.bitmapOf(1, 70000, Long.MAX_VALUE));
+
+        assertThrows(IllegalArgumentException.class, () -> bitmap.setBit(ns, -1));
+    }
+
+    @Test
+    void setBitBatch_clearBitBatch() throws Exception {
+        var bitmap = new RocksMultiBitmap64(rocksDBConfig, "test-bitmap64", 1000);
+        var writeBatch = new WriteBatch();
+        bitmap.setBitBatch(ns, writeBatch, 3, 999, 1000, BIG, BIG + 7);
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+
+        assertThat(bitmap.getAllBits(ns)).isEqualTo(Roaring64NavigableMap.bitmapOf(3, 999, 1000, BIG, BIG + 7));
+        assertThat(bitmap.cardinality(ns)).isEqualTo(5);
+
+        writeBatch = new WriteBatch();
+        bitmap.clearBitBatch(ns, writeBatch, 999, 1000, BIG + 7, BIG * 2);
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+
+        assertThat(bitmap.getAllBits(ns)).isEqualTo(Roaring64NavigableMap.bitmapOf(3, BIG));
+        assertThat(bitmap.cardinality(ns)).isEqualTo(2);
+
+        //fragment of 1000 is empty now and deleted
+        var offsets = new ArrayList<Long>();
+        try (var fragments = bitmap.fragmentIterator(ns)) {
+            while (fragments.hasNext()) {
+                offsets.add(fragments.next()._1);
+            }
+        }
+        assertThat(offsets).isEqualTo(List.of(0L, BIG / 1000 * 1000));
+    }
+
+    @Test
+    void nextSetBit_previousSetBit() {
+        var bitmap = new RocksMultiBitmap64(rocksDBConfig, "test-bitmap64");
+        bitmap.setBit(ns, 10);
+        bitmap.setBit(ns, BIG);
+        bitmap.setBit(ns, BIG + 100000);
+
+        assertThat(bitmap.nextSetBit(ns, 0)).isEqualTo(10);
+        assertThat(bitmap.nextSetBit(ns, 10)).isEqualTo(10);
+        assertThat(bitmap.nextSetBit(ns, 11)).isEqualTo(BIG);
+        assertThat(bitmap.nextSetBit(ns, BIG + 1)).isEqualTo(BIG + 100000);
+        assertThat(bitmap.nextSetBit(ns, BIG + 100001)).isEqualTo(-1);
+
+        assertThat(bitmap.previousSetBit(ns, Long.MAX_VALUE)).isEqualTo(BIG + 100000);
+        assertThat(bitmap.previousSetBit(ns, BIG + 99999)).isEqualTo(BIG);
+        assertThat(bitmap.previousSetBit(ns, BIG - 1)).isEqualTo(10);
+        assertThat(bitmap.previousSetBit(ns, 9)).isEqualTo(-1);
+
+        assertThat(bitmap.nextSetBit(ns2, 0)).isEqualTo(-1);
+        assertThat(bitmap.previousSetBit(ns2, 100)).isEqualTo(-1);
+    }
+
+    @Test
+    void nextClearBit_previousClearBit() {
+        var bitmap = new RocksMultiBitmap64(rocksDBConfig, "test-bitmap64", 100);
+        var bits = new Roaring64NavigableMap();
+        bits.addRange(BIG, BIG + 300); //three full fragments
+        bits.addLong(5);
+        bitmap.setBitBatch(ns, null, bits);
+
+        assertThat(bitmap.nextClearBit(ns, 5)).isEqualTo(6);
+        assertThat(bitmap.nextClearBit(ns, 7)).isEqualTo(7);
+        assertThat(bitmap.nextClearBit(ns, BIG)).isEqualTo(BIG + 300);
+        assertThat(bitmap.nextClearBit(ns, BIG + 150)).isEqualTo(BIG + 300);
+
+        assertThat(bitmap.previousClearBit(ns, BIG + 299)).isEqualTo(BIG - 1);
+        assertThat(bitmap.previousClearBit(ns, 5)).isEqualTo(4);
+        assertThat(bitmap.previousClearBit(ns, 4)).isEqualTo(4);
+
+        bitmap.setBitBatch(ns2, null, 0, 1, 2);
+        assertThat(bitmap.previousClearBit(ns2, 2)).isEqualTo(-1);
+        assertThat(bitmap.nextClearBit(ns2, 0)).isEqualTo(3);
+    }
+
+    @Test
+    void bitIterator_getBits() throws Exception {
+        var bitmap = new RocksMultiBitmap64(rocksDBConfig, "test-bitmap64");
+        bitmap.setBitBatch(ns, null, 1, 2, 65536, BIG, BIG + 1);
+
+        var bits = new ArrayList<Long>();
+        try (var iterator = bitmap.bitIterator(ns)) {
+            while (iterator.hasNext()) {
+                bits.add(iterator.next());
+            }
+        }
+        assertThat(bits).isEqualTo(List.of(1L, 2L, 65536L, BIG, BIG + 1));
+
+        assertThat(bitmap.getBits(ns, 1, 1)).isEqualTo(Roaring64NavigableMap.bitmapOf(65536));
+        assertThat(bitmap.getBits(ns, 2, Long.MAX_VALUE)).isEqualTo(Roaring64NavigableMap.bitmapOf(BIG, BIG + 1));
+        assertThat(bitmap.getAllBits(ns2).isEmpty()).isTrue();
+    }
+}
@@ -1,16 +1,30 @@
 package com.bloxbean.rocks.types.collection;
 
+import com.bloxbean.rocks.types.common.KeyBuilder;
+import com.bloxbean.rocks.types.common.Tuple;
 import org.junit.jupiter.api.Test;
 import org.roaringbitmap.RoaringBitmap;
 import org.rocksdb.WriteBatch;
 import org.rocksdb.WriteOptions;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class RocksMultiBitmapTest extends RocksBaseTest {
 
     private byte[] ns = "ns1".getBytes();
 
+    @Override
+    public String getMergeColumnFamilies() {
+        return "default,test1";
+    }
+
     @Test
     void setBit() {
         for (int i=0; i < 100; i++) {
@@ -313,4 +327,453 @@ class RocksMultiBitmapTest extends RocksBaseTest {
             assertThat(index8).isEqualTo(0);
         }
     }
+
+    @Test
+    void setBit_clearBit_mergeWrites() throws Exception {
+        var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test1", "test-bitmap", 30);
+        rocksBitMap.setBit(ns, 1);
+        rocksBitMap.setBit(ns, 50);
+
+        rocksDBConfig.setBitmapMergeWrites(true);
+        rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test1", "test-bitmap", 30);
+        rocksBitMap.setBit(ns, 99);
+        rocksBitMap.setBit(ns, 250);
+        rocksBitMap.clearBit(ns, 50);
+        rocksBitMap.clearBit(ns, 1000);
+
+        var writeBatch = new WriteBatch();
+        rocksBitMap.setBitBatch(ns, writeBatch, 101, 102, 103);
+        rocksBitMap.clearBitBatch(ns, writeBatch, 102, 250);
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+
+        RoaringBitmap expected = RoaringBitmap.bitmapOf(1, 99, 101, 103);
+        assertThat(rocksBitMap.getAllBits(ns)).isEqualTo(expected);
+        assertThat(rocksBitMap.getBit(ns, 50)).isFalse();
+        assertThat(rocksBitMap.nextSetBit(ns, 2)).isEqualTo(99);
+
+        rocksBitMap.compact(ns);
+        assertThat(rocksBitMap.getAllBits(ns)).isEqualTo(expected);
+
+        rocksBitMap.setBit(ns, 50);
+        assertThat(rocksBitMap.getBit(ns, 50)).isTrue();
+    }
+
+    @Test
+    void mergeWrites_withoutMergeOperator() {
+        rocksDBConfig.setBitmapMergeWrites(true);
+        assertThrows(IllegalStateException.class, () -> new RocksMultiBitmap(rocksDBConfig, "test2", "test-bitmap"));
+    }
+
+    @Test
+    void mergeWrites_concurrentWriters() throws Exception {
+        rocksDBConfig.setBitmapMergeWrites(true);
+        int nThreads = 4;
+        int bitsPerThread = 500;
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < nThreads; t++) {
+                int thread = t;
+                //Each writer has its own instance and metadata cache
+                var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test1", "test-bitmap", 10);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < bitsPerThread; i++)
+                        rocksBitMap.setBit(ns, i * nThreads + thread);
+                }));
+            }
+            for (var future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test1", "test-bitmap", 10);
+        int totalBits = nThreads * bitsPerThread;
+        assertThat(rocksBitMap.getAllBits(ns).getLongCardinality()).isEqualTo(totalBits);
+        assertThat(rocksBitMap.previousSetBit(ns, totalBits * 2)).isEqualTo(totalBits - 1);
+
+        rocksBitMap.compact(ns);
+        assertThat(rocksBitMap.cardinality(ns)).isEqualTo(totalBits);
+    }
+
+    @Test
+    void setBitBatch_sameFragment() throws Exception {
+        var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 100);
+        rocksBitMap.setBit(ns, 5);
+
+        var writeBatch = new WriteBatch();
+        rocksBitMap.setBitBatch(ns, writeBatch, 1, 2, 3, 150, 151, 999);
+        rocksBitMap.clearBitBatch(ns, writeBatch, RoaringBitmap.bitmapOf(5, 5000));
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+
+        assertThat(rocksBitMap.getAllBits(ns)).isEqualTo(RoaringBitmap.bitmapOf(1, 2, 3, 150, 151, 999));
+
+        var bits = RoaringBitmap.bitmapOfRange(0, 1000);
+        writeBatch = new WriteBatch();
+        rocksBitMap.setBitBatch(ns, writeBatch, bits);
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+
+        assertThat(rocksBitMap.getAllBits(ns)).isEqualTo(bits);
+
+        writeBatch = new WriteBatch();
+        rocksBitMap.clearBitBatch(ns, writeBatch, RoaringBitmap.bitmapOfRange(100, 900));
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+
+        var expected = RoaringBitmap.bitmapOfRange(0, 100);
+        expected.add(900L, 1000L);
+        assertThat(rocksBitMap.getAllBits(ns)).isEqualTo(expected);
+    }
+
+    @Test
+    void fragmentIterator_bitIterator() throws Exception {
+        var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 100);
+        rocksBitMap.setBit(ns, 5);
+        rocksBitMap.setBit(ns, 120);
+        rocksBitMap.setBit(ns, 121);
+        rocksBitMap.setBit(ns, 5000);
+        rocksBitMap.setBit(ns, 5001);
+        rocksBitMap.clearBit(ns, 5);
+
+        var fragments = new ArrayList<Tuple<Long, RoaringBitmap>>();
+        try (var iterator = rocksBitMap.fragmentIterator(ns)) {
+            while (iterator.hasNext()) {
+                fragments.add(iterator.next());
+            }
+        }
+
+        assertThat(fragments.size()).isEqualTo(3);
+        assertThat(fragments.get(1)).isEqualTo(new Tuple<>(100L, RoaringBitmap.bitmapOf(20, 21)));
+        assertThat(fragments.get(2)).isEqualTo(new Tuple<>(5000L, RoaringBitmap.bitmapOf(0, 1)));
+
+        var bits = new ArrayList<Integer>();
+        try (var iterator = rocksBitMap.bitIterator(ns)) {
+            while (iterator.hasNext()) {
+                bits.add(iterator.next());
+            }
+        }
+        assertThat(bits).isEqualTo(List.of(120, 121, 5000, 5001));
+
+        assertThat(rocksBitMap.getBits(ns, 1, 49)).isEqualTo(RoaringBitmap.bitmapOf(120, 121));
+        assertThat(rocksBitMap.getAllBits(ns)).isEqualTo(RoaringBitmap.bitmapOf(120, 121, 5000, 5001));
+    }
+
+    @Test
+    void and_or_xor_andNot() {
+        byte[] ns2 = "ns2".getBytes();
+        byte[] target = "target".getBytes();
+        var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 100);
+
+        var bits1 = RoaringBitmap.bitmapOfRange(0, 5000);
+        bits1.add(2_000_000);
+        var bits2 = RoaringBitmap.bitmapOfRange(4000, 300_000);
+        var writeBatch = new WriteBatch();
+        rocksBitMap.setBitBatch(ns, writeBatch, bits1);
+        rocksBitMap.setBitBatch(ns2, writeBatch, bits2);
+        rocksBitMap.setBitBatch(target, writeBatch, 1, 7_000_000);
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+
+        assertThat(rocksBitMap.cardinality(ns)).isEqualTo(bits1.getLongCardinality());
+
+        assertThat(rocksBitMap.and(target, ns, ns2)).isEqualTo(1000L);
+        assertThat(rocksBitMap.getAllBits(target)).isEqualTo(RoaringBitmap.and(bits1, bits2));
+        assertThat(rocksBitMap.getBit(target, 7_000_000)).isFalse();
+
+        assertThat(rocksBitMap.or(target, ns, ns2)).isEqualTo(RoaringBitmap.or(bits1, bits2).getLongCardinality());
+        assertThat(rocksBitMap.getAllBits(target)).isEqualTo(RoaringBitmap.or(bits1, bits2));
+
+        rocksBitMap.xor(target, ns, ns2);
+        assertThat(rocksBitMap.getAllBits(target)).isEqualTo(RoaringBitmap.xor(bits1, bits2));
+
+        rocksBitMap.andNot(target, target, ns2);
+        assertThat(rocksBitMap.getAllBits(target)).isEqualTo(RoaringBitmap.andNot(bits1, bits2));
+        assertThat(rocksBitMap.cardinality(target)).isEqualTo(4001L);
+
+        rocksBitMap.and(target, ns, "unknown".getBytes());
+        assertThat(rocksBitMap.cardinality(target)).isEqualTo(0L);
+    }
+
+    @Test
+    void or_withExecutor() throws Exception {
+        byte[] ns2 = "ns2".getBytes();
+        byte[] target = "target".getBytes();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            rocksDBConfig.setBitmapOperationExecutor(executor);
+            var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 10);
+
+            var bits1 = RoaringBitmap.bitmapOfRange(0, 50_000);
+            var bits2 = RoaringBitmap.bitmapOfRange(40_000, 100_000);
+            var writeBatch = new WriteBatch();
+            rocksBitMap.setBitBatch(ns, writeBatch, bits1);
+            rocksBitMap.setBitBatch(ns2, writeBatch, bits2);
+            rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+
+            assertThat(rocksBitMap.or(target, ns, ns2)).isEqualTo(100_000L);
+            assertThat(rocksBitMap.getAllBits(target)).isEqualTo(RoaringBitmap.or(bits1, bits2));
+
+            //metadata of the result stays cached
+            long hits = rocksBitMap.getMetadataCacheHits();
+            assertThat(rocksBitMap.cardinality(target)).isEqualTo(100_000L);
+            assertThat(rocksBitMap.getMetadataCacheHits()).isGreaterThan(hits);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void removeStaleVersions() throws Exception {
+        var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 100);
+        rocksBitMap.setBit(ns, 5);
+        rocksBitMap.setBit(ns, 150);
+
+        //Fragment of a newer version left by an operation which didn't complete
+        long version = rocksBitMap.getMetadata(ns).orElseThrow().getVersion();
+        byte[] staleKey = KeyBuilder.appendToKey(rocksBitMap.getKeyPrefix(ns, version + 1), KeyBuilder.intToBytes(0));
+        rocksDBConfig.getRocksDB().put(staleKey, new byte[]{1});
+
+        rocksBitMap.removeStaleVersions(ns);
+
+        assertThat(rocksDBConfig.getRocksDB().get(staleKey)).isNull();
+        assertThat(rocksBitMap.getAllBits(ns)).isEqualTo(RoaringBitmap.bitmapOf(5, 150));
+        assertThat(rocksBitMap.cardinality(ns)).isEqualTo(2L);
+
+        assertThrows(IllegalArgumentException.class, () -> rocksBitMap.removeStaleVersions(null));
+    }
+
+    @Test
+    void cardinality_rank_select() throws Exception {
+        var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 100);
+        rocksBitMap.setBit(ns, 5);
+        rocksBitMap.setBit(ns, 5);
+        rocksBitMap.setBit(ns, 150);
+        var writeBatch = new WriteBatch();
+        rocksBitMap.setBitBatch(ns, writeBatch, RoaringBitmap.bitmapOfRange(1000, 1500));
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+        rocksBitMap.clearBit(ns, 1499);
+        rocksBitMap.clearBit(ns, 7);
+
+        assertThat(rocksBitMap.cardinality(ns)).isEqualTo(501L);
+        assertThat(rocksBitMap.rank(ns, 4)).isEqualTo(0L);
+        assertThat(rocksBitMap.rank(ns, 5)).isEqualTo(1L);
+        assertThat(rocksBitMap.rank(ns, 999)).isEqualTo(2L);
+        assertThat(rocksBitMap.rank(ns, 1099)).isEqualTo(102L);
+        assertThat(rocksBitMap.select(ns, 0)).isEqualTo(5L);
+        assertThat(rocksBitMap.select(ns, 1)).isEqualTo(150L);
+        assertThat(rocksBitMap.select(ns, 2)).isEqualTo(1000L);
+        assertThat(rocksBitMap.select(ns, 500)).isEqualTo(1498L);
+        assertThat(rocksBitMap.select(ns, 501)).isEqualTo(-1L);
+
+        rocksDBConfig.setBitmapMergeWrites(true);
+        var mergeBitmap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 100);
+        mergeBitmap.setBit(ns, 6);
+        mergeBitmap.clearBit(ns, 150);
+
+        assertThat(mergeBitmap.cardinality(ns)).isEqualTo(501L);
+        assertThat(mergeBitmap.rank(ns, 999)).isEqualTo(2L);
+        assertThat(mergeBitmap.select(ns, 1)).isEqualTo(6L);
+
+        mergeBitmap.compact(ns);
+        assertThat(mergeBitmap.cardinality(ns)).isEqualTo(501L);
+        assertThat(mergeBitmap.select(ns, 2)).isEqualTo(1000L);
+        assertThat(mergeBitmap.rank(ns, 1000)).isEqualTo(3L);
+    }
+
+    @Test
+    void rank_afterDeleteAndCompact() {
+        var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 100);
+        rocksBitMap.setBit(ns, 5);
+        rocksBitMap.setBit(ns, 150);
+        rocksBitMap.setBit(ns, 250);
+
+        //Cardinality becomes unknown, so deleting fragment 1 doesn't update the cardinality index
+        rocksDBConfig.setBitmapMergeWrites(true);
+        var mergeBitmap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 100);
+        mergeBitmap.setBit(ns, 300);
+        mergeBitmap.clearRange(ns, 100, 200);
+
+        mergeBitmap.compact(ns);
+
+        assertThat(mergeBitmap.cardinality(ns)).isEqualTo(3L);
+        assertThat(mergeBitmap.rank(ns, 299)).isEqualTo(2L);
+        assertThat(mergeBitmap.rank(ns, 300)).isEqualTo(3L);
+        assertThat(mergeBitmap.select(ns, 1)).isEqualTo(250L);
+    }
+
+    @Test
+    void select_countWithoutFragment() throws Exception {
+        var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 100);
+        rocksBitMap.setBit(ns, 5);
+        rocksBitMap.setBit(ns, 150);
+        rocksBitMap.setBit(ns, 250);
+
+        //fragment 1 is gone, its count entry is left
+        long version = rocksBitMap.getMetadata(ns).orElseThrow().getVersion();
+        rocksDBConfig.getRocksDB().delete(
+                KeyBuilder.appendToKey(rocksBitMap.getKeyPrefix(ns, version), KeyBuilder.intToBytes(1)));
+
+        assertThat(rocksBitMap.select(ns, 0)).isEqualTo(5L);
+        assertThat(rocksBitMap.select(ns, 1)).isEqualTo(250L);
+    }
+
+    @Test
+    void columnFamily_defaultFragmentSize() {
+        var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test1", "test-bitmap");
+        rocksBitMap.setBit(ns, 1);
+        rocksBitMap.setBit(ns, 65535);
+        rocksBitMap.setBit(ns, 65536);
+        rocksBitMap.setBit(ns, 10_000_000);
+
+        assertThat(rocksBitMap.getAllBits(ns)).isEqualTo(RoaringBitmap.bitmapOf(1, 65535, 65536, 10_000_000));
+        assertThat(rocksBitMap.nextSetBit(ns, 65537)).isEqualTo(10_000_000L);
+    }
+
+    @Test
+    void fragmentSize_fromMetadata() {
+        var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 100);
+        rocksBitMap.setBit(ns, 150);
+
+        //fragment size of an existing namespace comes from metadata
+        var otherBitMap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 30);
+        otherBitMap.setBit(ns, 151);
+        assertThat(otherBitMap.getAllBits(ns)).isEqualTo(RoaringBitmap.bitmapOf(150, 151));
+        assertThat(rocksBitMap.getAllBits(ns)).isEqualTo(RoaringBitmap.bitmapOf(150, 151));
+    }
+
+    @Test
+    void rechunk() throws Exception {
+        byte[] ns2 = "ns2".getBytes();
+        var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 1000);
+        var bits = RoaringBitmap.bitmapOfRange(500, 70_000);
+        bits.add(5_000_000);
+        var writeBatch = new WriteBatch();
+        rocksBitMap.setBitBatch(ns, writeBatch, bits);
+        rocksBitMap.setBitBatch(ns2, writeBatch, 1, 2);
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+
+        rocksBitMap.rechunk(ns, 65536);
+
+        assertThat(rocksBitMap.getAllBits(ns)).isEqualTo(bits);
+        assertThat(rocksBitMap.cardinality(ns)).isEqualTo(bits.getLongCardinality());
+        assertThat(rocksBitMap.getBit(ns, 65536)).isTrue();
+        assertThat(rocksBitMap.select(ns, 0)).isEqualTo(500L);
+
+        var fragments = 0;
+        try (var iterator = rocksBitMap.fragmentIterator(ns)) {
+            while (iterator.hasNext()) {
+                iterator.next();
+                fragments++;
+            }
+        }
+        assertThat(fragments).isEqualTo(3);
+
+        byte[] target = "target".getBytes();
+        assertThrows(IllegalArgumentException.class,
+                () -> rocksBitMap.or(target, ns, ns2));
+
+        rocksBitMap.rechunk(ns2, 65536);
+        rocksBitMap.or(target, ns, ns2);
+        assertThat(rocksBitMap.cardinality(target)).isEqualTo(bits.getLongCardinality() + 2);
+    }
+
+    @Test
+    void setRange_clearRange_flipRange_countRange() {
+        var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 100);
+        rocksBitMap.setRange(ns, 50, 5_000_050);
+        rocksBitMap.setBit(ns, 6_000_000);
+
+        assertThat(rocksBitMap.cardinality(ns)).isEqualTo(5_000_001L);
+        assertThat(rocksBitMap.countRange(ns, 0, 100)).isEqualTo(50L);
+        assertThat(rocksBitMap.countRange(ns, 0, 7_000_000)).isEqualTo(5_000_001L);
+        assertThat(rocksBitMap.countRange(ns, 5_000_000, 6_000_000)).isEqualTo(50L);
+        assertThat(rocksBitMap.countRange(ns, 120, 130)).isEqualTo(10L);
+
+        rocksBitMap.clearRange(ns, 100, 5_000_000);
+        assertThat(rocksBitMap.cardinality(ns)).isEqualTo(101L);
+        assertThat(rocksBitMap.getBits(ns, 1, 49_999)).isEqualTo(new RoaringBitmap());
+
+        rocksBitMap.flipRange(ns, 0, 200);
+        var expected = RoaringBitmap.bitmapOfRange(0, 50);
+        expected.add(100L, 200L);
+        expected.add(5_000_000L, 5_000_050L);
+        expected.add(6_000_000);
+        assertThat(rocksBitMap.getAllBits(ns)).isEqualTo(expected);
+        assertThat(rocksBitMap.cardinality(ns)).isEqualTo(expected.getLongCardinality());
+        assertThat(rocksBitMap.countRange(ns, 0, 6_000_001)).isEqualTo(expected.getLongCardinality());
+
+        var fragments = 0;
+        try (var iterator = rocksBitMap.fragmentIterator(ns)) {
+            while (iterator.hasNext()) {
+                iterator.next();
+                fragments++;
+            }
+        }
+        assertThat(fragments).isEqualTo(4);
+    }
+
+    @Test
+    void nextSetBit_previousSetBit_sparse() throws Exception {
+        rocksDBConfig.setBitmapFragmentSummaries(true);
+        var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 10);
+        rocksBitMap.setBit(ns, 5);
+        rocksBitMap.setBit(ns, 1_000_000_005);
+
+        assertThat(rocksBitMap.nextSetBit(ns, 6)).isEqualTo(1_000_000_005L);
+        assertThat(rocksBitMap.previousSetBit(ns, 1_000_000_004)).isEqualTo(5L);
+        assertThat(rocksBitMap.nextSetBit(ns, 1_000_000_006)).isEqualTo(-1L);
+
+        //summary is loaded. Bits written in a batch are found once the batch is written
+        var writeBatch = new WriteBatch();
+        rocksBitMap.setBitBatch(ns, writeBatch, 500_000_000);
+        assertThat(rocksBitMap.nextSetBit(ns, 6)).isEqualTo(1_000_000_005L);
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+        assertThat(rocksBitMap.nextSetBit(ns, 6)).isEqualTo(500_000_000L);
+        assertThat(rocksBitMap.previousSetBit(ns, 999_999_999)).isEqualTo(500_000_000L);
+
+        rocksBitMap.clearBit(ns, 500_000_000);
+        assertThat(rocksBitMap.nextSetBit(ns, 6)).isEqualTo(1_000_000_005L);
+
+        //iterator based navigation without summaries
+        rocksDBConfig.setBitmapFragmentSummaries(false);
+        var noSummaryBitMap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 10);
+        assertThat(noSummaryBitMap.nextSetBit(ns, 0)).isEqualTo(5L);
+        assertThat(noSummaryBitMap.nextSetBit(ns, 6)).isEqualTo(1_000_000_005L);
+        assertThat(noSummaryBitMap.previousSetBit(ns, 1_000_000_004)).isEqualTo(5L);
+        assertThat(noSummaryBitMap.previousSetBit(ns, 4)).isEqualTo(-1L);
+        assertThat(noSummaryBitMap.previousSetBit(ns, 2_000_000_000)).isEqualTo(1_000_000_005L);
+    }
+
+    @Test
+    void nextSetBit_fragmentSummary_concurrentWriters() throws Exception {
+        rocksDBConfig.setBitmapFragmentSummaries(true);
+        rocksDBConfig.setBitmapMergeWrites(true); //concurrent setBit calls need merge writes
+        var rocksBitMap = new RocksMultiBitmap(rocksDBConfig, "test-bitmap", 10);
+        rocksBitMap.setBit(ns, 0);
+        assertThat(rocksBitMap.nextSetBit(ns, 0)).isEqualTo(0L); //load the summary
+
+        int nThreads = 4;
+        int bitsPerThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(nThreads);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < nThreads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 1; i <= bitsPerThread; i++) {
+                        int bitIndex = (i * nThreads + thread) * 100;
+                        rocksBitMap.setBit(ns, bitIndex);
+                        assertThat(rocksBitMap.nextSetBit(ns, bitIndex)).isEqualTo(bitIndex);
+                    }
+                }));
+            }
+            for (var future : futures)
+                future.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        int found = 0;
+        for (long bit = rocksBitMap.nextSetBit(ns, 1); bit != -1; bit = rocksBitMap.nextSetBit(ns, (int) bit + 1))
+            found++;
+        assertThat(found).isEqualTo(nThreads * bitsPerThread);
+    }
 }
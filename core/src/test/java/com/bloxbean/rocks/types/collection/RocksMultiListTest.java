@@ -1,5 +1,9 @@
 package com.bloxbean.rocks.types.collection;
 
+import com.bloxbean.rocks.types.collection.metadata.ListMetadata;
+import com.bloxbean.rocks.types.collection.metadata.MetadataCodec;
+import com.bloxbean.rocks.types.common.KeyBuilder;
+import com.bloxbean.rocks.types.serializer.MessagePackSerializer;
 import org.junit.jupiter.api.Test;
 import org.rocksdb.WriteBatch;
 import org.rocksdb.WriteOptions;
@@ -96,4 +100,86 @@ class RocksMultiListTest extends RocksBaseTest {
         assertThat(list.get(ns,3).value()).isEqualTo(4);
     }
 
+    @Test
+    void size_afterBatchWrite_cachedMetadataRefreshed() throws Exception {
+        var list = new RocksMultiList<String>(rocksDBConfig, "list-cf", "list1", String.class);
+        list.add(ns, "one");
+        assertEquals(1, list.size(ns));
+
+        try (WriteBatch writeBatch = new WriteBatch()) {
+            list.addBatch(ns, writeBatch, "two", "three");
+            rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+        }
+
+        assertEquals(3, list.size(ns));
+        assertThat(list.get(ns, 2)).isEqualTo("three");
+
+        list.add(ns, "four");
+        assertEquals(4, list.size(ns));
+        assertThat(list.getMetadataCacheHits()).isGreaterThan(0);
+    }
+
+    @Test
+    void size_readBeforeBatchCommit() throws Exception {
+        var list = new RocksMultiList<String>(rocksDBConfig, "list-cf", "list1", String.class);
+        list.add(ns, "one");
+
+        try (WriteBatch writeBatch = new WriteBatch()) {
+            list.addBatch(ns, writeBatch, "two", "three");
+            //read between staging and commit must not cache the old metadata
+            assertEquals(1, list.size(ns));
+            rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+        }
+
+        assertEquals(3, list.size(ns));
+        list.add(ns, "four");
+        assertEquals(4, list.size(ns));
+        assertThat(list.get(ns, 3)).isEqualTo("four");
+    }
+
+    @Test
+    void size_legacyMetadataFormat() throws Exception {
+        var legacyMetadata = new ListMetadata();
+        legacyMetadata.setVersion(System.currentTimeMillis());
+        var cfHandle = rocksDBConfig.getColumnFamilyHandle("list-cf");
+        rocksDBConfig.getRocksDB().put(cfHandle, new KeyBuilder("list1", ns).build(),
+                new MessagePackSerializer().serialize(legacyMetadata));
+
+        var list = new RocksMultiList<String>(rocksDBConfig, "list-cf", "list1", String.class);
+        list.add(ns, "one");
+        list.add(ns, "two");
+        assertEquals(2, list.size(ns));
+
+        var newList = new RocksMultiList<String>(rocksDBConfig, "list-cf", "list1", String.class);
+        assertEquals(2, newList.size(ns));
+        assertThat(newList.get(ns, 1)).isEqualTo("two");
+        assertThat(newList.migrateMetadata(ns)).isFalse();
+    }
+
+    @Test
+    void migrateMetadata() throws Exception {
+        var legacyMetadata = new ListMetadata();
+        legacyMetadata.setVersion(System.currentTimeMillis());
+        var cfHandle = rocksDBConfig.getColumnFamilyHandle("list-cf");
+        byte[] metadataKey = new KeyBuilder("list1", ns).build();
+        rocksDBConfig.getRocksDB().put(cfHandle, metadataKey, new MessagePackSerializer().serialize(legacyMetadata));
+
+        var list = new RocksMultiList<String>(rocksDBConfig, "list-cf", "list1", String.class);
+        assertThat(list.migrateMetadata(ns)).isTrue();
+        assertThat(MetadataCodec.isEncoded(rocksDBConfig.getRocksDB().get(cfHandle, metadataKey))).isTrue();
+        assertEquals(0, list.size(ns));
+    }
+
+    @Test
+    void get_objects_directBufferIO() {
+        rocksDBConfig.setDirectBufferIO(true);
+        var list = new RocksMultiList<RocksListTest.A>(rocksDBConfig, "list-cf", "list1", RocksListTest.A.class);
+        list.add(ns, new RocksListTest.A(1));
+        list.add(ns, new RocksListTest.A(2));
+
+        assertEquals(2, list.size(ns));
+        assertThat(list.get(ns, 0).value()).isEqualTo(1);
+        assertThat(list.get(ns, 1).value()).isEqualTo(2);
+        assertThat(list.get(ns, 2)).isNull();
+    }
 }
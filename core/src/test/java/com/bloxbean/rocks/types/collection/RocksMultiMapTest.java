@@ -1,5 +1,8 @@
 package com.bloxbean.rocks.types.collection;
 
+import com.bloxbean.rocks.types.common.IndexDef;
+import com.bloxbean.rocks.types.common.IndexQuery;
+import com.bloxbean.rocks.types.common.IndexRecord;
 import com.bloxbean.rocks.types.common.Tuple;
 import org.junit.jupiter.api.Test;
 import org.rocksdb.WriteBatch;
@@ -8,6 +11,7 @@ import org.rocksdb.WriteOptions;
 import java.util.*;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class RocksMultiMapTest extends RocksBaseTest {
     byte[] ns = "ns1".getBytes();
@@ -163,4 +167,264 @@ class RocksMultiMapTest extends RocksBaseTest {
         List<String> values = map.multiGet(ns, List.of("key1", "key2", "key3", "key4"));
         assertThat(values).isEqualTo(List.of("value1", "value2", "value3", "value4"));
     }
+
+    @Test
+    void get_metadataCache() {
+        var map = new RocksMultiMap<String, String>(rocksDBConfig, "testMap", String.class, String.class);
+        map.put(ns, "key1", "value1");
+        map.put(ns, "key2", "value2");
+
+        long misses = map.getMetadataCacheMisses();
+        assertThat(map.get(ns, "key1")).isEqualTo(Optional.of("value1"));
+        assertThat(map.get(ns, "key2")).isEqualTo(Optional.of("value2"));
+        assertThat(map.getMetadataCacheMisses()).isEqualTo(misses);
+        assertThat(map.getMetadataCacheHits()).isGreaterThanOrEqualTo(2);
+
+        map.clearMetadataCache();
+        assertThat(map.get(ns, "key1")).isEqualTo(Optional.of("value1"));
+        assertThat(map.getMetadataCacheMisses()).isEqualTo(misses + 1);
+    }
+
+    @Test
+    void put_get_directBufferIO() throws Exception {
+        rocksDBConfig.setDirectBufferIO(true);
+        var map = new RocksMultiMap<String, String>(rocksDBConfig, "testMap", String.class, String.class);
+        String largeValue = "x".repeat(200 * 1024);
+        map.put(ns, "key1", "value1");
+        map.put(ns, "key2", largeValue);
+
+        var writeBatch = new WriteBatch();
+        map.putBatch(ns, writeBatch, new Tuple<>("key3", "value3"));
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+
+        assertThat(map.get(ns, "key1")).isEqualTo(Optional.of("value1"));
+        assertThat(map.get(ns, "key2")).isEqualTo(Optional.of(largeValue));
+        assertThat(map.get(ns, "key3")).isEqualTo(Optional.of("value3"));
+        assertThat(map.get(ns, "key4")).isEqualTo(Optional.empty());
+        assertThat(map.contains(ns, "key2")).isTrue();
+        assertThat(map.contains(ns, "key4")).isFalse();
+    }
+
+    @Test
+    void put_get_objects_directBufferIO() {
+        rocksDBConfig.setDirectBufferIO(true);
+        var map = new RocksMultiMap<String, RocksListTest.A>(rocksDBConfig, "testMap", String.class, RocksListTest.A.class);
+        map.put(ns, "key1", new RocksListTest.A(1));
+        map.put(ns, "key2", new RocksListTest.A(2));
+
+        assertThat(map.get(ns, "key1").get().value()).isEqualTo(1);
+        assertThat(map.get(ns, "key2").get().value()).isEqualTo(2);
+        assertThat(map.multiGet(ns, List.of("key1", "key2")).get(1).value()).isEqualTo(2);
+    }
+
+    @Test
+    void multiGet_entries_directBufferIO() throws Exception {
+        rocksDBConfig.setDirectBufferIO(true);
+        var map = new RocksMultiMap<String, String>(rocksDBConfig, "testMap", String.class, String.class);
+        String largeValue = "x".repeat(100 * 1024);
+        map.put(ns, "key1", "value1");
+        map.put(ns, "key2", largeValue);
+        map.put(ns, "key3", "value3");
+
+        List<String> values = map.multiGet(ns, List.of("key1", "key2", "key5", "key3"));
+        assertThat(values).isEqualTo(Arrays.asList("value1", largeValue, null, "value3"));
+
+        var keys = new ArrayList<String>();
+        for (int i = 0; i < 50; i++) {
+            map.put(ns2, "key" + i, "value" + i);
+            keys.add("key" + i);
+        }
+        values = map.multiGet(ns2, keys);
+        assertThat(values.size()).isEqualTo(50);
+        assertThat(values.get(49)).isEqualTo("value49");
+
+        var iterator = map.entriesIterator(ns);
+        var entries = new ArrayList<>();
+        while (iterator.hasNext()) {
+            entries.add(iterator.next());
+        }
+        iterator.close();
+
+        assertThat(entries).isEqualTo(List.of(Map.entry("key1", "value1"),
+                Map.entry("key2", largeValue),
+                Map.entry("key3", "value3")));
+        assertThat(map.entries(ns).size()).isEqualTo(3);
+    }
+
+    @Test
+    void findBy_secondaryIndex() throws Exception {
+        var map = new RocksMultiMap<String, Person>(rocksDBConfig, "testMap", String.class, Person.class);
+        map.addIndex(new IndexDef<>("city", p -> List.of(new IndexRecord(p.city(), p.status()))));
+        map.addIndex(new IndexDef<>("status", p -> List.of(new IndexRecord(p.status(), null))));
+
+        map.put(ns, "p1", new Person("city1", "active"));
+        map.put(ns, "p2", new Person("city1", "inactive"));
+        var writeBatch = new WriteBatch();
+        map.putBatch(ns, writeBatch, new Tuple<>("p3", new Person("city2", "active")),
+                new Tuple<>("p4", new Person("city1", "active")));
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+        map.put(ns2, "p5", new Person("city1", "active"));
+
+        assertThat(map.findBy(ns, "city", "city1", "active")).isEqualTo(List.of(
+                Map.entry("p1", new Person("city1", "active")),
+                Map.entry("p4", new Person("city1", "active"))));
+        assertThat(map.findBy(ns, "city", "city1").size()).isEqualTo(3);
+        assertThat(map.findBy(ns2, "city", "city1").size()).isEqualTo(1);
+
+        var activeInCity2 = map.findByAll(ns, new IndexQuery("city", "city2"), new IndexQuery("status", "active"));
+        assertThat(activeInCity2).isEqualTo(List.of(Map.entry("p3", new Person("city2", "active"))));
+        var city2OrInactive = map.findByAny(ns, new IndexQuery("city", "city2"), new IndexQuery("status", "inactive"));
+        assertThat(city2OrInactive.size()).isEqualTo(2);
+
+        //update moves the entry to the new index keys, remove drops it
+        map.put(ns, "p1", new Person("city2", "inactive"));
+        map.remove(ns, "p4");
+        assertThat(map.findBy(ns, "city", "city1", "active")).isEqualTo(List.of());
+        assertThat(map.findBy(ns, "status", "inactive").size()).isEqualTo(2);
+
+        //index entries are not map entries
+        assertThat(map.entries(ns).size()).isEqualTo(3);
+        var iterator = map.entriesIterator(ns);
+        assertThat(iterator.next().getKey()).isEqualTo("p1");
+        iterator.close();
+
+        assertThrows(IllegalArgumentException.class, () -> map.findBy(ns, "unknown", "x"));
+    }
+
+    @Test
+    void findBy_keyWrittenTwiceInBatch() throws Exception {
+        rocksDBConfig.setSizeTracking(true);
+        var map = new RocksMultiMap<String, Person>(rocksDBConfig, "testMap", String.class, Person.class);
+        map.addIndex(new IndexDef<>("city", p -> List.of(new IndexRecord(p.city(), null))));
+        map.put(ns, "p1", new Person("city1", "active"));
+
+        //the second value of p1 replaces the index entries of the first one, which are not committed yet
+        var writeBatch = new WriteBatch();
+        map.putBatch(ns, writeBatch, new Tuple<>("p1", new Person("city2", "active")),
+                new Tuple<>("p2", new Person("city2", "active")),
+                new Tuple<>("p1", new Person("city3", "active")));
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+
+        assertThat(map.findBy(ns, "city", "city1")).isEqualTo(List.of());
+        assertThat(map.findBy(ns, "city", "city2")).isEqualTo(List.of(Map.entry("p2", new Person("city2", "active"))));
+        assertThat(map.findBy(ns, "city", "city3")).isEqualTo(List.of(Map.entry("p1", new Person("city3", "active"))));
+        assertThat(map.size(ns)).isEqualTo(2);
+    }
+
+    @Test
+    void emptyKey_withIndex() throws Exception {
+        var map = new RocksMultiMap<String, Person>(rocksDBConfig, "testMap", String.class, Person.class);
+        map.addIndex(new IndexDef<>("city", p -> List.of(new IndexRecord(p.city(), null))));
+
+        //"" serializes to no bytes, an empty key part
+        map.put(ns, "", new Person("city1", "active"));
+        map.put(ns, "p1", new Person("city1", "inactive"));
+
+        assertThat(map.get(ns, "")).isEqualTo(Optional.of(new Person("city1", "active")));
+        assertThat(map.entries(ns)).isEqualTo(Set.of(
+                Map.entry("", new Person("city1", "active")),
+                Map.entry("p1", new Person("city1", "inactive"))));
+        assertThat(map.size(ns)).isEqualTo(2);
+        assertThat(map.approximateSize(ns)).isEqualTo(2);
+        try (var iterator = map.entriesIterator(ns)) {
+            assertThat(iterator.next().getKey()).isEqualTo("");
+            assertThat(iterator.next().getKey()).isEqualTo("p1");
+            assertThat(iterator.hasNext()).isFalse();
+        }
+        assertThat(map.findBy(ns, "city", "city1").size()).isEqualTo(2);
+
+        map.remove(ns, "");
+        assertThat(map.size(ns)).isEqualTo(1);
+        assertThat(map.findBy(ns, "city", "city1")).isEqualTo(List.of(Map.entry("p1", new Person("city1", "inactive"))));
+    }
+
+    @Test
+    void size_tracked() throws Exception {
+        rocksDBConfig.setSizeTracking(true);
+        var map = new RocksMultiMap<String, String>(rocksDBConfig, "testMap", String.class, String.class);
+        map.put(ns, "key1", "value1");
+        map.put(ns, "key2", "value2");
+        map.put(ns, "key1", "value11"); //update
+        map.put(ns2, "key1", "value1");
+        assertThat(map.size(ns)).isEqualTo(2);
+        assertThat(map.size(ns2)).isEqualTo(1);
+
+        //duplicate and existing keys in a batch are counted once
+        var writeBatch = new WriteBatch();
+        map.putBatch(ns, writeBatch, new Tuple<>("key2", "v"), new Tuple<>("key3", "v"), new Tuple<>("key3", "v"),
+                new Tuple<>("key4", "v"));
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+        assertThat(map.size(ns)).isEqualTo(4);
+
+        map.remove(ns, "key1");
+        map.remove(ns, "unknown");
+        writeBatch = new WriteBatch();
+        map.removeBatch(ns, writeBatch, "key2", "key2", "unknown");
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+        assertThat(map.size(ns)).isEqualTo(2);
+        assertThat(map.entries(ns).size()).isEqualTo(2);
+
+        //size survives a cold metadata cache
+        map.clearMetadataCache();
+        assertThat(map.size(ns)).isEqualTo(2);
+        assertThat(map.approximateSize(ns)).isEqualTo(2);
+    }
+
+    @Test
+    void size_trackedBatchAfterWritesByOtherInstance() throws Exception {
+        rocksDBConfig.setSizeTracking(true);
+        var map = new RocksMultiMap<String, String>(rocksDBConfig, "testMap", String.class, String.class);
+        var otherMap = new RocksMultiMap<String, String>(rocksDBConfig, "testMap", String.class, String.class);
+        map.put(ns, "key1", "value1");
+        assertThat(map.size(ns)).isEqualTo(1); //metadata cached by map
+
+        otherMap.put(ns, "key2", "value2");
+        otherMap.put(ns, "key3", "value3");
+
+        //batch size is computed from the stored metadata, not the cached one
+        var writeBatch = new WriteBatch();
+        map.putBatch(ns, writeBatch, new Tuple<>("key4", "v"));
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+        assertThat(map.size(ns)).isEqualTo(4);
+
+        otherMap.put(ns, "key5", "value5");
+        writeBatch = new WriteBatch();
+        map.removeBatch(ns, writeBatch, "key1");
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+        assertThat(map.size(ns)).isEqualTo(4);
+        assertThat(otherMap.size(ns)).isEqualTo(4);
+    }
+
+    @Test
+    void size_trackedWithIndex() {
+        rocksDBConfig.setSizeTracking(true);
+        var map = new RocksMultiMap<String, Person>(rocksDBConfig, "testMap", String.class, Person.class);
+        map.addIndex(new IndexDef<>("city", p -> List.of(new IndexRecord(p.city(), p.status()))));
+
+        map.put(ns, "p1", new Person("city1", "active"));
+        map.put(ns, "p2", new Person("city1", "inactive"));
+        map.put(ns, "p1", new Person("city2", "active"));
+        assertThat(map.size(ns)).isEqualTo(2);
+
+        map.remove(ns, "p2");
+        assertThat(map.size(ns)).isEqualTo(1);
+    }
+
+    @Test
+    void size_notTracked() {
+        var map = new RocksMultiMap<String, Person>(rocksDBConfig, "testMap", String.class, Person.class);
+        map.addIndex(new IndexDef<>("city", p -> List.of(new IndexRecord(p.city(), p.status()))));
+        for (int i = 0; i < 500; i++) {
+            map.put(ns, "key" + i, new Person("city" + (i % 3), "active"));
+        }
+        map.remove(ns, "key0");
+
+        //index entries are not counted
+        assertThat(map.size(ns)).isEqualTo(499);
+        assertThat(map.size(ns2)).isEqualTo(0);
+        assertThat(map.approximateSize(ns)).isGreaterThan(0);
+        assertThat(map.approximateSize(ns2)).isEqualTo(0);
+    }
+
+    record Person(String city, String status) {}
 }
@@ -185,4 +185,47 @@ class RocksMultiSetTest extends RocksBaseTest {
         assertThat(members2).contains("13", "14", "15");
 
     }
+
+    @Test
+    void size_tracked() throws Exception {
+        rocksDBConfig.setSizeTracking(true);
+        var set = new RocksMultiSet<>(rocksDBConfig, "list-cf", "set", String.class);
+        set.add(ns, "one");
+        set.add(ns, "two");
+        set.add(ns, "one");
+        set.add(ns2, "one");
+        assertThat(set.size(ns)).isEqualTo(2);
+        assertThat(set.size(ns2)).isEqualTo(1);
+
+        var writeBatch = new WriteBatch();
+        set.addBatch(ns, writeBatch, "two", "three", "three", "four");
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+        assertThat(set.size(ns)).isEqualTo(4);
+
+        set.remove(ns, "one");
+        set.remove(ns, "unknown");
+        writeBatch = new WriteBatch();
+        set.removeBatch(ns, writeBatch, "two", "two", "unknown");
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+        assertThat(set.size(ns)).isEqualTo(2);
+        assertThat(set.members(ns)).isEqualTo(Set.of("three", "four"));
+
+        set.clearMetadataCache();
+        assertThat(set.size(ns)).isEqualTo(2);
+    }
+
+    @Test
+    void size_notTracked() {
+        var set = new RocksMultiSet<>(rocksDBConfig, "list-cf", "set", Integer.class);
+        for (int i = 0; i < 1000; i++) {
+            set.add(ns, i);
+        }
+        set.add(ns, 1);
+        set.add(ns2, 1);
+
+        assertThat(set.size(ns)).isEqualTo(1000);
+        assertThat(set.size(ns2)).isEqualTo(1);
+        assertThat(set.approximateSize(ns)).isGreaterThan(0);
+        assertThat(set.approximateSize(ns2)).isEqualTo(1);
+    }
 }
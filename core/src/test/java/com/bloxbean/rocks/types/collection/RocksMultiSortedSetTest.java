@@ -0,0 +1,77 @@
+package com.bloxbean.rocks.types.collection;
+
+import com.bloxbean.rocks.types.common.CompositeScore;
+import com.bloxbean.rocks.types.common.ScoreCodec;
+import com.bloxbean.rocks.types.common.Tuple;
+import org.junit.jupiter.api.Test;
+import org.rocksdb.WriteBatch;
+import org.rocksdb.WriteOptions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RocksMultiSortedSetTest extends RocksBaseTest {
+    byte[] ns = "ns1".getBytes();
+
+    @Test
+    void doubleScores() throws Exception {
+        var sortedSet = new RocksMultiSortedSet<>(rocksDBConfig, "doubles", String.class, ScoreCodec.DOUBLE);
+        sortedSet.add(ns, "a", 1.25);
+        sortedSet.add(ns, "b", -0.5);
+        sortedSet.add(ns, "c", 1.2500001);
+        sortedSet.add(ns, "d", Double.NEGATIVE_INFINITY);
+
+        assertThat(sortedSet.getScore(ns, "c")).isEqualTo(Optional.of(1.2500001));
+        assertThat(sortedSet.membersInRange(ns, -1.0, 1.25))
+                .containsExactly(new Tuple<>("b", -0.5), new Tuple<>("a", 1.25));
+        assertThat(sortedSet.count(ns, 1.25, 2.0)).isEqualTo(2);
+        assertThat(sortedSet.rank(ns, "d")).isEqualTo(Optional.of(0L));
+        assertThat(sortedSet.rank(ns, "c")).isEqualTo(Optional.of(3L));
+
+        assertThat(sortedSet.incrementBy(ns, "b", 2.0)).isEqualTo(1.5);
+        assertThat(sortedSet.rangeByRank(ns, -2, -1))
+                .containsExactly(new Tuple<>("c", 1.2500001), new Tuple<>("b", 1.5));
+
+        var reverse = new ArrayList<String>();
+        try (var iterator = sortedSet.membersInRangeReverseIterator(ns, 1.3, 1.0)) {
+            while (iterator.hasPrev()) {
+                reverse.add(iterator.prev()._1);
+            }
+        }
+        assertThat(reverse).containsExactly("c", "a");
+    }
+
+    @Test
+    void compositeScores() throws Exception {
+        var sortedSet = new RocksMultiSortedSet<>(rocksDBConfig, "composite", String.class, ScoreCodec.COMPOSITE);
+        try (var writeBatch = new WriteBatch()) {
+            sortedSet.addBatch(ns, writeBatch,
+                    new Tuple<>("late", new CompositeScore(0.75, 2000)),
+                    new Tuple<>("early", new CompositeScore(0.75, 1000)),
+                    new Tuple<>("low", new CompositeScore(-3.0, 5000)),
+                    new Tuple<>("high", new CompositeScore(9.5, 0)));
+            rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+        }
+
+        assertThat(sortedSet.rangeByRank(ns, 0, -1).stream().map(tuple -> tuple._1).toList())
+                .containsExactly("low", "early", "late", "high");
+        assertThat(sortedSet.membersInRange(ns, new CompositeScore(0.75, 1500), new CompositeScore(0.75, Long.MAX_VALUE)))
+                .containsExactly(new Tuple<>("late", new CompositeScore(0.75, 2000)));
+        assertThat(sortedSet.revRank(ns, "early")).isEqualTo(Optional.of(2L));
+        assertThat(sortedSet.size(ns)).isEqualTo(4);
+
+        sortedSet.add(ns, "early", new CompositeScore(0.75, 3000));
+        assertThat(sortedSet.rangeByRank(ns, 1, 2).stream().map(tuple -> tuple._1).toList())
+                .containsExactly("late", "early");
+        assertThat(sortedSet.repair(ns)).isEqualTo(0);
+
+        assertThrows(UnsupportedOperationException.class,
+                () -> sortedSet.incrementBy(ns, "low", new CompositeScore(1.0, 0)));
+        assertThat(sortedSet.multiGetScore(ns, List.of("high", "none")))
+                .containsExactly(new CompositeScore(9.5, 0), null);
+    }
+}
@@ -1,5 +1,7 @@
 package com.bloxbean.rocks.types.collection;
 
+import com.bloxbean.rocks.types.collection.metadata.SetMetadata;
+import com.bloxbean.rocks.types.common.KeyBuilder;
 import com.bloxbean.rocks.types.common.Tuple;
 import org.junit.jupiter.api.Test;
 import org.rocksdb.WriteBatch;
@@ -8,8 +10,16 @@ import org.rocksdb.WriteOptions;
 import java.math.BigInteger;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static com.bloxbean.rocks.types.common.KeyBuilder.bytesToLong;
@@ -345,6 +355,382 @@ class RocksMultiZSetTest extends RocksBaseTest {
         assertThat(members).hasSize(3);
     }
 
+    @Test
+    void membersInRange_negativeScores() {
+        RocksMultiZSet<String> rocksDBZSet = new RocksMultiZSet<>(rocksDBConfig, "zset1", "names", String.class);
+        rocksDBZSet.add(ns, "minusten", -10L);
+        rocksDBZSet.add(ns, "minusone", -1L);
+        rocksDBZSet.add(ns, "zero", 0L);
+        rocksDBZSet.add(ns, "one", 1L);
+        rocksDBZSet.add(ns, "ten", 10L);
+        rocksDBZSet.add(ns, "min", Long.MIN_VALUE);
+        rocksDBZSet.add(ns, "max", Long.MAX_VALUE);
+
+        var members = rocksDBZSet.membersInRange(ns, -10L, 1L);
+        assertThat(members).containsExactly(new Tuple<>("minusten", -10L), new Tuple<>("minusone", -1L),
+                new Tuple<>("zero", 0L), new Tuple<>("one", 1L));
+
+        var all = rocksDBZSet.membersInRange(ns, Long.MIN_VALUE, Long.MAX_VALUE);
+        assertThat(all).hasSize(7);
+        assertThat(all.get(0)).isEqualTo(new Tuple<>("min", Long.MIN_VALUE));
+        assertThat(all.get(6)).isEqualTo(new Tuple<>("max", Long.MAX_VALUE));
+    }
+
+    @Test
+    void membersInRangeReverseIterator_negativeScores() throws Exception {
+        RocksMultiZSet<String> rocksDBZSet = new RocksMultiZSet<>(rocksDBConfig, "zset1", "names", String.class);
+        rocksDBZSet.add(ns, "minusten", -10L);
+        rocksDBZSet.add(ns, "minusone", -1L);
+        rocksDBZSet.add(ns, "one", 1L);
+        rocksDBZSet.add(ns, "max", Long.MAX_VALUE);
+
+        var members = new ArrayList<Tuple<String, Long>>();
+        try (var iterator = rocksDBZSet.membersInRangeReverseIterator(ns, Long.MAX_VALUE, -5L)) {
+            while (iterator.hasPrev()) {
+                members.add(iterator.prev());
+            }
+        }
+
+        assertThat(members).containsExactly(new Tuple<>("max", Long.MAX_VALUE), new Tuple<>("one", 1L),
+                new Tuple<>("minusone", -1L));
+    }
+
+    @Test
+    void rank_rangeByRank_count() throws Exception {
+        RocksMultiZSet<String> rocksDBZSet = new RocksMultiZSet<>(rocksDBConfig, "zset1", "ranks", String.class);
+        var random = new Random(42);
+        var usedScores = new HashSet<Long>();
+        Map<String, Long> scores = new HashMap<>();
+        var batch = new ArrayList<Tuple<String, Long>>();
+        for (int i = 0; i < 2000; i++) {
+            long score;
+            do {
+                score = switch (i % 3) {
+                    case 0 -> random.nextInt(1000) - 500;
+                    case 1 -> random.nextLong();
+                    default -> random.nextInt(100_000);
+                };
+            } while (!usedScores.add(score));
+
+            scores.put("m" + i, score);
+            if (i < 1000)
+                batch.add(new Tuple<>("m" + i, score));
+            else
+                rocksDBZSet.add(ns, "m" + i, score);
+        }
+        var writeBatch = new WriteBatch();
+        rocksDBZSet.addBatch(ns, writeBatch, batch.toArray(new Tuple[0]));
+        rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+
+        //move and remove some members
+        for (int i = 0; i < 100; i++) {
+            long score;
+            do {
+                score = random.nextInt(1_000_000) - 500_000;
+            } while (!usedScores.add(score));
+            rocksDBZSet.add(ns, "m" + (i * 7), score);
+            scores.put("m" + (i * 7), score);
+
+            rocksDBZSet.remove(ns, "m" + (i * 7 + 3));
+            scores.remove("m" + (i * 7 + 3));
+        }
+
+        List<Tuple<String, Long>> sorted = scores.entrySet().stream()
+                .map(e -> new Tuple<>(e.getKey(), e.getValue()))
+                .sorted(Comparator.comparing(t -> t._2))
+                .toList();
+
+        assertThat(rocksDBZSet.size(ns)).isEqualTo(sorted.size());
+        for (int i = 0; i < sorted.size(); i += 13) {
+            assertThat(rocksDBZSet.rank(ns, sorted.get(i)._1)).isEqualTo(Optional.of((long) i));
+            assertThat(rocksDBZSet.revRank(ns, sorted.get(i)._1)).isEqualTo(Optional.of((long) (sorted.size() - 1 - i)));
+        }
+        assertThat(rocksDBZSet.rank(ns, "m3")).isEmpty();
+
+        assertThat(rocksDBZSet.rangeByRank(ns, 50, 149)).isEqualTo(sorted.subList(50, 150));
+        assertThat(rocksDBZSet.rangeByRank(ns, -3, -1)).isEqualTo(sorted.subList(sorted.size() - 3, sorted.size()));
+        assertThat(rocksDBZSet.rangeByRank(ns, sorted.size(), sorted.size() + 10)).isEmpty();
+        var top10 = new ArrayList<>(sorted.subList(sorted.size() - 10, sorted.size()));
+        java.util.Collections.reverse(top10);
+        assertThat(rocksDBZSet.revRangeByRank(ns, 0, 9)).isEqualTo(top10);
+
+        long[][] ranges = {{-500, 500}, {0, 100_000}, {Long.MIN_VALUE, Long.MAX_VALUE}, {-1, -1}, {Long.MIN_VALUE, 0}};
+        for (long[] range : ranges) {
+            long expected = sorted.stream().filter(t -> t._2 >= range[0] && t._2 <= range[1]).count();
+            assertThat(rocksDBZSet.count(ns, range[0], range[1])).isEqualTo(expected);
+        }
+
+        rocksDBZSet.rebuildRankIndex(ns);
+        assertThat(rocksDBZSet.size(ns)).isEqualTo(sorted.size());
+        assertThat(rocksDBZSet.rangeByRank(ns, 1000, 1009)).isEqualTo(sorted.subList(1000, 1010));
+    }
+
+    @Test
+    void rank_equalScores() {
+        RocksMultiZSet<String> rocksDBZSet = new RocksMultiZSet<>(rocksDBConfig, "zset1", "ranks", String.class);
+        rocksDBZSet.add(ns, "b", 5L);
+        rocksDBZSet.add(ns, "a", 5L);
+        rocksDBZSet.add(ns, "c", 4L);
+        rocksDBZSet.add(ns, "c", 4L);
+
+        assertThat(rocksDBZSet.rank(ns, "c")).isEqualTo(Optional.of(0L));
+        assertThat(rocksDBZSet.rank(ns, "a")).isEqualTo(Optional.of(1L));
+        assertThat(rocksDBZSet.rank(ns, "b")).isEqualTo(Optional.of(2L));
+        assertThat(rocksDBZSet.count(ns, 5, 5)).isEqualTo(2);
+
+        //re-add with a new score replaces the old score
+        rocksDBZSet.add(ns, "c", 6L);
+        assertThat(rocksDBZSet.rank(ns, "c")).isEqualTo(Optional.of(2L));
+        assertThat(rocksDBZSet.membersInRange(ns, 0, 10)).hasSize(3);
+        assertThat(rocksDBZSet.size(ns)).isEqualTo(3);
+    }
+
+    @Test
+    void rank_equalScores_shorterMemberFirst() {
+        RocksMultiZSet<String> rocksDBZSet = new RocksMultiZSet<>(rocksDBConfig, "zset1", "ranks", String.class);
+        rocksDBZSet.add(ns, "aa", 5L);
+        rocksDBZSet.add(ns, "b", 5L);
+
+        //ties are ordered by member length first, so "b" comes before "aa"
+        assertThat(rocksDBZSet.rank(ns, "b")).isEqualTo(Optional.of(0L));
+        assertThat(rocksDBZSet.rank(ns, "aa")).isEqualTo(Optional.of(1L));
+    }
+
+    @Test
+    void incrementBy() {
+        RocksMultiZSet<String> rocksDBZSet = new RocksMultiZSet<>(rocksDBConfig, "zset1", "incr", String.class);
+        assertThat(rocksDBZSet.incrementBy(ns, "a", 5)).isEqualTo(5);
+        assertThat(rocksDBZSet.incrementBy(ns, "a", -8)).isEqualTo(-3);
+        rocksDBZSet.add(ns, "b", 1L);
+
+        assertThat(rocksDBZSet.getScore(ns, "a")).isEqualTo(Optional.of(-3L));
+        assertThat(rocksDBZSet.membersInRange(ns, Long.MIN_VALUE, Long.MAX_VALUE))
+                .containsExactly(new Tuple<>("a", -3L), new Tuple<>("b", 1L));
+        assertThat(rocksDBZSet.size(ns)).isEqualTo(2);
+
+        rocksDBZSet.add(ns, "c", Long.MAX_VALUE);
+        assertThrows(ArithmeticException.class, () -> rocksDBZSet.incrementBy(ns, "c", 1));
+    }
+
+    @Test
+    void incrementBy_concurrent() throws Exception {
+        RocksMultiZSet<String> rocksDBZSet = new RocksMultiZSet<>(rocksDBConfig, "zset1", "incr", String.class);
+        int threads = 8;
+        int increments = 500;
+        var executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            String other = "member-" + t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < increments; i++) {
+                    rocksDBZSet.incrementBy(ns, "hot", 1);
+                    rocksDBZSet.incrementBy(ns, other, 2);
+                }
+            }));
+        }
+        for (var future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat(rocksDBZSet.getScore(ns, "hot")).isEqualTo(Optional.of((long) threads * increments));
+        assertThat(rocksDBZSet.getScore(ns, "member-0")).isEqualTo(Optional.of(2L * increments));
+        assertThat(rocksDBZSet.membersInRange(ns, Long.MIN_VALUE, Long.MAX_VALUE)).hasSize(threads + 1);
+        assertThat(rocksDBZSet.size(ns)).isEqualTo(threads + 1);
+        assertThat(rocksDBZSet.rank(ns, "hot")).isEqualTo(Optional.of((long) threads));
+        assertThat(rocksDBZSet.count(ns, 2L * increments, 2L * increments)).isEqualTo(threads);
+    }
+
+    @Test
+    void addBatch_replacesOldScores() throws Exception {
+        RocksMultiZSet<String> rocksDBZSet = new RocksMultiZSet<>(rocksDBConfig, "zset1", "stale", String.class);
+        rocksDBZSet.add(ns, "a", 1L);
+        rocksDBZSet.add(ns, "b", 2L);
+
+        try (var writeBatch = new WriteBatch()) {
+            rocksDBZSet.addBatch(ns, writeBatch, new Tuple<>("a", 10L), new Tuple<>("b", 20L), new Tuple<>("a", 30L));
+            rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+        }
+
+        assertThat(rocksDBZSet.membersInRange(ns, 0, 100))
+                .containsExactly(new Tuple<>("b", 20L), new Tuple<>("a", 30L));
+        assertThat(rocksDBZSet.size(ns)).isEqualTo(2);
+    }
+
+    @Test
+    void migrateMetadata_rawScoreFormat() throws Exception {
+        //namespace as written by older versions: serializer based SetMetadata and raw two's complement score keys
+        var db = rocksDBConfig.getRocksDB();
+        var serializer = rocksDBConfig.getValueSerializer();
+        var legacyMetadata = new SetMetadata();
+        legacyMetadata.setVersion(1000);
+        db.put(new KeyBuilder("legacy", ns).build(), serializer.serialize(legacyMetadata));
+        for (var entry : Map.of("a", -5L, "b", 3L, "c", -1L).entrySet()) {
+            byte[] memberBytes = serializer.serialize(entry.getKey());
+            db.put(new KeyBuilder("legacy", ns).append(1000L).append("members").append(memberBytes).build(),
+                    serializer.serialize(entry.getValue()));
+            db.put(new KeyBuilder("legacy", ns).append(1000L).append("scores")
+                    .append(longToBytes(entry.getValue())).append(memberBytes).build(), new byte[0]);
+        }
+
+        var zset = new RocksMultiZSet<>(rocksDBConfig, "legacy", String.class);
+        assertThrows(IllegalStateException.class, () -> zset.membersInRange(ns, -10, 10));
+        assertThrows(IllegalStateException.class, () -> zset.add(ns, "d", 1L));
+
+        assertThat(zset.migrateMetadata(ns)).isTrue();
+        assertThat(zset.membersInRange(ns, -10, 10))
+                .containsExactly(new Tuple<>("a", -5L), new Tuple<>("c", -1L), new Tuple<>("b", 3L));
+        assertThat(zset.rank(ns, "b")).isEqualTo(Optional.of(2L));
+        assertThat(zset.membersByLex(ns, null, null, 10)).containsExactly("a", "b", "c");
+        assertThat(zset.migrateMetadata(ns)).isFalse();
+
+        zset.add(ns, "d", 1L);
+        assertThat(new RocksMultiZSet<>(rocksDBConfig, "legacy", String.class).size(ns)).isEqualTo(4);
+    }
+
+    @Test
+    void repair() throws Exception {
+        RocksMultiZSet<String> rocksDBZSet = new RocksMultiZSet<>(rocksDBConfig, "repair", String.class);
+        rocksDBZSet.add(ns, "a", 1L);
+        rocksDBZSet.add(ns, "b", 2L);
+        rocksDBZSet.add(ns, "c", 3L);
+
+        //stale score keys as written by older versions, and a member without score key
+        var metadata = rocksDBZSet.getMetadata(ns).orElseThrow();
+        var db = rocksDBConfig.getRocksDB();
+        db.put(rocksDBZSet.getScoreSubKey(metadata, ns, "a", 5L), new byte[0]);
+        db.put(rocksDBZSet.getScoreSubKey(metadata, ns, "x", 6L), new byte[0]);
+        db.delete(rocksDBZSet.getScoreSubKey(metadata, ns, "c", 3L));
+        assertThat(rocksDBZSet.membersInRange(ns, 0, 10)).hasSize(4);
+
+        assertThat(rocksDBZSet.repair(ns)).isEqualTo(3);
+
+        assertThat(rocksDBZSet.membersInRange(ns, 0, 10))
+                .containsExactly(new Tuple<>("a", 1L), new Tuple<>("b", 2L), new Tuple<>("c", 3L));
+        assertThat(rocksDBZSet.size(ns)).isEqualTo(3);
+        assertThat(rocksDBZSet.rank(ns, "c")).isEqualTo(Optional.of(2L));
+        assertThat(rocksDBZSet.repair(ns)).isEqualTo(0);
+    }
+
+    @Test
+    void multiGetScore_multiContains() {
+        RocksMultiZSet<String> rocksDBZSet = new RocksMultiZSet<>(rocksDBConfig, "zset1", "multi", String.class);
+        rocksDBZSet.add(ns, "a", 1L);
+        rocksDBZSet.add(ns, "c", -3L);
+
+        assertThat(rocksDBZSet.multiGetScore(ns, List.of("a", "b", "c"))).containsExactly(1L, null, -3L);
+        assertThat(rocksDBZSet.multiContains(ns, List.of("a", "b", "c"))).containsExactly(true, false, true);
+        assertThat(rocksDBZSet.multiGetScore("unknown".getBytes(), List.of("a", "b"))).containsExactly(null, null);
+    }
+
+    @Test
+    void popMin_popMax() {
+        RocksMultiZSet<String> rocksDBZSet = new RocksMultiZSet<>(rocksDBConfig, "zset1", "queue", String.class);
+        for (int i = 1; i <= 10; i++) {
+            rocksDBZSet.add(ns, "job-" + i, (long) i);
+        }
+
+        assertThat(rocksDBZSet.popMin(ns, 3))
+                .containsExactly(new Tuple<>("job-1", 1L), new Tuple<>("job-2", 2L), new Tuple<>("job-3", 3L));
+        assertThat(rocksDBZSet.popMax(ns, 2))
+                .containsExactly(new Tuple<>("job-10", 10L), new Tuple<>("job-9", 9L));
+        assertThat(rocksDBZSet.contains(ns, "job-1")).isFalse();
+        assertThat(rocksDBZSet.size(ns)).isEqualTo(5);
+        assertThat(rocksDBZSet.rank(ns, "job-4")).isEqualTo(Optional.of(0L));
+
+        assertThat(rocksDBZSet.popMin(ns, 100)).hasSize(5);
+        assertThat(rocksDBZSet.popMin(ns, 1)).isEmpty();
+        assertThat(rocksDBZSet.size(ns)).isEqualTo(0);
+    }
+
+    @Test
+    void trimToSize_trimByScore() {
+        RocksMultiZSet<String> rocksDBZSet = new RocksMultiZSet<>(rocksDBConfig, "zset1", "bounded", String.class);
+        for (int i = 0; i < 2500; i++) {
+            rocksDBZSet.add(ns, "m" + i, (long) i - 1000);
+        }
+
+        assertThat(rocksDBZSet.trimToSize(ns, 2000)).isEqualTo(500);
+        assertThat(rocksDBZSet.size(ns)).isEqualTo(2000);
+        assertThat(rocksDBZSet.rangeByRank(ns, 0, 0)).containsExactly(new Tuple<>("m500", -500L));
+        assertThat(rocksDBZSet.trimToSize(ns, 2000)).isEqualTo(0);
+
+        assertThat(rocksDBZSet.trimByScore(ns, -10, 1099)).isEqualTo(1110);
+        assertThat(rocksDBZSet.count(ns, -1000, 2000)).isEqualTo(890);
+        assertThat(rocksDBZSet.getScore(ns, "m989")).isEqualTo(Optional.of(-11L));
+        assertThat(rocksDBZSet.contains(ns, "m990")).isFalse();
+        assertThat(rocksDBZSet.getScore(ns, "m2100")).isEqualTo(Optional.of(1100L));
+    }
+
+    @Test
+    void membersByLex() throws Exception {
+        RocksMultiZSet<String> rocksDBZSet = new RocksMultiZSet<>(rocksDBConfig, "zset1", "lex", String.class);
+        for (String member : List.of("banana", "apple", "applesauce", "cherry", "app", "b", "apricot")) {
+            rocksDBZSet.add(ns, member, 0L);
+        }
+        rocksDBZSet.add(ns, "cherry", 5L);
+        rocksDBZSet.remove(ns, "b");
+
+        assertThat(rocksDBZSet.membersByLex(ns, null, null, 100))
+                .containsExactly("app", "apple", "applesauce", "apricot", "banana", "cherry");
+        assertThat(rocksDBZSet.membersByLex(ns, "apple", "banana", 100))
+                .containsExactly("apple", "applesauce", "apricot", "banana");
+        assertThat(rocksDBZSet.membersByLex(ns, "apq", null, 2)).containsExactly("apricot", "banana");
+        assertThat(rocksDBZSet.membersByLexPrefix(ns, "appl", 10)).containsExactly("apple", "applesauce");
+        assertThat(rocksDBZSet.membersByLexPrefix(ns, "x", 10)).isEmpty();
+
+        var reverse = new ArrayList<String>();
+        try (var iterator = rocksDBZSet.membersByLexReverseIterator(ns, "banana", "apple")) {
+            while (iterator.hasPrev()) {
+                reverse.add(iterator.prev());
+            }
+        }
+        assertThat(reverse).containsExactly("banana", "apricot", "applesauce", "apple");
+
+        //lex index of zsets written without one
+        var metadata = rocksDBZSet.getMetadata(ns).orElseThrow();
+        byte[] lexPrefix = KeyBuilder.appendToKey(rocksDBZSet.getKeyPrefix(ns, metadata.getVersion()), KeyBuilder.strToBytes("lex"));
+        try (var writeBatch = new WriteBatch()) {
+            rocksDBZSet.deleteRangeBatch(writeBatch, lexPrefix, KeyBuilder.merge(lexPrefix, new byte[]{(byte) 0xFF}));
+            rocksDBConfig.getRocksDB().write(new WriteOptions(), writeBatch);
+        }
+        assertThat(rocksDBZSet.membersByLex(ns, null, null, 100)).isEmpty();
+        rocksDBZSet.rebuildLexIndex(ns);
+        assertThat(rocksDBZSet.membersByLex(ns, null, null, 100)).hasSize(6);
+    }
+
+    @Test
+    void membersInRange_offsetLimit_pages() throws Exception {
+        RocksMultiZSet<String> rocksDBZSet = new RocksMultiZSet<>(rocksDBConfig, "zset1", "pages", String.class);
+        for (int i = 0; i < 100; i++) {
+            rocksDBZSet.add(ns, "m" + i, (long) (i / 2)); //two members per score
+        }
+
+        assertThat(rocksDBZSet.membersInRange(ns, 10, 20, 2, 2))
+                .containsExactly(new Tuple<>("m22", 11L), new Tuple<>("m23", 11L));
+        assertThat(rocksDBZSet.membersInRange(ns, 10, 20, 20, 5)).containsExactly(new Tuple<>("m40", 20L), new Tuple<>("m41", 20L));
+        assertThat(rocksDBZSet.membersInRange(ns, 10, 20, 30, 5)).isEmpty();
+
+        List<Tuple<String, Long>> all = new ArrayList<>();
+        String token = null;
+        int pages = 0;
+        do {
+            var page = rocksDBZSet.membersInRangePage(ns, 5, 44, token, 7);
+            all.addAll(page.getItems());
+            token = page.getContinuationToken();
+            pages++;
+        } while (token != null);
+
+        assertThat(pages).isEqualTo(12);
+        assertThat(all).isEqualTo(rocksDBZSet.membersInRange(ns, 5, 44));
+        assertThat(all).hasSize(80);
+
+        try (var iterator = rocksDBZSet.membersInRangeIterator(ns, 0, 10)) {
+            iterator.skip(20);
+            assertThat(iterator.next()).isEqualTo(new Tuple<>("m20", 10L));
+        }
+    }
+
     private static byte[] getAddressBalanceKey(String address, String lovelace, int i) {
         return (address + "_" + lovelace + "_" + i).getBytes();
     }
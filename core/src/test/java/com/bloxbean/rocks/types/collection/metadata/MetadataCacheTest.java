@@ -0,0 +1,110 @@
+package com.bloxbean.rocks.types.collection.metadata;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class MetadataCacheTest {
+
+    @Test
+    void getAndPut() {
+        var cache = new MetadataCache(10);
+        var metadata = new MapMetadata();
+        metadata.setVersion(100);
+
+        assertThat(cache.get("key1".getBytes(), MapMetadata.class)).isNull();
+        cache.put("key1".getBytes(), metadata);
+
+        assertThat(cache.get("key1".getBytes(), MapMetadata.class)).isEqualTo(metadata);
+        assertThat(cache.get("key1".getBytes(), ListMetadata.class)).isNull();
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(2);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        var cache = new MetadataCache(2);
+        cache.put("key1".getBytes(), new SetMetadata());
+        cache.put("key2".getBytes(), new SetMetadata());
+
+        //access key1, so key2 becomes the eldest entry
+        cache.get("key1".getBytes(), SetMetadata.class);
+        cache.put("key3".getBytes(), new SetMetadata());
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.get("key1".getBytes(), SetMetadata.class)).isNotNull();
+        assertThat(cache.get("key2".getBytes(), SetMetadata.class)).isNull();
+        assertThat(cache.get("key3".getBytes(), SetMetadata.class)).isNotNull();
+    }
+
+    @Test
+    void invalidate() {
+        var cache = new MetadataCache(10);
+        cache.put("key1".getBytes(), new ListMetadata());
+        cache.invalidate("key1".getBytes());
+
+        assertThat(cache.get("key1".getBytes(), ListMetadata.class)).isNull();
+    }
+
+    @Test
+    void getReturnsCopy() {
+        var cache = new MetadataCache(10);
+        var metadata = new BitmapMetadata();
+        metadata.setMaxFragmentIndex(5);
+        cache.put("key1".getBytes(), metadata);
+
+        var cached = cache.get("key1".getBytes(), BitmapMetadata.class);
+        assertThat(cached).isNotSameAs(metadata);
+        cached.setMaxFragmentIndex(10);
+        metadata.setMaxFragmentIndex(20);
+        assertThat(cache.get("key1".getBytes(), BitmapMetadata.class).getMaxFragmentIndex()).isEqualTo(5);
+    }
+
+    @Test
+    void markUncacheable() {
+        var cache = new MetadataCache(10);
+        cache.put("key1".getBytes(), new SetMetadata());
+        cache.markUncacheable("key1".getBytes());
+
+        //neither reads nor invalidate drop the marker
+        cache.putIfAbsent("key1".getBytes(), new SetMetadata());
+        cache.invalidate("key1".getBytes());
+        cache.putIfAbsent("key1".getBytes(), new SetMetadata());
+        assertThat(cache.get("key1".getBytes(), SetMetadata.class)).isNull();
+
+        //a direct write replaces the marker
+        cache.put("key1".getBytes(), new SetMetadata());
+        assertThat(cache.get("key1".getBytes(), SetMetadata.class)).isNotNull();
+
+        cache.markUncacheable("key1".getBytes());
+        cache.clear();
+        cache.putIfAbsent("key1".getBytes(), new SetMetadata());
+        assertThat(cache.get("key1".getBytes(), SetMetadata.class)).isNotNull();
+    }
+
+    @Test
+    void putIfAbsent_keepsWrittenMetadata() {
+        var cache = new MetadataCache(10);
+        var written = new SetMetadata();
+        written.setSize(2);
+        var read = new SetMetadata();
+        read.setSize(1);
+
+        //a reader which read before the write doesn't replace the written metadata
+        cache.put("key1".getBytes(), written);
+        cache.putIfAbsent("key1".getBytes(), read);
+        assertThat(cache.get("key1".getBytes(), SetMetadata.class).getSize()).isEqualTo(2);
+
+        cache.putIfAbsent("key2".getBytes(), read);
+        assertThat(cache.get("key2".getBytes(), SetMetadata.class).getSize()).isEqualTo(1);
+    }
+
+    @Test
+    void disabled() {
+        var cache = new MetadataCache(0);
+        cache.put("key1".getBytes(), new ListMetadata());
+
+        assertThat(cache.size()).isEqualTo(0);
+        assertThat(cache.get("key1".getBytes(), ListMetadata.class)).isNull();
+    }
+}
@@ -0,0 +1,127 @@
+package com.bloxbean.rocks.types.collection.metadata;
+
+import com.bloxbean.rocks.types.serializer.MessagePackSerializer;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MetadataCodecTest {
+
+    @Test
+    void listMetadata() {
+        var metadata = new ListMetadata();
+        metadata.setVersion(1702449985000L);
+        metadata.setSize(42);
+        metadata.setTail("tail-key".getBytes());
+
+        var bytes = MetadataCodec.encode(metadata);
+        var decoded = MetadataCodec.decode(bytes, ListMetadata.class);
+
+        assertThat(MetadataCodec.isEncoded(bytes)).isTrue();
+        assertThat(decoded.getType()).isEqualTo(DataType.LIST);
+        assertThat(decoded.getVersion()).isEqualTo(1702449985000L);
+        assertThat(decoded.getSize()).isEqualTo(42);
+        assertThat(decoded.getHead()).isNull();
+        assertThat(decoded.getTail()).isEqualTo("tail-key".getBytes());
+    }
+
+    @Test
+    void bitmapMetadata() {
+        var metadata = new BitmapMetadata();
+        metadata.setVersion(5);
+        metadata.setMaxFragmentIndex(Long.MAX_VALUE);
+
+        var decoded = MetadataCodec.decode(MetadataCodec.encode(metadata), BitmapMetadata.class);
+
+        assertThat(decoded.getVersion()).isEqualTo(5);
+        assertThat(decoded.getMaxFragmentIndex()).isEqualTo(Long.MAX_VALUE);
+        assertThat(decoded.getCardinality()).isEqualTo(-1);
+
+        assertThat(decoded.getFragmentSize()).isEqualTo(0);
+
+        metadata.setCardinality(1234);
+        metadata.setFragmentSize(65536);
+        decoded = MetadataCodec.decode(MetadataCodec.encode(metadata), BitmapMetadata.class);
+        assertThat(decoded.getCardinality()).isEqualTo(1234);
+        assertThat(decoded.getFragmentSize()).isEqualTo(65536);
+    }
+
+    @Test
+    void bitmapMetadata_withoutCardinality() {
+        var metadata = new BitmapMetadata();
+        metadata.setVersion(5);
+        metadata.setMaxFragmentIndex(7);
+        metadata.setCardinality(10);
+
+        //bitmap metadata encoded before cardinality was added
+        var bytes = Arrays.copyOf(MetadataCodec.encode(metadata), 1 + 1 + 2 + 8 + 8);
+        var decoded = MetadataCodec.decode(bytes, BitmapMetadata.class);
+
+        assertThat(decoded.getMaxFragmentIndex()).isEqualTo(7);
+        assertThat(decoded.getCardinality()).isEqualTo(-1);
+    }
+
+    @Test
+    void setAndMapMetadata() {
+        var setMetadata = new SetMetadata();
+        setMetadata.setVersion(-1);
+        var mapMetadata = new MapMetadata();
+        mapMetadata.setVersion(10);
+
+        assertThat(MetadataCodec.decode(MetadataCodec.encode(setMetadata), SetMetadata.class).getVersion()).isEqualTo(-1);
+        assertThat(MetadataCodec.decode(MetadataCodec.encode(mapMetadata), MapMetadata.class).getVersion()).isEqualTo(10);
+    }
+
+    @Test
+    void setAndMapMetadata_size() {
+        var mapMetadata = new MapMetadata();
+        mapMetadata.setVersion(10);
+        assertThat(MetadataCodec.decode(MetadataCodec.encode(mapMetadata), MapMetadata.class).getSize()).isEqualTo(-1);
+
+        mapMetadata.setSize(99);
+        assertThat(MetadataCodec.decode(MetadataCodec.encode(mapMetadata), MapMetadata.class).getSize()).isEqualTo(99);
+
+        //set metadata encoded before size was added
+        var setMetadata = new SetMetadata();
+        setMetadata.setVersion(10);
+        setMetadata.setSize(5);
+        var bytes = Arrays.copyOf(MetadataCodec.encode(setMetadata), 1 + 1 + 2 + 8);
+        var decoded = MetadataCodec.decode(bytes, SetMetadata.class);
+        assertThat(decoded.getVersion()).isEqualTo(10);
+        assertThat(decoded.getSize()).isEqualTo(-1);
+    }
+
+    @Test
+    void zsetMetadata_scoreFormat() {
+        var metadata = new ZSetMetadata();
+        metadata.setVersion(7);
+        metadata.setScoreFormat(ZSetMetadata.SCORE_FORMAT_ORDERED);
+
+        var bytes = MetadataCodec.encode(metadata);
+        assertThat(MetadataCodec.decode(bytes, ZSetMetadata.class).getScoreFormat())
+                .isEqualTo(ZSetMetadata.SCORE_FORMAT_ORDERED);
+
+        //zset metadata encoded before the score format was added
+        var decoded = MetadataCodec.decode(Arrays.copyOf(bytes, 1 + 1 + 2 + 8), ZSetMetadata.class);
+        assertThat(decoded.getScoreFormat()).isEqualTo(ZSetMetadata.SCORE_FORMAT_RAW);
+    }
+
+    @Test
+    void typeMismatch() {
+        var bytes = MetadataCodec.encode(new SetMetadata());
+        assertThrows(IllegalArgumentException.class, () -> MetadataCodec.decode(bytes, MapMetadata.class));
+    }
+
+    @Test
+    void legacyFormatNotEncoded() {
+        var metadata = new ListMetadata();
+        metadata.setVersion(System.currentTimeMillis());
+        metadata.setSize(3);
+
+        var legacyBytes = new MessagePackSerializer().serialize(metadata);
+        assertThat(MetadataCodec.isEncoded(legacyBytes)).isFalse();
+    }
+}
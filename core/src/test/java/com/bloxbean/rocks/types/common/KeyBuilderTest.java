@@ -81,4 +81,43 @@ class KeyBuilderTest {
         assertThat(bytesToLong(parts.get(1))).isEqualTo(currentTime);
         assertThat(valueSerializer.deserialize(parts.get(2), String.class)).isEqualTo(key);
     }
+
+    @Test
+    void fromKey() {
+        var prefix = new KeyBuilder("map1", "ns1")
+                .append(100L)
+                .build();
+
+        var key = KeyBuilder.fromKey(prefix)
+                .append("key1")
+                .build();
+
+        assertThat(key).isEqualTo(new KeyBuilder("map1", "ns1").append(100L).append("key1").build());
+        assertThat(KeyBuilder.appendToKey(prefix, strToBytes("key1"))).isEqualTo(key);
+    }
+
+    @Test
+    void getPart() {
+        var key = new KeyBuilder("zset1", "ns1")
+                .append(1L)
+                .append("members")
+                .append(7)
+                .build();
+
+        assertThat(bytesToStr(KeyBuilder.getPart(key, 0))).isEqualTo("zset1");
+        assertThat(bytesToLong(KeyBuilder.getPart(key, 2))).isEqualTo(1L);
+        assertThat(bytesToInt(KeyBuilder.getPart(key, -1))).isEqualTo(7);
+        assertThat(bytesToStr(KeyBuilder.getPart(key, -2))).isEqualTo("members");
+        assertThat(KeyBuilder.partOffset(key, 1)).isEqualTo(Integer.BYTES + 5 + Integer.BYTES);
+    }
+
+    @Test
+    void getPartAfterPrefix() {
+        var prefix = new KeyBuilder("set1", "ns1")
+                .append(5L)
+                .build();
+        var key = KeyBuilder.appendToKey(prefix, strToBytes("member1"), strToBytes("other"));
+
+        assertThat(bytesToStr(KeyBuilder.getPartAfterPrefix(key, prefix))).isEqualTo("member1");
+    }
 }
@@ -0,0 +1,67 @@
+package com.bloxbean.rocks.types.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OrderedBytesTest {
+
+    @Test
+    void longs() {
+        long[] values = {Long.MIN_VALUE, -1000L, -1L, 0L, 1L, 255L, 256L, 1000L, Long.MAX_VALUE};
+        for (int i = 0; i < values.length; i++) {
+            assertThat(OrderedBytes.decodeLong(OrderedBytes.encodeLong(values[i]))).isEqualTo(values[i]);
+            if (i > 0)
+                assertThat(OrderedBytes.compare(OrderedBytes.encodeLong(values[i - 1]), OrderedBytes.encodeLong(values[i]))).isNegative();
+        }
+    }
+
+    @Test
+    void ints() {
+        int[] values = {Integer.MIN_VALUE, -70000, -1, 0, 1, 70000, Integer.MAX_VALUE};
+        for (int i = 0; i < values.length; i++) {
+            assertThat(OrderedBytes.decodeInt(OrderedBytes.encodeInt(values[i]))).isEqualTo(values[i]);
+            if (i > 0)
+                assertThat(OrderedBytes.compare(OrderedBytes.encodeInt(values[i - 1]), OrderedBytes.encodeInt(values[i]))).isNegative();
+        }
+    }
+
+    @Test
+    void doubles() {
+        double[] values = {Double.NEGATIVE_INFINITY, -Double.MAX_VALUE, -1.5, -Double.MIN_VALUE, 0.0,
+                Double.MIN_VALUE, 0.1, 1.5, 1e300, Double.POSITIVE_INFINITY, Double.NaN};
+        for (int i = 0; i < values.length; i++) {
+            assertThat(OrderedBytes.decodeDouble(OrderedBytes.encodeDouble(values[i]))).isEqualTo(values[i]);
+            if (i > 0)
+                assertThat(OrderedBytes.compare(OrderedBytes.encodeDouble(values[i - 1]), OrderedBytes.encodeDouble(values[i]))).isNegative();
+        }
+
+        assertThat(OrderedBytes.encodeDouble(-0.0)).isEqualTo(OrderedBytes.encodeDouble(0.0));
+    }
+
+    @Test
+    void strings() {
+        List<String> values = Arrays.asList("b", "", "a", "ab", "a\u0000", "a\u0000b", "ÿ", "aa");
+        var sorted = values.stream().sorted(Comparator.comparing(KeyBuilder::strToBytes, Arrays::compareUnsigned)).toList();
+        var sortedByEncoding = values.stream().sorted(Comparator.comparing(OrderedBytes::encodeString, OrderedBytes::compare)).toList();
+
+        assertThat(sortedByEncoding).isEqualTo(sorted);
+        for (String value : values) {
+            assertThat(OrderedBytes.decodeString(OrderedBytes.encodeString(value), 0)).isEqualTo(value);
+        }
+    }
+
+    @Test
+    void encodedBytesLength() {
+        byte[] encoded = KeyBuilder.merge(OrderedBytes.encodeBytes(new byte[]{1, 0, 2}), OrderedBytes.encodeString("next"));
+
+        int length = OrderedBytes.encodedBytesLength(encoded, 0);
+        assertThat(length).isEqualTo(6);
+        assertThat(OrderedBytes.decodeBytes(encoded, 0)).isEqualTo(new byte[]{1, 0, 2});
+        assertThat(OrderedBytes.decodeString(encoded, length)).isEqualTo("next");
+    }
+}